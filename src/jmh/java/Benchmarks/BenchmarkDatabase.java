@@ -0,0 +1,76 @@
+package Benchmarks;
+
+import Config.DatabaseConnection;
+import Config.SchemaMigrator;
+import Dao.HistoriaClinicaDAO;
+import Dao.PacienteDAO;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.HistoriaClinicaServiceImpl;
+import Service.PacienteServiceImpl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prepara la base embebida (H2 en modo MySQL) que usan los benchmarks.
+ *
+ * La URL llega por -Ddb.url desde la configuración jmh de build.gradle, así los DAOs
+ * y DatabaseConnection se ejecutan sin cambios, igual que contra MySQL.
+ */
+public final class BenchmarkDatabase {
+
+    /** Pacientes precargados (todos con historia clínica) */
+    public static final int PACIENTES = Integer.getInteger("bench.pacientes", 10_000);
+
+    private static final String[] DROP = {
+            "DROP TABLE IF EXISTS auditoria_cambio",
+            "DROP TABLE IF EXISTS historia_clinica",
+            "DROP TABLE IF EXISTS paciente",
+            "DROP TABLE IF EXISTS schema_version"
+    };
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Recrea las tablas con SchemaMigrator (mismo esquema e índices que producción)
+     * y carga {@link #PACIENTES} pacientes con su historia.
+     */
+    public static void recrear() throws Exception {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement()) {
+            for (String sql : DROP) st.execute(sql);
+        }
+        SchemaMigrator.migrar();
+        List<Paciente> pacientes = new ArrayList<>(PACIENTES);
+        for (int i = 1; i <= PACIENTES; i++) pacientes.add(paciente("D" + i, "HC-" + i, i));
+        crearServicio().insertarLote(pacientes);
+    }
+
+    public static PacienteServiceImpl crearServicio() {
+        HistoriaClinicaDAO hcDAO = new HistoriaClinicaDAO();
+        return new PacienteServiceImpl(new PacienteDAO(hcDAO), new HistoriaClinicaServiceImpl(hcDAO));
+    }
+
+    public static Paciente paciente(String dni, String nroHistoria, int semilla) {
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setNroHistoria(nroHistoria);
+        hc.setGrupoSanguineo(GrupoSanguineo.values()[semilla % GrupoSanguineo.values().length]);
+        hc.setAntecedentes("Antecedentes del paciente " + semilla);
+        hc.setMedaicacionActual(semilla % 3 == 0 ? null : "Ibuprofeno 400mg");
+        hc.setObservaciones("Control anual");
+
+        Paciente p = new Paciente();
+        p.setNombre("Nombre" + semilla);
+        p.setApellido("Apellido" + semilla);
+        p.setDni(dni);
+        p.setFechaNacimiento(LocalDate.of(1950, 1, 1).plusDays(semilla % 20_000));
+        p.setHistoriaClinica(hc);
+        return p;
+    }
+}
@@ -0,0 +1,65 @@
+package Benchmarks;
+
+import Dao.HistoriaClinicaDAO;
+import Dao.PacienteDAO;
+import Models.Paciente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecturas de PacienteDAO contra la base embebida:
+ * getById, buscarPorDni (consultas puntuales con JOIN), getAll y una página keyset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacienteDAOBenchmark {
+
+    private PacienteDAO pacienteDAO;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkDatabase.recrear();
+        pacienteDAO = new PacienteDAO(new HistoriaClinicaDAO());
+    }
+
+    @Benchmark
+    public Paciente getById() throws Exception {
+        return pacienteDAO.getById(ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.PACIENTES + 1));
+    }
+
+    @Benchmark
+    public Paciente buscarPorDni() throws Exception {
+        return pacienteDAO.buscarPorDni("D" + ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.PACIENTES + 1));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Paciente> getAll() throws Exception {
+        return pacienteDAO.getAll();
+    }
+
+    @Benchmark
+    public List<Paciente> getPagina() throws Exception {
+        return pacienteDAO.getPagina(ThreadLocalRandom.current().nextInt(0, BenchmarkDatabase.PACIENTES - 50), 50);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void stream(Blackhole bh) throws Exception {
+        try (var pacientes = pacienteDAO.stream()) {
+            pacientes.forEach(bh::consume);
+        }
+    }
+}
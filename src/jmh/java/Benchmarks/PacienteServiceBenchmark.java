@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import Models.Paciente;
+import Service.PacienteServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Alta completa de paciente + historia clínica (PacienteServiceImpl.insertar):
+ * validaciones, chequeos de unicidad y la transacción de inserción.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacienteServiceBenchmark {
+
+    private final AtomicLong secuencia = new AtomicLong();
+    private PacienteServiceImpl pacienteService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkDatabase.recrear();
+        pacienteService = BenchmarkDatabase.crearServicio();
+    }
+
+    @Benchmark
+    public Paciente insertar() throws Exception {
+        long n = secuencia.incrementAndGet();
+        Paciente p = BenchmarkDatabase.paciente("B" + n, "HCB-" + n, (int) n);
+        pacienteService.insertar(p);
+        return p;
+    }
+}
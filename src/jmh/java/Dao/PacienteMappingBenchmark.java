@@ -0,0 +1,130 @@
+package Dao;
+
+import Benchmarks.BenchmarkDatabase;
+import Config.DatabaseConnection;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo aislado del mapeo de pacientes: el ResultSet ya está en memoria
+ * (scrollable) y cada invocación solo se posiciona en una fila y la mapea.
+ *
+ * Compara el mapeo anterior (columnas por nombre y recorrido de GrupoSanguineo.values())
+ * con {@link RowMappers} (columnas por posición y GrupoSanguineo.fromSimbolo).
+ * Con -prof gc se ve también la diferencia de asignaciones por fila.
+ *
+ * Está en el paquete Dao para acceder a RowMappers (package-private).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacienteMappingBenchmark {
+
+    private static final String SQL = """
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE
+        ORDER BY p.id
+        LIMIT 1000
+    """;
+
+    private Connection conn;
+    private PreparedStatement stmt;
+    private ResultSet rs;
+    private int fila;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkDatabase.recrear();
+        conn = DatabaseConnection.getConnection();
+        stmt = conn.prepareStatement(SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        rs = stmt.executeQuery();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        rs.close();
+        stmt.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public Paciente porNombre() throws Exception {
+        avanzar();
+        return mapearPorNombre(rs);
+    }
+
+    @Benchmark
+    public Paciente porPosicion() throws Exception {
+        avanzar();
+        return RowMappers.paciente(rs);
+    }
+
+    @Benchmark
+    public GrupoSanguineo grupoPorRecorrido() {
+        return grupoPorRecorrido(SIMBOLOS[++fila & 7]);
+    }
+
+    @Benchmark
+    public GrupoSanguineo grupoFromSimbolo() {
+        return GrupoSanguineo.fromSimbolo(SIMBOLOS[++fila & 7]);
+    }
+
+    private void avanzar() throws Exception {
+        fila = fila % 1000 + 1;
+        rs.absolute(fila);
+    }
+
+    private static final String[] SIMBOLOS = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"};
+
+    /* Mapeo anterior de PacienteDAO, como referencia */
+
+    private static Paciente mapearPorNombre(ResultSet rs) throws Exception {
+        Paciente p = new Paciente();
+        p.setId(rs.getInt("id"));
+        p.setNombre(rs.getString("nombre"));
+        p.setApellido(rs.getString("apellido"));
+        p.setDni(rs.getString("dni"));
+        Date d = rs.getDate("fecha_nacimiento");
+        if (d != null) p.setFechaNacimiento(d.toLocalDate());
+
+        int hcId = rs.getInt("hc_id");
+        if (!rs.wasNull() && hcId > 0) {
+            HistoriaClinica hc = new HistoriaClinica();
+            hc.setId(hcId);
+            hc.setNroHistoria(rs.getString("nro_historia"));
+            hc.setAntecedentes(rs.getString("antecedentes"));
+            hc.setMedaicacionActual(rs.getString("medicacion_actual"));
+            hc.setObservaciones(rs.getString("observaciones"));
+            hc.setGrupoSanguineo(grupoPorRecorrido(rs.getString("grupo_sanguineo")));
+            p.setHistoriaClinica(hc);
+        }
+        return p;
+    }
+
+    private static GrupoSanguineo grupoPorRecorrido(String grupo) {
+        if (grupo == null) return null;
+        for (GrupoSanguineo g : GrupoSanguineo.values()) {
+            if (g.getSimbolo().equalsIgnoreCase(grupo)) return g;
+        }
+        return null;
+    }
+}
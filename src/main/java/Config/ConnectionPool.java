@@ -0,0 +1,419 @@
+package Config;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Pool acotado de conexiones JDBC expuesto como {@link DataSource}.
+ *
+ * Funcionamiento:
+ * - Un semáforo limita la cantidad de conexiones prestadas a maxSize
+ * - Las conexiones libres se guardan en una cola LIFO (la más reciente se reutiliza primero)
+ * - Cada préstamo devuelve un proxy: close() devuelve la conexión física al pool
+ * - Una tarea de mantenimiento expulsa conexiones ociosas, rellena hasta minSize
+ *   y reporta préstamos que superan el umbral de fuga (el préstamo solo guarda la hora; la
+ *   pila del llamador se captura únicamente con leakStack, para depurar)
+ * - Cada conexión física tiene su propio {@link StatementCache}: prepareStatement(sql)
+ *   y prepareStatement(sql, autoGeneratedKeys) reutilizan el statement ya preparado
+ *
+ * No usa bloques synchronized: la espera se hace sobre el semáforo, que es
+ * interrumpible y respeta el timeout de adquisición.
+ */
+public final class ConnectionPool implements DataSource, AutoCloseable {
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long validationIntervalMs;
+    private final int validationTimeoutSec;
+    private final long leakThresholdMs;
+    private final boolean leakStack;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Crea el pool y programa la tarea de mantenimiento.
+     * Las conexiones mínimas se abren en segundo plano, no en el constructor.
+     *
+     * @param url URL JDBC
+     * @param connectionProperties Propiedades de conexión (user, password y extras del driver)
+     * @param minSize Conexiones ociosas que se mantienen abiertas
+     * @param maxSize Máximo de conexiones abiertas simultáneamente
+     * @param acquireTimeoutMs Espera máxima para obtener una conexión
+     * @param idleTimeoutMs Tiempo ocioso tras el cual una conexión se cierra (por encima de minSize)
+     * @param validationIntervalMs Conexiones ociosas más tiempo que esto se validan al prestarse
+     * @param validationTimeoutSec Timeout de Connection.isValid()
+     * @param leakThresholdMs Préstamos más largos que esto se reportan como posible fuga (0 = desactivado)
+     * @param leakStack Guarda la pila de cada préstamo para mostrarla en el aviso de fuga
+     *                  (costoso: crea un Throwable por préstamo)
+     * @param statementCacheSize Statements preparados que se conservan por conexión (0 = sin caché)
+     */
+    public ConnectionPool(String url, Properties connectionProperties, int minSize, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs, long validationIntervalMs,
+                          int validationTimeoutSec, long leakThresholdMs, boolean leakStack,
+                          int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo del pool debe ser mayor a 0");
+        }
+        if (minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("El tamaño mínimo del pool debe estar entre 0 y " + maxSize);
+        }
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.leakThresholdMs = leakThresholdMs;
+        this.leakStack = leakStack;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1000L, Math.min(idleTimeoutMs, 30_000L) / 2);
+        housekeeper.scheduleWithFixedDelay(this::mantenimiento, 0, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión del pool.
+     * El caller debe cerrarla (try-with-resources) para devolverla.
+     *
+     * @throws SQLTransientConnectionException Si no hay conexión libre dentro del timeout
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Timeout de " + acquireTimeoutMs
+                        + " ms esperando una conexión libre (máximo " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión", e);
+        }
+
+        try {
+            PooledConnection pc = tomarValida();
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowStack = leakStack && leakThresholdMs > 0 ? new Throwable("Conexión prestada aquí") : null;
+            pc.leakReported = false;
+            borrowed.add(pc);
+            return pc.handle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("El pool usa las credenciales configuradas en -Ddb.user/-Ddb.password");
+    }
+
+    /**
+     * Cierra todas las conexiones ociosas y marca el pool como cerrado.
+     * Las conexiones prestadas se cierran al devolverse.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destruir(pc);
+        }
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Aciertos del caché de statements sumando todas las conexiones */
+    public long getStatementCacheHits() {
+        return StatementCache.getTotalHits();
+    }
+
+    /** Fallos del caché de statements (statements preparados de nuevo) */
+    public long getStatementCacheMisses() {
+        return StatementCache.getTotalMisses();
+    }
+
+    /** Statements descartados por superar el tamaño del caché */
+    public long getStatementCacheEvictions() {
+        return StatementCache.getTotalEvictions();
+    }
+
+    /* helpers */
+
+    private PooledConnection tomarValida() throws SQLException {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            long ocioso = System.currentTimeMillis() - pc.lastReturned;
+            if (ocioso < validationIntervalMs || esValida(pc)) {
+                return pc;
+            }
+            destruir(pc);
+        }
+        return crear();
+    }
+
+    private boolean esValida(PooledConnection pc) {
+        try {
+            return !pc.physical.isClosed() && pc.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection crear() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, connectionProperties);
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destruir(PooledConnection pc) {
+        total.decrementAndGet();
+        if (pc.statements != null) {
+            pc.statements.clear();
+        }
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar conexión física del pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Devuelve una conexión prestada, restaurando el estado por defecto
+     * (autocommit, read-only) para que el siguiente usuario no herede una transacción abierta.
+     */
+    private void devolver(PooledConnection pc) {
+        borrowed.remove(pc);
+        try {
+            boolean reutilizable = !closed && total.get() <= maxSize && !pc.physical.isClosed();
+            if (reutilizable) {
+                if (!pc.physical.getAutoCommit()) {
+                    pc.physical.rollback();
+                    pc.physical.setAutoCommit(true);
+                }
+                if (pc.physical.isReadOnly()) {
+                    pc.physical.setReadOnly(false);
+                }
+                pc.physical.clearWarnings();
+                pc.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destruir(pc);
+            }
+        } catch (SQLException e) {
+            destruir(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Tarea periódica: expulsa ociosas vencidas, rellena hasta minSize y reporta fugas.
+     */
+    private void mantenimiento() {
+        try {
+            long ahora = System.currentTimeMillis();
+
+            // Las más antiguas quedan al final de la cola
+            PooledConnection pc;
+            while (total.get() > minSize && (pc = idle.pollLast()) != null) {
+                if (ahora - pc.lastReturned > idleTimeoutMs) {
+                    destruir(pc);
+                } else {
+                    idle.offerLast(pc);
+                    break;
+                }
+            }
+
+            while (!closed && total.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection nueva = crear();
+                    nueva.lastReturned = System.currentTimeMillis();
+                    idle.offerLast(nueva);
+                } finally {
+                    permits.release();
+                }
+            }
+
+            if (leakThresholdMs > 0) {
+                for (PooledConnection prestada : borrowed) {
+                    if (!prestada.leakReported && ahora - prestada.borrowedAt > leakThresholdMs) {
+                        prestada.leakReported = true;
+                        System.err.println("Posible fuga de conexión: prestada hace "
+                                + (ahora - prestada.borrowedAt) + " ms sin devolverse");
+                        if (prestada.borrowStack != null) {
+                            prestada.borrowStack.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en mantenimiento del pool de conexiones: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Error inesperado en mantenimiento del pool: " + e);
+        }
+    }
+
+    /* DataSource */
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("ConnectionPool no usa java.util.logging");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("ConnectionPool no envuelve " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Conexión física administrada por el pool, con los datos de su último préstamo.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastReturned;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowStack;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        }
+
+        /**
+         * Crea un proxy de un solo uso: después de close() cualquier llamada falla
+         * y un segundo close() no devuelve la conexión dos veces.
+         */
+        private Connection handle() {
+            AtomicBoolean cerrado = new AtomicBoolean(false);
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                switch (name) {
+                    case "close":
+                        if (cerrado.compareAndSet(false, true)) devolver(this);
+                        return null;
+                    case "isClosed":
+                        return cerrado.get() || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled[" + physical + "]";
+                    default:
+                        break;
+                }
+                if (cerrado.get()) {
+                    throw new SQLException("La conexión ya fue devuelta al pool");
+                }
+                if (statements != null && name.equals("prepareStatement") && esCacheable(args)) {
+                    int keys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                    return statements.prepare(physical, (Connection) proxy, (String) args[0], keys);
+                }
+                return invocar(physical, method, args);
+            };
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+    }
+
+    /**
+     * Solo se cachean prepareStatement(String) y prepareStatement(String, int autoGeneratedKeys).
+     * Las variantes con tipo de ResultSet o nombres de columnas se preparan siempre de nuevo.
+     */
+    private static boolean esCacheable(Object[] args) {
+        return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+    }
+
+    static Object invocar(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
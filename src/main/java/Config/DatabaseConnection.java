@@ -1,8 +1,14 @@
 package Config;
 
+import Metrics.MetricsRegistry;
+import Metrics.OperationMetrics;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 /**
  * Clase utilitaria para gestionar conexiones a la base de datos MySQL.
@@ -19,6 +25,37 @@ import java.sql.SQLException;
  *
  * Override mediante system properties:
  * - java -Ddb.url=... -Ddb.user=... -Ddb.password=...
+ *
+ * Pool de conexiones (activo por defecto, ver {@link ConnectionPool}):
+ * - -Ddb.pool.enabled=false vuelve a abrir una conexión nueva por llamada
+ * - -Ddb.pool.minSize, -Ddb.pool.maxSize
+ * - -Ddb.pool.acquireTimeoutMs, -Ddb.pool.idleTimeoutMs
+ * - -Ddb.pool.validationIntervalMs, -Ddb.pool.validationTimeoutSec
+ * - -Ddb.pool.leakThresholdMs (0 desactiva la detección de fugas)
+ * - -Ddb.pool.leakStack=true agrega al aviso de fuga la pila donde se pidió la conexión
+ *   (solo para depurar: captura la pila en cada préstamo)
+ * - -Ddb.pool.statementCacheSize (statements preparados por conexión, 0 lo desactiva)
+ *
+ * Con URLs MySQL se activan prepares del lado del servidor (-Ddb.serverPrepStmts=false
+ * lo desactiva), así los statements cacheados no se vuelven a parsear en cada ejecución.
+ * El caché de statements del driver (cachePrepStmts) solo se activa si no está el del pool
+ * (StatementCache): los dos juntos guardarían dos veces cada statement.
+ * También se activa rewriteBatchedStatements para que los lotes de INSERT viajen
+ * como un único INSERT multi-fila, y useLocalSessionState para que setAutoCommit()
+ * no consulte al servidor cuando el valor no cambia.
+ *
+ * Réplicas de lectura (ver {@link ReplicaRouter}), desactivadas si no hay -Ddb.replica.url:
+ * - -Ddb.replica.url=jdbc:mysql://r1/clinicadb,jdbc:mysql://r2/clinicadb (una o más, separadas por coma)
+ * - -Ddb.replica.user, -Ddb.replica.password (por defecto los de la primaria)
+ * - -Ddb.replica.pool.maxSize (por defecto el de la primaria)
+ * - -Ddb.replica.maxLagSec (por defecto 5), -Ddb.replica.lagCheckMs (por defecto 1000)
+ * - -Ddb.replica.fallback=primaria|replica (por defecto primaria)
+ *
+ * Trazado de SQL (ver {@link SqlTracer}): con -Ddb.trace.slowMs=N las conexiones se
+ * envuelven para medir cada statement y registrar los que tarden N ms o más.
+ *
+ * Métricas: el tiempo de obtención de conexiones se registra como la operación
+ * "DatabaseConnection.getConnection", y el estado del pool como gauges clinica_pool_*.
  */
 public final class DatabaseConnection {
     /** URL de conexión JDBC. Configurable via -Ddb.url */
@@ -30,6 +67,42 @@ public final class DatabaseConnection {
     /** Contraseña del usuario. Configurable via -Ddb.password */
     private static final String PASSWORD = System.getProperty("db.password", "mysql");
 
+    /** Usar pool de conexiones. Configurable via -Ddb.pool.enabled */
+    private static final boolean POOL_ENABLED = Boolean.parseBoolean(System.getProperty("db.pool.enabled", "true"));
+
+    /** Statements preparados por conexión del pool (0 lo desactiva). Configurable via -Ddb.pool.statementCacheSize */
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 64);
+
+    /**
+     * Fetch size para lecturas en streaming. Configurable via -Ddb.stream.fetchSize.
+     * En MySQL, Integer.MIN_VALUE hace que el driver entregue las filas de a una
+     * (salvo que la URL use useCursorFetch=true, que trabaja con un fetch size positivo).
+     */
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("db.stream.fetchSize",
+            URL.startsWith("jdbc:mysql:") && !URL.contains("useCursorFetch=true") ? Integer.MIN_VALUE : 1000);
+
+    /** Pool compartido por todos los DAOs (null si el pool está desactivado) */
+    private static final ConnectionPool POOL;
+
+    /** Réplicas de lectura. Configurable via -Ddb.replica.url (vacío: todo va a la primaria) */
+    private static final String REPLICA_URLS = System.getProperty("db.replica.url", "").trim();
+
+    private static final String REPLICA_USER = System.getProperty("db.replica.user", USER);
+
+    private static final String REPLICA_PASSWORD = System.getProperty("db.replica.password", PASSWORD);
+
+    /** Pools de las réplicas (vacío si no hay réplicas o el pool está desactivado) */
+    private static final List<ConnectionPool> REPLICA_POOLS = new ArrayList<>();
+
+    /** Enrutador de lecturas (null sin réplicas) */
+    private static final ReplicaRouter REPLICAS;
+
+    /** Tiempo de espera por una conexión (préstamo del pool o conexión nueva) */
+    private static final OperationMetrics ADQUISICION = MetricsRegistry.operacion("DatabaseConnection.getConnection");
+
+    /** Tiempo de espera por una conexión de lectura cuando hay réplicas (incluye las que terminan en la primaria) */
+    private static final OperationMetrics ADQUISICION_LECTURA = MetricsRegistry.operacion("DatabaseConnection.getReadConnection");
+
     /**
      * Bloque de inicialización estática.
      * Se ejecuta UNA SOLA VEZ cuando la clase se carga en memoria.
@@ -37,6 +110,8 @@ public final class DatabaseConnection {
      * Acciones:
      * 1. Carga el driver JDBC de MySQL
      * 2. Valida que la configuración sea correcta
+     * 3. Crea el pool de conexiones (si está habilitado)
+     * 4. Crea los pools y el enrutador de las réplicas (si hay -Ddb.replica.url)
      *
      * Si falla, lanza ExceptionInInitializerError y detiene la aplicación.
      * Esto es intencional: sin BD correcta, la app no puede funcionar.
@@ -53,6 +128,25 @@ public final class DatabaseConnection {
         } catch (IllegalStateException e) {
             throw new ExceptionInInitializerError("Error en la configuración de la base de datos: " + e.getMessage());
         }
+
+        POOL = POOL_ENABLED ? createPool() : null;
+        if (POOL != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(POOL::close, "db-pool-shutdown"));
+            registrarGaugesPool(POOL);
+        }
+
+        try {
+            REPLICAS = REPLICA_URLS.isEmpty() ? null : createReplicaRouter();
+        } catch (IllegalStateException e) {
+            throw new ExceptionInInitializerError("Error en la configuración de la base de datos: " + e.getMessage());
+        }
+        if (REPLICAS != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                REPLICAS.close();
+                REPLICA_POOLS.forEach(ConnectionPool::close);
+            }, "db-replica-shutdown"));
+            REPLICAS.registrarMetricas();
+        }
     }
 
     /**
@@ -64,12 +158,17 @@ public final class DatabaseConnection {
     }
 
     /**
-     * Obtiene una nueva conexión a la base de datos.
+     * Obtiene una conexión a la base de datos.
      *
      * Importante:
-     * - Cada llamada crea una NUEVA conexión (no hay pooling)
+     * - Con el pool habilitado, la conexión se presta del pool y close() la devuelve
+     * - Con -Ddb.pool.enabled=false cada llamada crea una NUEVA conexión
      * - El caller es responsable de cerrar la conexión (usar try-with-resources)
      * - La configuración ya fue validada en el bloque static
+     * - Dentro de {@link TransactionScope#enTransaccion} devuelve la conexión de la
+     *   transacción (su close() no la cierra)
+     * - Es una conexión de escritura: con réplicas, fija en la primaria las lecturas
+     *   siguientes de la solicitud (ver {@link ReplicaRouter})
      *
      * Uso correcto:
      * <pre>
@@ -82,7 +181,201 @@ public final class DatabaseConnection {
      * @throws SQLException Si no se puede establecer la conexión
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        Connection transaccional = TransactionScope.conexionActual();
+        if (transaccional != null) return transaccional;
+        return nuevaConexionDeEscritura();
+    }
+
+    /**
+     * Obtiene una conexión para consultas (solo SELECT).
+     *
+     * Sin réplicas configuradas equivale a getConnection(). Con réplicas, la conexión puede
+     * venir de una réplica (ver {@link ReplicaRouter} para las reglas de enrutamiento);
+     * dentro de una transacción devuelve la conexión de la transacción.
+     *
+     * @return Conexión JDBC activa (el caller la cierra)
+     * @throws SQLException Si no se puede establecer la conexión
+     */
+    public static Connection getReadConnection() throws SQLException {
+        Connection transaccional = TransactionScope.conexionActual();
+        if (transaccional != null) return transaccional;
+        if (REPLICAS == null) return nuevaConexion();
+
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            Connection conn = REPLICAS.abrirLectura(DatabaseConnection::nuevaConexion);
+            error = false;
+            return conn;
+        } finally {
+            ADQUISICION_LECTURA.registrar(System.nanoTime() - inicio, error);
+        }
+    }
+
+    /**
+     * Ejecuta la tarea cuando las réplicas ya reflejan las escrituras confirmadas hasta ahora
+     * (después del atraso máximo tolerado). Sin réplicas no hace nada.
+     */
+    public static void despuesDelRetrasoDeReplicas(Runnable tarea) {
+        if (REPLICAS != null) REPLICAS.despuesDelRetraso(tarea);
+    }
+
+    /**
+     * Conexión propia de la primaria para escribir: con réplicas, fija las lecturas
+     * siguientes en la primaria.
+     */
+    static Connection nuevaConexionDeEscritura() throws SQLException {
+        if (REPLICAS != null) ReplicaRouter.registrarEscritura();
+        return nuevaConexion();
+    }
+
+    /**
+     * Conexión propia (del pool o nueva), sin considerar la transacción del hilo.
+     */
+    static Connection nuevaConexion() throws SQLException {
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            Connection conn = POOL != null
+                    ? POOL.getConnection()
+                    : DriverManager.getConnection(URL, connectionProperties());
+            error = false;
+            return SqlTracer.isEnabled() ? SqlTracer.envolver(conn) : conn;
+        } finally {
+            ADQUISICION.registrar(System.nanoTime() - inicio, error);
+        }
+    }
+
+    /**
+     * Fetch size a usar en los streams de los DAOs (ver {@link #STREAM_FETCH_SIZE}).
+     */
+    public static int getStreamingFetchSize() {
+        return STREAM_FETCH_SIZE;
+    }
+
+    /**
+     * Retorna el pool de conexiones compartido.
+     *
+     * @return El pool, o null si se ejecuta con -Ddb.pool.enabled=false
+     */
+    public static ConnectionPool getPool() {
+        return POOL;
+    }
+
+    /**
+     * Retorna el enrutador de lecturas.
+     *
+     * @return El enrutador, o null si no hay -Ddb.replica.url
+     */
+    public static ReplicaRouter getReplicaRouter() {
+        return REPLICAS;
+    }
+
+    /**
+     * Propiedades de conexión enviadas al driver.
+     * Las opciones propias de Connector/J solo se agregan con URLs MySQL
+     * y si no vienen ya en la URL.
+     */
+    private static Properties connectionProperties() {
+        return connectionProperties(URL, USER, PASSWORD);
+    }
+
+    private static Properties connectionProperties(String url, String user, String password) {
+        Properties props = new Properties();
+        props.setProperty("user", user);
+        props.setProperty("password", password);
+        if (url.startsWith("jdbc:mysql:")) {
+            if (Boolean.parseBoolean(System.getProperty("db.serverPrepStmts", "true"))) {
+                setIfAbsent(props, url, "useServerPrepStmts", "true");
+                if (POOL_ENABLED && STATEMENT_CACHE_SIZE > 0) {
+                    setIfAbsent(props, url, "cachePrepStmts", "false");
+                } else {
+                    setIfAbsent(props, url, "cachePrepStmts", "true");
+                    setIfAbsent(props, url, "prepStmtCacheSize", "250");
+                    setIfAbsent(props, url, "prepStmtCacheSqlLimit", "2048");
+                }
+            }
+            setIfAbsent(props, url, "rewriteBatchedStatements", "true");
+            setIfAbsent(props, url, "useLocalSessionState", "true");
+        }
+        return props;
+    }
+
+    private static void setIfAbsent(Properties props, String url, String key, String value) {
+        if (!url.contains(key + "=")) {
+            props.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Crea el pool con los parámetros -Ddb.pool.*.
+     */
+    private static ConnectionPool createPool() {
+        int maxSize = Integer.getInteger("db.pool.maxSize", 10);
+        return createPool(URL, connectionProperties(), maxSize);
+    }
+
+    private static ConnectionPool createPool(String url, Properties props, int maxSize) {
+        int minSize = Integer.getInteger("db.pool.minSize", Math.min(2, maxSize));
+        return new ConnectionPool(
+                url,
+                props,
+                minSize,
+                maxSize,
+                Long.getLong("db.pool.acquireTimeoutMs", 5_000L),
+                Long.getLong("db.pool.idleTimeoutMs", 600_000L),
+                Long.getLong("db.pool.validationIntervalMs", 500L),
+                Integer.getInteger("db.pool.validationTimeoutSec", 2),
+                Long.getLong("db.pool.leakThresholdMs", 60_000L),
+                Boolean.getBoolean("db.pool.leakStack"),
+                STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Crea una fuente de conexiones (pool o DriverManager) por réplica y el enrutador.
+     */
+    private static ReplicaRouter createReplicaRouter() {
+        List<String> urls = new ArrayList<>();
+        List<ReplicaRouter.Fuente> fuentes = new ArrayList<>();
+        int maxSize = Integer.getInteger("db.replica.pool.maxSize", Integer.getInteger("db.pool.maxSize", 10));
+        for (String url : REPLICA_URLS.split(",")) {
+            String replicaUrl = url.trim();
+            if (replicaUrl.isEmpty()) continue;
+            Properties props = connectionProperties(replicaUrl, REPLICA_USER, REPLICA_PASSWORD);
+            ReplicaRouter.Fuente abrir;
+            if (POOL_ENABLED) {
+                ConnectionPool pool = createPool(replicaUrl, props, maxSize);
+                REPLICA_POOLS.add(pool);
+                abrir = pool::getConnection;
+            } else {
+                abrir = () -> DriverManager.getConnection(replicaUrl, props);
+            }
+            urls.add(replicaUrl);
+            fuentes.add(() -> {
+                Connection conn = abrir.abrir();
+                return SqlTracer.isEnabled() ? SqlTracer.envolver(conn) : conn;
+            });
+        }
+
+        String fallback = System.getProperty("db.replica.fallback", "primaria").trim().toLowerCase();
+        if (!fallback.equals("primaria") && !fallback.equals("replica")) {
+            throw new IllegalStateException("db.replica.fallback debe ser 'primaria' o 'replica', no '" + fallback + "'");
+        }
+        return new ReplicaRouter(urls, fuentes,
+                Long.getLong("db.replica.maxLagSec", 5L),
+                Long.getLong("db.replica.lagCheckMs", 1_000L),
+                fallback.equals("replica") ? ReplicaRouter.Fallback.REPLICA : ReplicaRouter.Fallback.PRIMARIA);
+    }
+
+    /**
+     * Expone el estado del pool en la exportación de métricas.
+     */
+    private static void registrarGaugesPool(ConnectionPool pool) {
+        MetricsRegistry.registrarGauge("clinica_pool_conexiones_activas", "Conexiones prestadas", pool::getActiveConnections);
+        MetricsRegistry.registrarGauge("clinica_pool_conexiones_ociosas", "Conexiones libres en el pool", pool::getIdleConnections);
+        MetricsRegistry.registrarGauge("clinica_pool_conexiones_max", "Tamaño máximo del pool", pool::getMaxSize);
+        MetricsRegistry.registrarGauge("clinica_statement_cache_hits", "PreparedStatements reutilizados", pool::getStatementCacheHits);
+        MetricsRegistry.registrarGauge("clinica_statement_cache_misses", "PreparedStatements preparados de nuevo", pool::getStatementCacheMisses);
     }
 
     /**
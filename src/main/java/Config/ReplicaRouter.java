@@ -0,0 +1,365 @@
+package Config;
+
+import Metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enrutamiento de lecturas a réplicas de la base (-Ddb.replica.url).
+ *
+ * Los DAOs piden {@link DatabaseConnection#getReadConnection()} para sus consultas y
+ * {@link DatabaseConnection#getConnection()} para las escrituras; el SQL no cambia.
+ *
+ * Reglas:
+ * - Las lecturas se reparten en round-robin entre las réplicas disponibles y al día
+ * - Lectura de lo propio: después de una escritura, las lecturas de la misma solicitud
+ *   ({@link #enSolicitud}) van a la primaria hasta que la solicitud termina. Fuera de una
+ *   solicitud, durante el retraso máximo tolerado más un intervalo de control
+ * - Dentro de una transacción (TransactionScope) se usa siempre la conexión de la transacción
+ * - Retraso: un hilo consulta cada -Ddb.replica.lagCheckMs el atraso de cada réplica
+ *   (SHOW REPLICA STATUS, o SHOW SLAVE STATUS en MySQL anterior a 8.0.22). Una réplica con
+ *   más de -Ddb.replica.maxLagSec segundos, con la replicación detenida o que no responde
+ *   deja de recibir lecturas hasta el próximo control que la encuentre al día
+ * - Sin réplicas utilizables: -Ddb.replica.fallback=primaria (por defecto) lee de la primaria;
+ *   =replica acepta datos atrasados y solo usa la primaria si ninguna réplica responde
+ * - Una réplica que no es MySQL (por ejemplo H2 en pruebas) o que no replica de nadie
+ *   se considera al día
+ *
+ * Las solicitudes que saltan de hilo deben envolver la tarea con {@link #propagar} para que
+ * la escritura de un hilo fije las lecturas del otro (RequestExecutor y AsyncClinicaService
+ * ya lo hacen).
+ */
+public final class ReplicaRouter implements AutoCloseable {
+
+    /** Qué hacer cuando ninguna réplica está al día */
+    public enum Fallback { PRIMARIA, REPLICA }
+
+    /** Origen de conexiones (pool o DriverManager) */
+    @FunctionalInterface
+    interface Fuente {
+        Connection abrir() throws SQLException;
+    }
+
+    /** Atraso de una réplica sin medición válida (caída, replicación detenida o sin controlar todavía) */
+    private static final long SIN_DATOS = -1;
+
+    /** Estado de una réplica, actualizado por el hilo de control */
+    private static final class Replica {
+        private final String url;
+        private final Fuente fuente;
+        private volatile long lagSegundos = SIN_DATOS;
+        private volatile boolean usable;
+        /** false hasta el primer control */
+        private boolean controlada;
+        /** false si el servidor no acepta SHOW REPLICA STATUS (MySQL anterior a 8.0.22) */
+        private boolean sintaxisNueva = true;
+
+        private Replica(String url, Fuente fuente) {
+            this.url = url;
+            this.fuente = fuente;
+        }
+    }
+
+    /** Escrituras de una solicitud (o de un hilo, fuera de una solicitud) */
+    private static final class Sesion {
+        private final boolean deSolicitud;
+        /** System.nanoTime() de la última escritura; 0 si no hubo */
+        private volatile long ultimaEscritura;
+
+        private Sesion(boolean deSolicitud) {
+            this.deSolicitud = deSolicitud;
+        }
+    }
+
+    private static final ThreadLocal<Sesion> SESION = new ThreadLocal<>();
+
+    private final List<Replica> replicas;
+    private final Fallback fallback;
+    private final long maxLagSegundos;
+    private final long ventanaFijadaNanos;
+    private final AtomicInteger siguiente = new AtomicInteger();
+    private final ScheduledExecutorService control;
+
+    private final LongAdder lecturasReplica = new LongAdder();
+    private final LongAdder lecturasPrimaria = new LongAdder();
+
+    /**
+     * @param urls URL de cada réplica, en el mismo orden que las fuentes
+     * @param fuentes Conexiones de cada réplica
+     * @param maxLagSegundos Atraso máximo tolerado
+     * @param intervaloControlMs Cada cuánto se mide el atraso
+     */
+    ReplicaRouter(List<String> urls, List<Fuente> fuentes, long maxLagSegundos, long intervaloControlMs, Fallback fallback) {
+        if (urls.isEmpty() || urls.size() != fuentes.size()) {
+            throw new IllegalArgumentException("Cada réplica necesita una URL y una fuente de conexiones");
+        }
+        if (maxLagSegundos < 0) {
+            throw new IllegalArgumentException("El atraso máximo no puede ser negativo");
+        }
+        if (intervaloControlMs <= 0) {
+            throw new IllegalArgumentException("El intervalo de control debe ser mayor a 0");
+        }
+        this.replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            replicas.add(new Replica(urls.get(i), fuentes.get(i)));
+        }
+        this.fallback = fallback;
+        this.maxLagSegundos = maxLagSegundos;
+        this.ventanaFijadaNanos = TimeUnit.MILLISECONDS.toNanos(maxLagSegundos * 1000 + intervaloControlMs);
+
+        this.control = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-lag");
+            t.setDaemon(true);
+            return t;
+        });
+        control.scheduleWithFixedDelay(this::controlar, 0, intervaloControlMs, TimeUnit.MILLISECONDS);
+    }
+
+    // =====================================
+    //  Solicitudes y escrituras
+    // =====================================
+
+    /**
+     * Ejecuta el trabajo como una solicitud: una escritura dentro de él fija en la primaria
+     * las lecturas siguientes hasta que termina.
+     */
+    public static <T> T enSolicitud(TransactionScope.Trabajo<T> trabajo) throws Exception {
+        Sesion previa = SESION.get();
+        SESION.set(new Sesion(true));
+        try {
+            return trabajo.ejecutar();
+        } finally {
+            restaurar(previa);
+        }
+    }
+
+    /**
+     * Variante sin resultado de {@link #enSolicitud(TransactionScope.Trabajo)}.
+     */
+    public static void enSolicitud(TransactionScope.Accion accion) throws Exception {
+        enSolicitud(() -> {
+            accion.ejecutar();
+            return null;
+        });
+    }
+
+    /**
+     * Envuelve una tarea que va a correr en otro hilo para que comparta la solicitud actual.
+     * Fuera de una solicitud devuelve la misma tarea.
+     */
+    public static <T> Callable<T> propagar(Callable<T> tarea) {
+        Sesion sesion = SESION.get();
+        if (sesion == null || !sesion.deSolicitud) return tarea;
+        return () -> {
+            Sesion previa = SESION.get();
+            SESION.set(sesion);
+            try {
+                return tarea.call();
+            } finally {
+                restaurar(previa);
+            }
+        };
+    }
+
+    /**
+     * Registra que este hilo tomó una conexión de escritura.
+     */
+    static void registrarEscritura() {
+        Sesion sesion = SESION.get();
+        if (sesion == null) {
+            sesion = new Sesion(false);
+            SESION.set(sesion);
+        }
+        sesion.ultimaEscritura = System.nanoTime();
+    }
+
+    private static void restaurar(Sesion previa) {
+        if (previa == null) SESION.remove();
+        else SESION.set(previa);
+    }
+
+    // =====================================
+    //  Enrutamiento
+    // =====================================
+
+    /**
+     * Conexión para una lectura: de una réplica o, según las reglas, de la primaria.
+     */
+    Connection abrirLectura(Fuente primaria) throws SQLException {
+        if (!fijadaAPrimaria()) {
+            Replica replica = elegir(false);
+            if (replica == null && fallback == Fallback.REPLICA) replica = elegir(true);
+            if (replica != null) {
+                try {
+                    Connection conn = replica.fuente.abrir();
+                    lecturasReplica.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    marcar(replica, false, SIN_DATOS, e.getMessage());
+                }
+            }
+        }
+        lecturasPrimaria.increment();
+        return primaria.abrir();
+    }
+
+    /**
+     * Ejecuta la tarea cuando una lectura de réplica ya no puede devolver datos anteriores
+     * a este momento (después del atraso máximo tolerado). Lo usan las cachés para repetir
+     * una invalidación que una lectura atrasada pudo deshacer.
+     */
+    void despuesDelRetraso(Runnable tarea) {
+        try {
+            control.schedule(() -> {
+                try {
+                    tarea.run();
+                } catch (RuntimeException e) {
+                    System.err.println("[Réplica] Error en una tarea diferida: " + e.getMessage());
+                }
+            }, ventanaFijadaNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // cerrado: la aplicación está terminando
+        }
+    }
+
+    private boolean fijadaAPrimaria() {
+        Sesion sesion = SESION.get();
+        if (sesion == null) return false;
+        long escritura = sesion.ultimaEscritura;
+        if (escritura == 0) return false;
+        return sesion.deSolicitud || System.nanoTime() - escritura < ventanaFijadaNanos;
+    }
+
+    /**
+     * Siguiente réplica en round-robin que cumpla las condiciones.
+     *
+     * @param aunqueAtrasada true acepta réplicas atrasadas o sin medición (solo exige que respondan)
+     */
+    private Replica elegir(boolean aunqueAtrasada) {
+        int n = replicas.size();
+        int inicio = Math.floorMod(siguiente.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((inicio + i) % n);
+            if (r.usable || (aunqueAtrasada && r.lagSegundos != SIN_DATOS)) return r;
+        }
+        return null;
+    }
+
+    // =====================================
+    //  Control de atraso
+    // =====================================
+
+    private void controlar() {
+        for (Replica r : replicas) {
+            try (Connection conn = r.fuente.abrir()) {
+                long lag = medirAtraso(r, conn);
+                marcar(r, lag != SIN_DATOS && lag <= maxLagSegundos, lag,
+                        lag == SIN_DATOS ? "replicación detenida" : "atraso de " + lag + " s");
+            } catch (SQLException | RuntimeException e) {
+                marcar(r, false, SIN_DATOS, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Segundos de atraso de la réplica, 0 si no replica de nadie (o no es MySQL),
+     * o SIN_DATOS si la replicación está detenida.
+     */
+    private static long medirAtraso(Replica r, Connection conn) throws SQLException {
+        if (!r.url.startsWith("jdbc:mysql:")) return 0;
+        if (r.sintaxisNueva) {
+            try {
+                return leerAtraso(conn, "SHOW REPLICA STATUS", "Seconds_Behind_Source");
+            } catch (SQLException e) {
+                r.sintaxisNueva = false;
+            }
+        }
+        return leerAtraso(conn, "SHOW SLAVE STATUS", "Seconds_Behind_Master");
+    }
+
+    private static long leerAtraso(Connection conn, String sql, String columna) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            if (!rs.next()) return 0;
+            long lag = rs.getLong(columna);
+            return rs.wasNull() ? SIN_DATOS : lag;
+        }
+    }
+
+    /**
+     * Actualiza el estado de la réplica y avisa cuando cambia (o si el primer control falla).
+     */
+    private void marcar(Replica r, boolean usable, long lag, String motivo) {
+        boolean antes = r.usable;
+        boolean primera = !r.controlada;
+        r.lagSegundos = lag;
+        r.usable = usable;
+        r.controlada = true;
+        if ((antes || primera) && !usable) {
+            System.err.println("[Réplica] " + r.url + " fuera de uso: " + motivo);
+        } else if (!antes && usable) {
+            System.err.println("[Réplica] " + r.url + " al día: " + motivo);
+        }
+    }
+
+    // =====================================
+    //  Estado y métricas
+    // =====================================
+
+    public long getLecturasReplica() {
+        return lecturasReplica.sum();
+    }
+
+    public long getLecturasPrimaria() {
+        return lecturasPrimaria.sum();
+    }
+
+    /** Réplicas que hoy reciben lecturas */
+    public int getReplicasUsables() {
+        int n = 0;
+        for (Replica r : replicas) if (r.usable) n++;
+        return n;
+    }
+
+    public int getCantidadReplicas() {
+        return replicas.size();
+    }
+
+    public Fallback getFallback() {
+        return fallback;
+    }
+
+    void registrarMetricas() {
+        MetricsRegistry.registrarGauge("clinica_lecturas_replica", "Lecturas atendidas por una réplica", this::getLecturasReplica);
+        MetricsRegistry.registrarGauge("clinica_lecturas_primaria", "Lecturas atendidas por la primaria", this::getLecturasPrimaria);
+        MetricsRegistry.registrarGauge("clinica_replicas_usables", "Réplicas al día recibiendo lecturas", this::getReplicasUsables);
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica r = replicas.get(i);
+            MetricsRegistry.registrarGauge("clinica_replica_" + i + "_atraso_segundos",
+                    "Atraso de " + r.url + " (-1 sin datos)", () -> r.lagSegundos);
+        }
+    }
+
+    @Override
+    public void close() {
+        control.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaRouter[réplicas=" + replicas.size() + ", usables=" + getReplicasUsables()
+                + ", maxLag=" + maxLagSegundos + "s, fallback=" + fallback + "]";
+    }
+}
@@ -0,0 +1,420 @@
+package Config;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Migraciones versionadas del esquema.
+ *
+ * Funcionamiento:
+ * - La tabla schema_version guarda las versiones ya aplicadas
+ * - Al iniciar se aplican en orden las migraciones con versión mayor a la actual
+ * - Cada paso es idempotente: CREATE TABLE IF NOT EXISTS, y los índices se crean solo
+ *   si no existe ya uno con las mismas columnas iniciales (consultando DatabaseMetaData,
+ *   así se respetan los índices creados a mano o por el script del README)
+ *
+ * Los índices siguen las condiciones exactas de los DAOs:
+ * - paciente(dni) y historia_clinica(nro_historia) únicos: buscarPorDni, buscarPorNroHistoria, existeDni/existeNroHistoria
+ * - historia_clinica(paciente_id, eliminado): el LEFT JOIN de PacienteDAO y buscarPorPacienteId
+ * - (eliminado, id) en ambas tablas: getAll, stream y la paginación "eliminado = FALSE AND id > ? ORDER BY id"
+ * - auditoria_cambio(segmento, secuencia) único: la recuperación del journal de auditoría
+ * - FULLTEXT (antecedentes, medicacion_actual, observaciones), solo MySQL: buscarTexto
+ *
+ * La columna version de paciente e historia_clinica (migración 5) la usan los UPDATE
+ * condicionales de los DAOs (control de concurrencia optimista).
+ *
+ * Modos (-Ddb.migrate):
+ * - true (por defecto): aplica las migraciones pendientes al iniciar
+ * - check: no modifica nada; informa migraciones pendientes, índices faltantes y
+ *   el plan (EXPLAIN, solo MySQL) de cada consulta de los DAOs
+ * - false: no hace nada
+ *
+ * En MySQL el DDL no es transaccional: si un paso falla, las sentencias anteriores
+ * quedan aplicadas, la versión no se registra y la migración se reintenta completa
+ * en el próximo inicio (por eso cada paso debe ser idempotente).
+ */
+public final class SchemaMigrator {
+
+    @FunctionalInterface
+    private interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    private static final class Migracion {
+        private final int version;
+        private final String descripcion;
+        private final Paso paso;
+
+        private Migracion(int version, String descripcion, Paso paso) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.paso = paso;
+        }
+    }
+
+    private static final String CREATE_SCHEMA_VERSION = """
+        CREATE TABLE IF NOT EXISTS schema_version (
+            version INT PRIMARY KEY,
+            descripcion VARCHAR(200) NOT NULL,
+            aplicada_en TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    private static final String CREATE_PACIENTE = """
+        CREATE TABLE IF NOT EXISTS paciente (
+            id INT AUTO_INCREMENT PRIMARY KEY,
+            nombre VARCHAR(100) NOT NULL,
+            apellido VARCHAR(100) NOT NULL,
+            dni VARCHAR(20) NOT NULL,
+            fecha_nacimiento DATE,
+            telefono VARCHAR(30),
+            eliminado BOOLEAN NOT NULL DEFAULT FALSE
+        )
+    """;
+
+    private static final String CREATE_HISTORIA_CLINICA = """
+        CREATE TABLE IF NOT EXISTS historia_clinica (
+            id INT AUTO_INCREMENT PRIMARY KEY,
+            nro_historia VARCHAR(30) NOT NULL,
+            grupo_sanguineo VARCHAR(5),
+            antecedentes TEXT,
+            medicacion_actual TEXT,
+            observaciones TEXT,
+            paciente_id INT,
+            fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            eliminado BOOLEAN NOT NULL DEFAULT FALSE,
+            CONSTRAINT fk_historia_paciente FOREIGN KEY (paciente_id) REFERENCES paciente(id)
+        )
+    """;
+
+    private static final String CREATE_AUDITORIA_CAMBIO = """
+        CREATE TABLE IF NOT EXISTS auditoria_cambio (
+            id BIGINT AUTO_INCREMENT PRIMARY KEY,
+            segmento BIGINT NOT NULL,
+            secuencia BIGINT NOT NULL,
+            entidad VARCHAR(30) NOT NULL,
+            entidad_id INT NOT NULL,
+            operacion VARCHAR(20) NOT NULL,
+            fecha TIMESTAMP(3) NOT NULL,
+            detalle TEXT
+        )
+    """;
+
+    /** Índices esperados: tabla, nombre, único, columnas (los nombres de los únicos están también en Dao.SqlErrors) */
+    private static final Object[][] INDICES = {
+            {"paciente", "uk_paciente_dni", true, new String[]{"dni"}},
+            {"paciente", "idx_paciente_eliminado_id", false, new String[]{"eliminado", "id"}},
+            {"historia_clinica", "uk_historia_nro", true, new String[]{"nro_historia"}},
+            {"historia_clinica", "idx_historia_paciente", false, new String[]{"paciente_id", "eliminado"}},
+            {"historia_clinica", "idx_historia_eliminado_id", false, new String[]{"eliminado", "id"}},
+    };
+
+    /** Columnas del índice FULLTEXT (mismo orden que el MATCH de HistoriaClinicaDAO.buscarTexto) */
+    private static final String[] COLUMNAS_TEXTO = {"antecedentes", "medicacion_actual", "observaciones"};
+
+    /** Lista ordenada de migraciones. Para cambiar el esquema, agregar una nueva al final. */
+    private static final List<Migracion> MIGRACIONES = List.of(
+            new Migracion(1, "Tablas paciente e historia_clinica", conn -> {
+                ejecutar(conn, CREATE_PACIENTE);
+                ejecutar(conn, CREATE_HISTORIA_CLINICA);
+            }),
+            new Migracion(2, "Índices para las consultas de los DAOs", conn -> {
+                for (Object[] indice : INDICES) {
+                    crearIndice(conn, (String) indice[0], (String) indice[1], (Boolean) indice[2], (String[]) indice[3]);
+                }
+            }),
+            new Migracion(3, "Tabla auditoria_cambio (journal de auditoría)", conn -> {
+                ejecutar(conn, CREATE_AUDITORIA_CAMBIO);
+                crearIndice(conn, "auditoria_cambio", "uk_auditoria_segmento_secuencia", true, new String[]{"segmento", "secuencia"});
+                crearIndice(conn, "auditoria_cambio", "idx_auditoria_entidad", false, new String[]{"entidad", "entidad_id", "fecha"});
+            }),
+            new Migracion(4, "Índice FULLTEXT de historia_clinica (búsqueda de texto)", conn -> {
+                // En otras bases (H2 de los benchmarks) HistoriaClinicaDAO.buscarTexto usa LIKE
+                if (esMySql(conn) && buscarIndice(conn, "historia_clinica", false, COLUMNAS_TEXTO) == null) {
+                    ejecutar(conn, "CREATE FULLTEXT INDEX ft_historia_texto ON historia_clinica ("
+                            + String.join(", ", COLUMNAS_TEXTO) + ")");
+                }
+            }),
+            new Migracion(5, "Columna version (control de concurrencia optimista)", conn -> {
+                for (String tabla : new String[]{"paciente", "historia_clinica"}) {
+                    if (!existeColumna(conn, tabla, "version")) {
+                        ejecutar(conn, "ALTER TABLE " + tabla + " ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+                    }
+                }
+            })
+    );
+
+    /**
+     * Consultas de los DAOs que se verifican con EXPLAIN en modo check
+     * (mismas condiciones WHERE / ORDER BY; los parámetros son valores de ejemplo del tipo correcto).
+     */
+    private static final Object[][] CONSULTAS = {
+            {"PacienteDAO.getById", """
+                SELECT p.id, h.id FROM paciente p
+                LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+                WHERE p.id = ? AND p.eliminado = FALSE""", new Object[]{1}},
+            {"PacienteDAO.buscarPorDni", """
+                SELECT p.id, h.id FROM paciente p
+                LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+                WHERE p.eliminado = FALSE AND p.dni = ?""", new Object[]{"0"}},
+            {"PacienteDAO.getPagina", """
+                SELECT p.id, h.id FROM paciente p
+                LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+                WHERE p.eliminado = FALSE AND p.id > ? ORDER BY p.id LIMIT ?""", new Object[]{0, 20}},
+            {"PacienteDAO.existeDni", """
+                SELECT 1 FROM paciente WHERE dni = ? AND id <> ? LIMIT 1""", new Object[]{"0", 0}},
+            {"HistoriaClinicaDAO.buscarPorNroHistoria", """
+                SELECT id FROM historia_clinica WHERE eliminado = FALSE AND nro_historia = ?""", new Object[]{"0"}},
+            {"HistoriaClinicaDAO.buscarPorPacienteId", """
+                SELECT id FROM historia_clinica WHERE eliminado = FALSE AND paciente_id = ?""", new Object[]{1L}},
+            {"HistoriaClinicaDAO.getPagina", """
+                SELECT id FROM historia_clinica WHERE eliminado = FALSE AND id > ? ORDER BY id LIMIT ?""", new Object[]{0, 20}},
+            {"HistoriaClinicaDAO.existeNroHistoria", """
+                SELECT 1 FROM historia_clinica WHERE nro_historia = ? AND id <> ? LIMIT 1""", new Object[]{"0", 0}},
+            {"HistoriaClinicaDAO.buscarTexto", """
+                SELECT id FROM historia_clinica WHERE eliminado = FALSE
+                AND MATCH(antecedentes, medicacion_actual, observaciones) AGAINST (? IN BOOLEAN MODE)""", new Object[]{"+ejemplo*"}},
+    };
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Ejecuta el modo configurado en -Ddb.migrate. Se llama al iniciar la aplicación.
+     *
+     * @throws IllegalStateException Si una migración falla (sin esquema correcto la app no puede funcionar)
+     */
+    public static void alIniciar() {
+        String modo = System.getProperty("db.migrate", "true").toLowerCase(Locale.ROOT);
+        try {
+            switch (modo) {
+                case "true" -> {
+                    int aplicadas = migrar();
+                    if (aplicadas > 0) System.out.println("Esquema actualizado: " + aplicadas + " migración(es) aplicada(s)");
+                }
+                case "check" -> verificar().forEach(System.out::println);
+                case "false" -> { }
+                default -> throw new IllegalArgumentException("db.migrate debe ser true, false o check: " + modo);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al migrar el esquema de la base de datos: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Aplica las migraciones pendientes.
+     * @return Cantidad de migraciones aplicadas
+     */
+    public static int migrar() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            ejecutar(conn, CREATE_SCHEMA_VERSION);
+            int actual = versionActual(conn);
+            int aplicadas = 0;
+            for (Migracion m : MIGRACIONES) {
+                if (m.version <= actual) continue;
+                m.paso.aplicar(conn);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, descripcion) VALUES (?, ?)")) {
+                    stmt.setInt(1, m.version);
+                    stmt.setString(2, m.descripcion);
+                    stmt.executeUpdate();
+                }
+                System.out.println("Migración " + m.version + " aplicada: " + m.descripcion);
+                aplicadas++;
+            }
+            return aplicadas;
+        }
+    }
+
+    /**
+     * Verifica el esquema sin modificarlo.
+     * @return Líneas del informe (migraciones pendientes, índices faltantes, planes de consulta)
+     */
+    public static List<String> verificar() throws SQLException {
+        List<String> informe = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            int actual = existeTabla(conn, "schema_version") ? versionActual(conn) : 0;
+            int ultima = MIGRACIONES.get(MIGRACIONES.size() - 1).version;
+            informe.add("Versión del esquema: " + actual + " (última: " + ultima + ")");
+            for (Migracion m : MIGRACIONES) {
+                if (m.version > actual) informe.add("  PENDIENTE  migración " + m.version + ": " + m.descripcion);
+            }
+
+            informe.add("Índices:");
+            for (Object[] indice : INDICES) {
+                String tabla = (String) indice[0];
+                String[] columnas = (String[]) indice[3];
+                boolean existe = existeTabla(conn, tabla) && buscarIndice(conn, tabla, (Boolean) indice[2], columnas) != null;
+                informe.add(String.format("  %-9s %s(%s)", existe ? "OK" : "FALTA", tabla, String.join(", ", columnas)));
+            }
+
+            if (esMySql(conn)) {
+                informe.add("Planes de consulta (EXPLAIN):");
+                for (Object[] consulta : CONSULTAS) {
+                    informe.addAll(explicar(conn, (String) consulta[0], (String) consulta[1], (Object[]) consulta[2]));
+                }
+            } else {
+                informe.add("EXPLAIN solo se analiza en MySQL");
+            }
+        }
+        return informe;
+    }
+
+    /**
+     * Permite migrar o verificar sin iniciar la aplicación:
+     * java Config.SchemaMigrator [check]
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length > 0 && args[0].equalsIgnoreCase("check")) {
+            verificar().forEach(System.out::println);
+        } else {
+            System.out.println("Migraciones aplicadas: " + migrar());
+        }
+    }
+
+    /* helpers */
+
+    private static void ejecutar(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private static int versionActual(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Crea el índice salvo que ya exista uno equivalente (mismas columnas iniciales y, si se pide único, único).
+     */
+    private static void crearIndice(Connection conn, String tabla, String nombre, boolean unico, String... columnas)
+            throws SQLException {
+        String existente = buscarIndice(conn, tabla, unico, columnas);
+        if (existente != null) return;
+        ejecutar(conn, "CREATE " + (unico ? "UNIQUE " : "") + "INDEX " + nombre
+                + " ON " + tabla + " (" + String.join(", ", columnas) + ")");
+    }
+
+    /**
+     * Busca un índice cuyas primeras columnas sean exactamente las pedidas.
+     * Un índice único solo se acepta como equivalente si también es único y tiene esas mismas columnas.
+     *
+     * @return Nombre del índice encontrado, o null
+     */
+    private static String buscarIndice(Connection conn, String tabla, boolean unico, String... columnas)
+            throws SQLException {
+        List<String> buscadas = Arrays.stream(columnas).map(c -> c.toLowerCase(Locale.ROOT)).toList();
+        for (Map.Entry<String, Indice> e : indices(conn, tabla).entrySet()) {
+            Indice indice = e.getValue();
+            if (indice.columnas.size() < buscadas.size()) continue;
+            if (!indice.columnas.subList(0, buscadas.size()).equals(buscadas)) continue;
+            if (unico && (!indice.unico || indice.columnas.size() != buscadas.size())) continue;
+            return e.getKey();
+        }
+        return null;
+    }
+
+    private static final class Indice {
+        private final boolean unico;
+        private final List<String> columnas = new ArrayList<>();
+
+        private Indice(boolean unico) {
+            this.unico = unico;
+        }
+    }
+
+    /**
+     * Índices de la tabla (incluida la clave primaria) con sus columnas en orden.
+     */
+    private static Map<String, Indice> indices(Connection conn, String tabla) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        Map<String, Indice> indices = new LinkedHashMap<>();
+        for (String nombre : new String[]{tabla, tabla.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), conn.getSchema(), nombre, false, false)) {
+                while (rs.next()) {
+                    String indice = rs.getString("INDEX_NAME");
+                    String columna = rs.getString("COLUMN_NAME");
+                    if (indice == null || columna == null) continue;
+                    boolean unico = !rs.getBoolean("NON_UNIQUE");
+                    int posicion = rs.getInt("ORDINAL_POSITION");
+                    List<String> cols = indices.computeIfAbsent(indice, k -> new Indice(unico)).columnas;
+                    while (cols.size() < posicion) cols.add(null);
+                    cols.set(posicion - 1, columna.toLowerCase(Locale.ROOT));
+                }
+            }
+            if (!indices.isEmpty()) break;
+        }
+        return indices;
+    }
+
+    private static boolean esMySql(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+    }
+
+    private static boolean existeTabla(Connection conn, String tabla) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String nombre : new String[]{tabla, tabla.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), conn.getSchema(), nombre, new String[]{"TABLE"})) {
+                if (rs.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean existeColumna(Connection conn, String tabla, String columna) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String nombre : new String[]{tabla, tabla.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getColumns(conn.getCatalog(), conn.getSchema(), nombre, null)) {
+                while (rs.next()) {
+                    if (columna.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * EXPLAIN de MySQL: marca como problema los accesos de tipo ALL (recorrido completo),
+     * los que no usan índice y los que ordenan con filesort.
+     */
+    private static List<String> explicar(Connection conn, String nombre, String sql, Object[] parametros)
+            throws SQLException {
+        List<String> lineas = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parametros.length; i++) stmt.setObject(i + 1, parametros[i]);
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                boolean tieneExtra = false;
+                for (int i = 1; i <= md.getColumnCount(); i++) {
+                    if (md.getColumnLabel(i).equalsIgnoreCase("Extra")) tieneExtra = true;
+                }
+                while (rs.next()) {
+                    String tabla = rs.getString("table");
+                    String tipo = rs.getString("type");
+                    String clave = rs.getString("key");
+                    String extra = tieneExtra ? rs.getString("Extra") : null;
+                    boolean problema = "ALL".equalsIgnoreCase(tipo) || (tabla != null && clave == null)
+                            || (extra != null && extra.contains("filesort"));
+                    lineas.add(String.format("  %-9s %-40s %s: type=%s key=%s rows=%s%s",
+                            problema ? "REVISAR" : "OK", nombre, tabla, tipo, clave, rs.getString("rows"),
+                            extra != null && !extra.isEmpty() ? " (" + extra + ")" : ""));
+                }
+            }
+        }
+        return lineas;
+    }
+}
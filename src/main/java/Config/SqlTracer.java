@@ -0,0 +1,292 @@
+package Config;
+
+import Metrics.LatencyHistogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Trazado de SQL: mide cada ejecución de los statements obtenidos de
+ * {@link DatabaseConnection#getConnection()}.
+ *
+ * Funcionamiento:
+ * - La conexión se envuelve en un proxy; prepareStatement() y createStatement()
+ *   devuelven statements envueltos que registran los parámetros y miden execute*()
+ * - Las ejecuciones que superan -Ddb.trace.slowMs se informan por System.err
+ *   con la SQL, la duración y los parámetros
+ * - Por cada plantilla de SQL (la consulta con sus '?') se acumulan ejecuciones,
+ *   errores, filas modificadas y percentiles de latencia
+ *
+ * Datos de pacientes: por defecto los parámetros se enmascaran. Solo se muestran
+ * null, números enteros (IDs, límites) y booleanos; textos y fechas aparecen como
+ * '***'(largo). -Ddb.trace.maskBinds=false los muestra completos (solo en desarrollo).
+ *
+ * Costo: desactivado (sin -Ddb.trace.slowMs) DatabaseConnection devuelve la conexión
+ * sin envolver; el único costo es una comparación de un boolean estático.
+ *
+ * Limitación: en executeQuery() se mide hasta recibir el ResultSet. En lecturas en
+ * streaming, el tiempo de recorrer las filas no queda incluido.
+ */
+public final class SqlTracer {
+
+    /** Umbral del log de consultas lentas en ms (0 = todas; negativo = trazado desactivado) */
+    private static final long SLOW_MS = Long.getLong("db.trace.slowMs", -1L);
+
+    private static final boolean MASK_BINDS = Boolean.parseBoolean(System.getProperty("db.trace.maskBinds", "true"));
+
+    private static final ConcurrentHashMap<String, Plantilla> PLANTILLAS = new ConcurrentHashMap<>();
+
+    /** SQL original → plantilla normalizada (evita normalizar en cada prepare) */
+    private static final ConcurrentHashMap<String, String> NORMALIZADAS = new ConcurrentHashMap<>();
+
+    /** Límite de plantillas distintas (SQL armada dinámicamente); el resto se acumula en OTRAS */
+    private static final int MAX_PLANTILLAS = 500;
+    private static final String OTRAS = "(otras)";
+
+    private SqlTracer() {
+    }
+
+    public static boolean isEnabled() {
+        return SLOW_MS >= 0;
+    }
+
+    /**
+     * Envuelve la conexión para trazar sus statements.
+     */
+    public static Connection envolver(Connection conn) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement": {
+                    PreparedStatement ps = (PreparedStatement) ConnectionPool.invocar(conn, method, args);
+                    return envolverStatement(ps, PreparedStatement.class, (String) args[0]);
+                }
+                case "createStatement": {
+                    Statement st = (Statement) ConnectionPool.invocar(conn, method, args);
+                    return envolverStatement(st, Statement.class, null);
+                }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Traced[" + conn + "]";
+                default:
+                    return ConnectionPool.invocar(conn, method, args);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    /**
+     * Estadísticas acumuladas por plantilla de SQL.
+     */
+    public static Map<String, Plantilla> getPlantillas() {
+        return PLANTILLAS;
+    }
+
+    /**
+     * Resumen de texto de las plantillas, ordenado por tiempo total (la más costosa primero).
+     */
+    public static String reporte() {
+        List<Plantilla> lista = new ArrayList<>(PLANTILLAS.values());
+        lista.sort(Comparator.comparingLong((Plantilla p) -> p.getLatencias().getSum()).reversed());
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%10s %10s %8s %10s %10s %10s  %s%n",
+                "total_ms", "n", "errores", "media_ms", "p99_ms", "filas", "sql"));
+        for (Plantilla p : lista) {
+            LatencyHistogram h = p.getLatencias();
+            sb.append(String.format("%10.1f %10d %8d %10.3f %10.3f %10d  %s%n",
+                    h.getSum() / 1e6, h.getCount(), p.getErrores(), h.getMean() / 1e6,
+                    h.getPercentile(99) / 1e6, p.getFilas(), p.getSql()));
+        }
+        return sb.toString();
+    }
+
+    public static void reset() {
+        PLANTILLAS.clear();
+        NORMALIZADAS.clear();
+    }
+
+    /**
+     * Acumulado de una plantilla de SQL.
+     */
+    public static final class Plantilla {
+        private final String sql;
+        private final LatencyHistogram latencias = new LatencyHistogram();
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder filas = new LongAdder();
+
+        private Plantilla(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public LatencyHistogram getLatencias() {
+            return latencias;
+        }
+
+        public long getErrores() {
+            return errores.sum();
+        }
+
+        /** Filas modificadas informadas por executeUpdate / executeBatch */
+        public long getFilas() {
+            return filas.sum();
+        }
+    }
+
+    /* helpers */
+
+    private static <S extends Statement> S envolverStatement(S target, Class<S> tipo, String sql) {
+        TracedStatement traza = new TracedStatement(target, sql);
+        return tipo.cast(Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo}, traza));
+    }
+
+    /**
+     * Registra la ejecución en su plantilla y la informa si superó el umbral.
+     */
+    private static void registrar(String sql, long nanos, boolean error, long filas,
+                                  Object[] binds, int cantidadBinds, int lote) {
+        String plantilla = NORMALIZADAS.get(sql);
+        if (plantilla == null) {
+            plantilla = NORMALIZADAS.size() < MAX_PLANTILLAS ? NORMALIZADAS.computeIfAbsent(sql, SqlTracer::normalizar) : OTRAS;
+        }
+        Plantilla p = PLANTILLAS.computeIfAbsent(plantilla, Plantilla::new);
+        p.latencias.record(nanos);
+        if (error) p.errores.increment();
+        if (filas > 0) p.filas.add(filas);
+
+        long ms = nanos / 1_000_000;
+        if (ms >= SLOW_MS) {
+            StringBuilder sb = new StringBuilder("[SQL lento] ").append(ms).append(" ms");
+            if (error) sb.append(" (error)");
+            if (lote > 0) sb.append(" | lote de ").append(lote);
+            sb.append(" | ").append(plantilla);
+            if (binds != null) sb.append(" | parámetros=").append(formatearBinds(binds, cantidadBinds));
+            System.err.println(sb);
+        }
+    }
+
+    private static String normalizar(String sql) {
+        return sql.strip().replaceAll("\\s+", " ");
+    }
+
+    private static String formatearBinds(Object[] binds, int cantidad) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 1; i <= cantidad; i++) {
+            if (i > 1) sb.append(", ");
+            sb.append(formatearValor(binds[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String formatearValor(Object valor) {
+        if (valor == null) return "null";
+        if (valor instanceof Integer || valor instanceof Long || valor instanceof Short || valor instanceof Boolean) {
+            return valor.toString();
+        }
+        String texto = valor.toString();
+        return MASK_BINDS ? "'***'(" + texto.length() + ")" : "'" + texto + "'";
+    }
+
+    /**
+     * Handler de Statement / PreparedStatement: guarda los parámetros (índice → valor)
+     * y mide execute*, executeQuery, executeUpdate y executeBatch.
+     */
+    private static final class TracedStatement implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private Object[] binds = new Object[8];
+        private int ultimoBind;
+        private int lote;
+        private String ultimoSqlLote;
+
+        private TracedStatement(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return ejecutar(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer indice) {
+                guardarBind(indice, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(binds, null);
+                ultimoBind = 0;
+            } else if (name.equals("addBatch")) {
+                lote++;
+                if (args != null && args.length == 1) ultimoSqlLote = (String) args[0];
+            } else if (name.equals("clearBatch")) {
+                lote = 0;
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return ConnectionPool.invocar(target, method, args);
+        }
+
+        private Object ejecutar(Method method, Object[] args) throws Throwable {
+            String ejecutada = args != null && args.length > 0 && args[0] instanceof String s ? s : sql;
+            if (ejecutada == null) ejecutada = ultimoSqlLote != null ? ultimoSqlLote : "(batch)";
+            boolean esLote = method.getName().startsWith("executeBatch") || method.getName().startsWith("executeLargeBatch");
+            int tamanioLote = esLote ? lote : 0;
+
+            long inicio = System.nanoTime();
+            boolean error = true;
+            Object resultado = null;
+            try {
+                resultado = ConnectionPool.invocar(target, method, args);
+                error = false;
+                return resultado;
+            } finally {
+                long nanos = System.nanoTime() - inicio;
+                registrar(ejecutada, nanos, error, filasModificadas(resultado),
+                        sql != null ? binds : null, ultimoBind, tamanioLote);
+                if (esLote) lote = 0;
+            }
+        }
+
+        private void guardarBind(int indice, Object valor) {
+            if (indice < 1) return;
+            if (indice >= binds.length) binds = Arrays.copyOf(binds, Math.max(indice + 1, binds.length * 2));
+            binds[indice] = valor;
+            if (indice > ultimoBind) ultimoBind = indice;
+        }
+
+        private static long filasModificadas(Object resultado) {
+            if (resultado instanceof Integer n) return Math.max(n, 0);
+            if (resultado instanceof Long n) return Math.max(n, 0);
+            if (resultado instanceof int[] cuentas) {
+                long total = 0;
+                for (int c : cuentas) if (c > 0) total += c;
+                return total;
+            }
+            if (resultado instanceof long[] cuentas) {
+                long total = 0;
+                for (long c : cuentas) if (c > 0) total += c;
+                return total;
+            }
+            return 0;
+        }
+    }
+}
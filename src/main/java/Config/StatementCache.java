@@ -0,0 +1,213 @@
+package Config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU de PreparedStatement asociada a UNA conexión física del pool.
+ *
+ * Funcionamiento:
+ * - La clave es el texto SQL más el flag de claves generadas
+ * - prepare() retira el statement del caché mientras está en uso, así dos usos
+ *   anidados del mismo SQL en la misma conexión nunca comparten statement
+ * - close() sobre el proxy cierra los ResultSet que sigan abiertos, limpia parámetros
+ *   y lote, y lo reingresa al caché
+ * - Los ResultSet también se envuelven: getStatement() devuelve el proxy, nunca el
+ *   statement físico (cerrarlo no debe sacarlo del caché ni usarlo otro después)
+ * - Al superar el tamaño máximo se cierra el statement menos usado recientemente
+ *
+ * Statements a los que se les cambió fetchSize, maxRows, timeout u otras opciones
+ * se cierran de verdad en lugar de reingresar, para que el siguiente uso no herede esa configuración.
+ *
+ * No es thread-safe: una conexión prestada la usa un solo hilo a la vez.
+ */
+final class StatementCache {
+
+    /** Métodos que cambian el estado del statement más allá de los parámetros */
+    private static final Set<String> MODIFICADORES = Set.of(
+            "setFetchSize", "setMaxRows", "setLargeMaxRows", "setQueryTimeout", "setFetchDirection",
+            "setEscapeProcessing", "setPoolable", "setCursorName", "setMaxFieldSize", "closeOnCompletion");
+
+    private static final LongAdder TOTAL_HITS = new LongAdder();
+    private static final LongAdder TOTAL_MISSES = new LongAdder();
+    private static final LongAdder TOTAL_EVICTIONS = new LongAdder();
+
+    private final int maxSize;
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    TOTAL_EVICTIONS.increment();
+                    cerrarSilencioso(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Obtiene un statement del caché o lo prepara sobre la conexión física.
+     *
+     * @param physical Conexión física dueña del caché
+     * @param owner Proxy de la conexión prestada (lo que devuelve getConnection() del statement)
+     * @param sql Texto SQL
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS o NO_GENERATED_KEYS
+     */
+    PreparedStatement prepare(Connection physical, Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + "|" + sql;
+        PreparedStatement stmt = statements.remove(key);
+        if (stmt != null && !stmt.isClosed()) {
+            TOTAL_HITS.increment();
+        } else {
+            TOTAL_MISSES.increment();
+            stmt = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                    ? physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : physical.prepareStatement(sql);
+        }
+        return envolver(key, stmt, owner);
+    }
+
+    /**
+     * Olvida todos los statements sin cerrarlos (usado cuando se cierra la conexión física,
+     * que ya los cierra).
+     */
+    void clear() {
+        statements.clear();
+    }
+
+    /** Aciertos acumulados de todas las conexiones del proceso */
+    static long getTotalHits() {
+        return TOTAL_HITS.sum();
+    }
+
+    /** Fallos acumulados de todas las conexiones del proceso */
+    static long getTotalMisses() {
+        return TOTAL_MISSES.sum();
+    }
+
+    /** Statements cerrados por superar el tamaño del caché */
+    static long getTotalEvictions() {
+        return TOTAL_EVICTIONS.sum();
+    }
+
+    /* helpers */
+
+    private PreparedStatement envolver(String key, PreparedStatement stmt, Connection owner) {
+        AtomicBoolean cerrado = new AtomicBoolean(false);
+        AtomicBoolean modificado = new AtomicBoolean(false);
+        List<ResultSet> resultados = new ArrayList<>(1);
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (cerrado.compareAndSet(false, true)) {
+                        cerrarResultados(resultados);
+                        devolver(key, stmt, modificado.get());
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrado.get() || stmt.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + stmt + "]";
+                default:
+                    break;
+            }
+            if (cerrado.get()) {
+                throw new SQLException("El statement ya fue cerrado");
+            }
+            if (MODIFICADORES.contains(name)) {
+                modificado.set(true);
+            }
+            Object resultado = ConnectionPool.invocar(stmt, method, args);
+            if (resultado instanceof ResultSet rs) {
+                // executeQuery, getResultSet, getGeneratedKeys: se registra para cerrarlo al devolver
+                resultados.removeIf(StatementCache::estaCerrado);
+                resultados.add(rs);
+                return envolverResultado(rs, (Statement) proxy);
+            }
+            return resultado;
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    /** ResultSet cuyo getStatement() devuelve el proxy del statement */
+    private static ResultSet envolverResultado(ResultSet rs, Statement owner) {
+        InvocationHandler handler = (proxy, method, args) -> switch (method.getName()) {
+            case "getStatement" -> owner;
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> ConnectionPool.invocar(rs, method, args);
+        };
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    private static void cerrarResultados(List<ResultSet> resultados) {
+        for (ResultSet rs : resultados) {
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                System.err.println("Error al cerrar un ResultSet del statement en caché: " + e.getMessage());
+            }
+        }
+        resultados.clear();
+    }
+
+    private static boolean estaCerrado(ResultSet rs) {
+        try {
+            return rs.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private void devolver(String key, PreparedStatement stmt, boolean modificado) {
+        try {
+            if (modificado || stmt.isClosed()) {
+                cerrarSilencioso(stmt);
+                return;
+            }
+            stmt.clearParameters();
+            stmt.clearBatch();
+            stmt.clearWarnings();
+            PreparedStatement previo = statements.put(key, stmt);
+            if (previo != null && previo != stmt) {
+                cerrarSilencioso(previo);
+            }
+        } catch (SQLException e) {
+            cerrarSilencioso(stmt);
+        }
+    }
+
+    private static void cerrarSilencioso(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar statement en caché: " + e.getMessage());
+        }
+    }
+}
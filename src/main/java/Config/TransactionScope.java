@@ -0,0 +1,209 @@
+package Config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unidad de trabajo: liga una conexión y su transacción ({@link TransactionManager}) al hilo actual.
+ *
+ * Dentro de enTransaccion(...), DatabaseConnection.getConnection() devuelve siempre la misma
+ * conexión, así cualquier método de los DAOs participa de la transacción sin recibirla por parámetro:
+ * <pre>
+ * TransactionScope.enTransaccion(() -> {
+ *     pacienteDAO.actualizar(paciente);
+ *     historiaDAO.actualizar(historia);
+ * });   // una conexión y un commit; si algo falla, rollback de todo
+ * </pre>
+ *
+ * Reglas:
+ * - Un enTransaccion dentro de otro se suma a la transacción exterior (el commit lo hace el
+ *   más externo). Si el interior falla, la transacción queda marcada para rollback aunque el
+ *   caller atrape la excepción
+ * - Sobre la conexión compartida, close(), commit() y setAutoCommit() no tienen efecto, y
+ *   rollback() marca la transacción para rollback: los DAOs que manejan su propia transacción
+ *   (por ejemplo insertarLote) quedan dentro de la exterior
+ * - despuesDelCommit(tarea): efectos que solo deben ocurrir si se confirma (caché, auditoría,
+ *   índices en memoria). Fuera de una transacción la tarea se ejecuta en el momento
+ * - La conexión está ligada al hilo: el trabajo no debe continuar en otros hilos
+ * - fueraDeTransaccion(tarea): corre una tarea ajena a la transacción en este mismo hilo
+ *   (por ejemplo una tarea asíncrona que se ejecuta en el llamador) sin sumarla a ella
+ *
+ * Usa ThreadLocal (ScopedValue sigue en preview en Java 17 y 21); se limpia siempre al salir.
+ */
+public final class TransactionScope {
+
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        T ejecutar() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Accion {
+        void ejecutar() throws Exception;
+    }
+
+    private static final ThreadLocal<Ambito> ACTUAL = new ThreadLocal<>();
+
+    private static final class Ambito {
+        private final TransactionManager tx;
+        private final Connection compartida;
+        private final List<Runnable> despuesDelCommit = new ArrayList<>();
+        private boolean soloRollback;
+
+        private Ambito(TransactionManager tx) {
+            this.tx = tx;
+            this.compartida = compartir(tx.getConnection(), this);
+        }
+    }
+
+    private TransactionScope() {
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción: commit si termina bien, rollback si lanza una excepción.
+     * Si ya hay una transacción en este hilo, el trabajo se suma a ella.
+     *
+     * @return Lo que devuelva el trabajo
+     */
+    public static <T> T enTransaccion(Trabajo<T> trabajo) throws Exception {
+        Ambito exterior = ACTUAL.get();
+        if (exterior != null) {
+            try {
+                return trabajo.ejecutar();
+            } catch (Throwable t) {
+                exterior.soloRollback = true;
+                throw t;
+            }
+        }
+
+        Ambito ambito;
+        T resultado;
+        try (TransactionManager tx = new TransactionManager(DatabaseConnection.nuevaConexionDeEscritura())) {
+            tx.startTransaction();
+            ambito = new Ambito(tx);
+            ACTUAL.set(ambito);
+            try {
+                resultado = trabajo.ejecutar();
+                if (ambito.soloRollback) {
+                    throw new SQLException("La transacción quedó marcada para rollback por un error en una operación interna");
+                }
+                tx.commit();
+            } catch (Throwable t) {
+                tx.rollback();
+                throw t;
+            } finally {
+                ACTUAL.remove();
+            }
+        }
+        for (Runnable tarea : ambito.despuesDelCommit) {
+            try {
+                tarea.run();
+            } catch (RuntimeException e) {
+                System.err.println("[Transacción] Error en una acción posterior al commit: " + e.getMessage());
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Variante sin resultado de {@link #enTransaccion(Trabajo)}.
+     */
+    public static void enTransaccion(Accion accion) throws Exception {
+        enTransaccion(() -> {
+            accion.ejecutar();
+            return null;
+        });
+    }
+
+    /**
+     * Programa una tarea para después del commit de la transacción actual (se descarta si hay rollback).
+     * Sin transacción activa se ejecuta en el momento.
+     */
+    public static void despuesDelCommit(Runnable tarea) {
+        Ambito ambito = ACTUAL.get();
+        if (ambito == null) tarea.run();
+        else ambito.despuesDelCommit.add(tarea);
+    }
+
+    /**
+     * Ejecuta la tarea con la transacción de este hilo suspendida: la tarea usa conexiones
+     * propias, con su propio commit, y sus despuesDelCommit corren en el momento. Al terminar,
+     * la transacción vuelve a quedar ligada al hilo. Sin transacción activa solo ejecuta la tarea.
+     */
+    public static void fueraDeTransaccion(Runnable tarea) {
+        Ambito ambito = ACTUAL.get();
+        if (ambito == null) {
+            tarea.run();
+            return;
+        }
+        ACTUAL.remove();
+        try {
+            tarea.run();
+        } finally {
+            ACTUAL.set(ambito);
+        }
+    }
+
+    public static boolean isActiva() {
+        return ACTUAL.get() != null;
+    }
+
+    /**
+     * Conexión de la transacción actual, para los métodos que reciben la conexión por parámetro
+     * (insertTx, insertLoteTx).
+     *
+     * @throws IllegalStateException Si no hay una transacción activa en este hilo
+     */
+    public static Connection conexion() {
+        Ambito ambito = ACTUAL.get();
+        if (ambito == null) {
+            throw new IllegalStateException("No hay una transacción activa en este hilo");
+        }
+        return ambito.compartida;
+    }
+
+    /** Conexión compartida de la transacción actual, o null (usado por DatabaseConnection) */
+    static Connection conexionActual() {
+        Ambito ambito = ACTUAL.get();
+        return ambito != null ? ambito.compartida : null;
+    }
+
+    /* helpers */
+
+    /**
+     * Envoltorio de la conexión transaccional: el commit, el rollback y el cierre
+     * los decide el ámbito, no cada DAO.
+     */
+    private static Connection compartir(Connection conn, Ambito ambito) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    return null;
+                case "rollback":
+                    if (args == null) {
+                        ambito.soloRollback = true;
+                        return null;
+                    }
+                    return ConnectionPool.invocar(conn, method, args);   // rollback(Savepoint)
+                case "getAutoCommit":
+                    return false;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Tx[" + conn + "]";
+                default:
+                    return ConnectionPool.invocar(conn, method, args);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
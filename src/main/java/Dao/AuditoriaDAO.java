@@ -0,0 +1,78 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
+import Models.CambioAuditoria;
+
+import java.sql.*;
+import java.util.List;
+
+/**
+ * DAO de la tabla auditoria_cambio (solo inserciones; la tabla es de solo agregado).
+ *
+ * Cada fila lleva el segmento del journal que la generó y su secuencia dentro de él;
+ * el índice único (segmento, secuencia) permite reconocer las entradas ya escritas
+ * al recuperar un journal después de una caída.
+ */
+public class AuditoriaDAO {
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("AuditoriaDAO");
+
+    private static final String INSERT_SQL = """
+        INSERT INTO auditoria_cambio
+        (segmento, secuencia, entidad, entidad_id, operacion, fecha, detalle)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    private static final String ULTIMA_SECUENCIA_SQL =
+            "SELECT MAX(secuencia) FROM auditoria_cambio WHERE segmento = ?";
+
+    /**
+     * Inserta los cambios en un único lote y una única transacción.
+     */
+    public void insertarLote(long segmento, List<CambioAuditoria> cambios) throws Exception {
+        METRICAS.medir("insertarLote", () -> {
+            if (cambios.isEmpty()) return;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                    for (CambioAuditoria c : cambios) {
+                        stmt.setLong(1, segmento);
+                        stmt.setLong(2, c.getSecuencia());
+                        stmt.setString(3, c.getEntidad());
+                        stmt.setInt(4, c.getEntidadId());
+                        stmt.setString(5, c.getOperacion());
+                        stmt.setTimestamp(6, Timestamp.from(c.getFecha()));
+                        stmt.setString(7, c.getDetalle());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    conn.commit();
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Última secuencia guardada de un segmento del journal.
+     *
+     * @return La secuencia, o 0 si el segmento no tiene filas
+     */
+    public long ultimaSecuencia(long segmento) throws Exception {
+        return METRICAS.medir("ultimaSecuencia", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(ULTIMA_SECUENCIA_SQL)) {
+                stmt.setLong(1, segmento);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            }
+        });
+    }
+}
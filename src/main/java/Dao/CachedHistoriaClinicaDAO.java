@@ -0,0 +1,169 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import Config.TransactionScope;
+import Models.HistoriaClinica;
+
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * HistoriaClinicaDAO con caché de lectura delante de getById y buscarPorNroHistoria.
+ *
+ * - Lecturas: se consulta el caché y, si no está, la base (read-through)
+ * - Escrituras (insertar, actualizar, eliminar): invalidan la entrada afectada y avisan
+ *   a los listeners registrados (CachedPacienteDAO guarda la historia dentro del paciente)
+ * - Dentro de una transacción (TransactionScope) las lecturas van a la base sin usar ni
+ *   llenar el caché, y las invalidaciones y avisos se repiten después del commit
+ * - Con réplicas de lectura se repiten una vez más pasado el atraso máximo tolerado:
+ *   una lectura de una réplica atrasada pudo volver a cachear la versión anterior
+ *
+ * Configuración: -Ddb.cache.maxSize (por defecto 1000), -Ddb.cache.ttlMs (por defecto 60000).
+ */
+public class CachedHistoriaClinicaDAO extends HistoriaClinicaDAO {
+
+    private final EntityCache<HistoriaClinica> cache;
+
+    /** Reciben (id de historia, id de paciente o null) después de cada escritura */
+    private final List<BiConsumer<Integer, Long>> listeners = new CopyOnWriteArrayList<>();
+
+    public CachedHistoriaClinicaDAO() {
+        this(Integer.getInteger("db.cache.maxSize", 1000), Long.getLong("db.cache.ttlMs", 60_000L));
+    }
+
+    public CachedHistoriaClinicaDAO(int maxSize, long ttlMs) {
+        this.cache = new EntityCache<>(maxSize, ttlMs, HistoriaClinica::getNroHistoria, CachedHistoriaClinicaDAO::copiar);
+        cache.registrarMetricas("historias");
+    }
+
+    @Override
+    public HistoriaClinica getById(int id) throws Exception {
+        if (TransactionScope.isActiva()) return super.getById(id);
+        HistoriaClinica hc = cache.get(id);
+        if (hc != null) return hc;
+        long generacion = cache.generacion();
+        hc = super.getById(id);
+        cache.put(hc, generacion);
+        return hc;
+    }
+
+    @Override
+    public HistoriaClinica buscarPorNroHistoria(String nro) throws Exception {
+        if (TransactionScope.isActiva()) return super.buscarPorNroHistoria(nro);
+        if (nro != null) {
+            HistoriaClinica hc = cache.getPorClave(nro.trim());
+            if (hc != null) return hc;
+        }
+        long generacion = cache.generacion();
+        HistoriaClinica hc = super.buscarPorNroHistoria(nro);
+        cache.put(hc, generacion);
+        return hc;
+    }
+
+    /**
+     * Resuelve desde el caché los IDs que estén y consulta a la base solo el resto.
+     */
+    @Override
+    public Map<Integer, HistoriaClinica> getByIds(Collection<Integer> ids) throws Exception {
+        if (TransactionScope.isActiva()) return super.getByIds(ids);
+        Map<Integer, HistoriaClinica> resultado = new HashMap<>();
+        Set<Integer> faltantes = new LinkedHashSet<>();
+        for (Integer id : ids) {
+            if (id == null || resultado.containsKey(id) || faltantes.contains(id)) continue;
+            HistoriaClinica hc = cache.get(id);
+            if (hc != null) resultado.put(id, hc);
+            else faltantes.add(id);
+        }
+        if (!faltantes.isEmpty()) {
+            long generacion = cache.generacion();
+            Map<Integer, HistoriaClinica> leidos = super.getByIds(faltantes);
+            for (HistoriaClinica hc : leidos.values()) cache.put(hc, generacion);
+            resultado.putAll(leidos);
+        }
+        return resultado;
+    }
+
+    @Override
+    public void insertar(HistoriaClinica hc) throws Exception {
+        super.insertar(hc);
+        notificar(hc.getId(), hc.getPacienteId());
+    }
+
+    @Override
+    public void insertTx(HistoriaClinica hc, Connection conn) throws Exception {
+        super.insertTx(hc, conn);
+        notificar(hc.getId(), hc.getPacienteId());
+    }
+
+    @Override
+    public void insertLoteTx(List<HistoriaClinica> historias, Connection conn) throws Exception {
+        super.insertLoteTx(historias, conn);
+        for (HistoriaClinica hc : historias) notificar(hc.getId(), hc.getPacienteId());
+    }
+
+    @Override
+    public void actualizar(HistoriaClinica hc) throws Exception {
+        try {
+            super.actualizar(hc);
+        } finally {
+            invalidar(hc.getId(), hc.getPacienteId());
+        }
+    }
+
+    @Override
+    public void eliminar(int id) throws Exception {
+        try {
+            super.eliminar(id);
+        } finally {
+            invalidar(id, null);
+        }
+    }
+
+    /**
+     * Registra un callback que se ejecuta después de cada escritura de una historia.
+     */
+    public void alModificar(BiConsumer<Integer, Long> listener) {
+        listeners.add(listener);
+    }
+
+    public EntityCache<HistoriaClinica> getCache() {
+        return cache;
+    }
+
+    /* helpers */
+    private void invalidar(int hcId, Long pacienteId) {
+        cache.invalidate(hcId);
+        if (TransactionScope.isActiva()) TransactionScope.despuesDelCommit(() -> cache.invalidate(hcId));
+        TransactionScope.despuesDelCommit(() -> DatabaseConnection.despuesDelRetrasoDeReplicas(() -> cache.invalidate(hcId)));
+        notificar(hcId, pacienteId);
+    }
+
+    /**
+     * Avisa a los listeners ahora, dentro de una transacción otra vez después del commit
+     * y, con réplicas, otra vez pasado el atraso máximo tolerado.
+     */
+    private void notificar(int hcId, Long pacienteId) {
+        avisar(hcId, pacienteId);
+        if (TransactionScope.isActiva()) TransactionScope.despuesDelCommit(() -> avisar(hcId, pacienteId));
+        TransactionScope.despuesDelCommit(() -> DatabaseConnection.despuesDelRetrasoDeReplicas(() -> avisar(hcId, pacienteId)));
+    }
+
+    private void avisar(int hcId, Long pacienteId) {
+        for (BiConsumer<Integer, Long> listener : listeners) listener.accept(hcId, pacienteId);
+    }
+
+    static HistoriaClinica copiar(HistoriaClinica hc) {
+        if (hc == null) return null;
+        HistoriaClinica copia = new HistoriaClinica(hc.getId(), hc.isEliminado(), hc.getNroHistoria(), hc.getGrupoSanguineo(),
+                hc.getAntecedentes(), hc.getMedaicacionActual(), hc.getObservaciones(), hc.getPacienteId());
+        copia.setVersion(hc.getVersion());
+        return copia;
+    }
+}
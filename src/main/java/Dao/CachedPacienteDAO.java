@@ -0,0 +1,163 @@
+package Dao;
+
+import Config.DatabaseConnection;
+import Config.TransactionScope;
+import Models.Paciente;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PacienteDAO con caché de lectura delante de getById y buscarPorDni.
+ *
+ * - Lecturas: se consulta el caché y, si no está, la base (read-through)
+ * - getByIds y buscarPorDnis solo consultan a la base las claves que no están en caché
+ * - actualizar y eliminar invalidan la entrada del paciente
+ * - Si el DAO de historias también es cacheado, cualquier escritura de una historia
+ *   invalida el paciente que la contiene (la historia viaja dentro del Paciente)
+ * - Dentro de una transacción (TransactionScope) las lecturas van a la base sin usar ni
+ *   llenar el caché (pueden ver cambios sin confirmar), y las invalidaciones se repiten
+ *   después del commit
+ * - Con réplicas de lectura las invalidaciones se repiten pasado el atraso máximo tolerado:
+ *   una lectura de una réplica atrasada pudo volver a cachear la versión anterior
+ *
+ * Configuración: -Ddb.cache.maxSize (por defecto 1000), -Ddb.cache.ttlMs (por defecto 60000).
+ */
+public class CachedPacienteDAO extends PacienteDAO {
+
+    private final EntityCache<Paciente> cache;
+
+    public CachedPacienteDAO(HistoriaClinicaDAO historiaClinicaDAO) {
+        this(historiaClinicaDAO, Integer.getInteger("db.cache.maxSize", 1000), Long.getLong("db.cache.ttlMs", 60_000L));
+    }
+
+    public CachedPacienteDAO(HistoriaClinicaDAO historiaClinicaDAO, int maxSize, long ttlMs) {
+        super(historiaClinicaDAO);
+        this.cache = new EntityCache<>(maxSize, ttlMs, Paciente::getDni, CachedPacienteDAO::copiar);
+        cache.registrarMetricas("pacientes");
+        if (historiaClinicaDAO instanceof CachedHistoriaClinicaDAO cached) {
+            // CachedHistoriaClinicaDAO ya repite el aviso después del commit
+            cached.alModificar((hcId, pacienteId) -> cache.invalidateIf(p ->
+                    (pacienteId != null && p.getId() == pacienteId)
+                            || (p.getHistoriaClinica() != null && p.getHistoriaClinica().getId() == hcId)));
+        }
+    }
+
+    @Override
+    public Paciente getById(int id) throws Exception {
+        if (TransactionScope.isActiva()) return super.getById(id);
+        Paciente p = cache.get(id);
+        if (p != null) return p;
+        long generacion = cache.generacion();
+        p = super.getById(id);
+        cache.put(p, generacion);
+        return p;
+    }
+
+    @Override
+    public Paciente buscarPorDni(String dni) throws Exception {
+        if (TransactionScope.isActiva()) return super.buscarPorDni(dni);
+        if (dni != null) {
+            Paciente p = cache.getPorClave(dni.trim());
+            if (p != null) return p;
+        }
+        long generacion = cache.generacion();
+        Paciente p = super.buscarPorDni(dni);
+        cache.put(p, generacion);
+        return p;
+    }
+
+    /**
+     * Resuelve desde el caché los IDs que estén y consulta a la base solo el resto.
+     */
+    @Override
+    public Map<Integer, Paciente> getByIds(Collection<Integer> ids) throws Exception {
+        if (TransactionScope.isActiva()) return super.getByIds(ids);
+        Map<Integer, Paciente> resultado = new HashMap<>();
+        Set<Integer> faltantes = new LinkedHashSet<>();
+        for (Integer id : ids) {
+            if (id == null || resultado.containsKey(id) || faltantes.contains(id)) continue;
+            Paciente p = cache.get(id);
+            if (p != null) resultado.put(id, p);
+            else faltantes.add(id);
+        }
+        if (!faltantes.isEmpty()) {
+            long generacion = cache.generacion();
+            Map<Integer, Paciente> leidos = super.getByIds(faltantes);
+            for (Paciente p : leidos.values()) cache.put(p, generacion);
+            resultado.putAll(leidos);
+        }
+        return resultado;
+    }
+
+    /**
+     * Resuelve desde el caché los DNI que estén y consulta a la base solo el resto.
+     */
+    @Override
+    public Map<String, Paciente> buscarPorDnis(Collection<String> dnis) throws Exception {
+        if (TransactionScope.isActiva()) return super.buscarPorDnis(dnis);
+        Map<String, Paciente> resultado = new HashMap<>();
+        List<String> faltantes = new ArrayList<>();
+        for (String dni : dnis) {
+            if (dni == null || resultado.containsKey(dni)) continue;
+            Paciente p = cache.getPorClave(dni.trim());
+            if (p != null) resultado.put(dni, p);
+            else faltantes.add(dni);
+        }
+        if (!faltantes.isEmpty()) {
+            long generacion = cache.generacion();
+            Map<String, Paciente> leidos = super.buscarPorDnis(faltantes);
+            for (Paciente p : leidos.values()) cache.put(p, generacion);
+            resultado.putAll(leidos);
+        }
+        return resultado;
+    }
+
+    @Override
+    public void actualizar(Paciente paciente) throws Exception {
+        try {
+            super.actualizar(paciente);
+        } finally {
+            invalidar(paciente.getId());
+        }
+    }
+
+    @Override
+    public void eliminar(int id) throws Exception {
+        try {
+            super.eliminar(id);
+        } finally {
+            invalidar(id);
+        }
+    }
+
+    public EntityCache<Paciente> getCache() {
+        return cache;
+    }
+
+    /* helpers */
+
+    /**
+     * Invalida ahora y, dentro de una transacción, otra vez después del commit: una lectura
+     * concurrente pudo volver a cachear la versión anterior mientras la transacción seguía abierta.
+     * Con réplicas, una vez más cuando ninguna réplica en uso puede tener la versión anterior.
+     */
+    private void invalidar(int id) {
+        cache.invalidate(id);
+        if (TransactionScope.isActiva()) TransactionScope.despuesDelCommit(() -> cache.invalidate(id));
+        TransactionScope.despuesDelCommit(() -> DatabaseConnection.despuesDelRetrasoDeReplicas(() -> cache.invalidate(id)));
+    }
+
+    static Paciente copiar(Paciente p) {
+        if (p == null) return null;
+        Paciente copia = new Paciente(p.getId(), p.isEliminado(), p.getNombre(), p.getApellido(), p.getDni(),
+                p.getFechaNacimiento(), CachedHistoriaClinicaDAO.copiar(p.getHistoriaClinica()));
+        copia.setVersion(p.getVersion());
+        return copia;
+    }
+}
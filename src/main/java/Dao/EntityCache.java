@@ -0,0 +1,256 @@
+package Dao;
+
+import Metrics.MetricsRegistry;
+import Models.Base;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caché en memoria de entidades por ID, con un índice secundario por clave de negocio
+ * (DNI, número de historia).
+ *
+ * Características:
+ * - Tamaño acotado con expulsión LRU (LinkedHashMap en orden de acceso)
+ * - Vencimiento por TTL desde que la entidad se cargó
+ * - Guarda y devuelve copias: modificar la entidad recibida no altera el caché
+ * - Estadísticas de aciertos, fallos y expulsiones
+ *
+ * Carreras lectura/escritura: el caller toma {@link #generacion()} ANTES de leer la base
+ * y lo pasa a {@link #put(Base, long)}. Si hubo una invalidación en el medio, el valor
+ * leído puede estar desactualizado y no se guarda.
+ */
+public final class EntityCache<T extends Base> {
+
+    private final int maxSize;
+    private final long ttlMs;
+    private final Function<T, String> claveSecundaria;
+    private final UnaryOperator<T> copiador;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Integer, Entrada<T>> porId;
+    private final Map<String, Integer> porClave = new HashMap<>();
+    private final AtomicLong generacion = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize Máximo de entidades en caché
+     * @param ttlMs Tiempo de vida de cada entrada
+     * @param claveSecundaria Extrae la clave de negocio (puede devolver null)
+     * @param copiador Crea una copia independiente de la entidad
+     */
+    public EntityCache(int maxSize, long ttlMs, Function<T, String> claveSecundaria, UnaryOperator<T> copiador) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("El tamaño del caché debe ser mayor a 0");
+        }
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        this.claveSecundaria = claveSecundaria;
+        this.copiador = copiador;
+        this.porId = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true);
+    }
+
+    /**
+     * Busca por ID.
+     * @return Copia de la entidad, o null si no está o venció
+     */
+    public T get(int id) {
+        lock.lock();
+        try {
+            return leer(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Busca por clave de negocio (DNI o número de historia).
+     * @return Copia de la entidad, o null si no está o venció
+     */
+    public T getPorClave(String clave) {
+        if (clave == null) return null;
+        lock.lock();
+        try {
+            Integer id = porClave.get(clave);
+            if (id == null) {
+                misses.increment();
+                return null;
+            }
+            return leer(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Generación actual de invalidaciones. Tomarla antes de leer la base.
+     */
+    public long generacion() {
+        return generacion.get();
+    }
+
+    /**
+     * Guarda una copia de la entidad si no hubo invalidaciones desde {@code generacionLeida}.
+     */
+    public void put(T entidad, long generacionLeida) {
+        if (entidad == null) return;
+        T copia = copiador.apply(entidad);
+        lock.lock();
+        try {
+            if (generacion.get() != generacionLeida) return;
+            quitar(copia.getId());
+            porId.put(copia.getId(), new Entrada<>(copia, System.currentTimeMillis() + ttlMs));
+            String clave = claveSecundaria.apply(copia);
+            if (clave != null) porClave.put(clave, copia.getId());
+
+            Iterator<Map.Entry<Integer, Entrada<T>>> it = porId.entrySet().iterator();
+            while (porId.size() > maxSize && it.hasNext()) {
+                Entrada<T> eldest = it.next().getValue();
+                it.remove();
+                quitarClave(eldest.valor);
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Elimina la entidad con ese ID (y su clave secundaria).
+     */
+    public void invalidate(int id) {
+        lock.lock();
+        try {
+            generacion.incrementAndGet();
+            quitar(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Elimina todas las entidades que cumplen la condición.
+     */
+    public void invalidateIf(Predicate<T> condicion) {
+        lock.lock();
+        try {
+            generacion.incrementAndGet();
+            Iterator<Entrada<T>> it = porId.values().iterator();
+            while (it.hasNext()) {
+                Entrada<T> entrada = it.next();
+                if (condicion.test(entrada.valor)) {
+                    it.remove();
+                    quitarClave(entrada.valor);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            generacion.incrementAndGet();
+            porId.clear();
+            porClave.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return porId.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Proporción de búsquedas resueltas desde el caché (0 si todavía no hubo búsquedas).
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Expone tamaño, aciertos, fallos y expulsiones como gauges clinica_cache_{nombre}_*.
+     */
+    public void registrarMetricas(String nombre) {
+        String prefijo = "clinica_cache_" + nombre + "_";
+        MetricsRegistry.registrarGauge(prefijo + "tamanio", "Entradas en el caché de " + nombre, this::size);
+        MetricsRegistry.registrarGauge(prefijo + "hits", "Búsquedas resueltas desde el caché de " + nombre, this::getHits);
+        MetricsRegistry.registrarGauge(prefijo + "misses", "Búsquedas que fueron a la base (" + nombre + ")", this::getMisses);
+        MetricsRegistry.registrarGauge(prefijo + "evictions", "Expulsiones LRU del caché de " + nombre, this::getEvictions);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EntityCache[tamaño=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.1f%%]",
+                size(), maxSize, getHits(), getMisses(), getEvictions(), getHitRate() * 100);
+    }
+
+    /* helpers (siempre con el lock tomado) */
+
+    private T leer(int id) {
+        Entrada<T> entrada = porId.get(id);
+        if (entrada == null) {
+            misses.increment();
+            return null;
+        }
+        if (entrada.expiraEn < System.currentTimeMillis()) {
+            quitar(id);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copiador.apply(entrada.valor);
+    }
+
+    private void quitar(int id) {
+        Entrada<T> anterior = porId.remove(id);
+        if (anterior != null) quitarClave(anterior.valor);
+    }
+
+    private void quitarClave(T valor) {
+        String clave = claveSecundaria.apply(valor);
+        if (clave != null) porClave.remove(clave, valor.getId());
+    }
+
+    private static final class Entrada<T> {
+        private final T valor;
+        private final long expiraEn;
+
+        private Entrada(T valor, long expiraEn) {
+            this.valor = valor;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package Dao;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface GenericDAO<T> {
     // Esta es una interfaz genérica que define métodos comunes para trabajar con cualquier entidad.
@@ -9,9 +12,19 @@ public interface GenericDAO<T> {
 
     void insertar(T entidad) throws Exception;
     void insertTx(T entidad, Connection conn) throws Exception;
+    // Inserción masiva con addBatch/executeBatch; asigna los IDs generados a cada entidad.
+    // insertarLote confirma cada Lotes.TAMANIO filas; insertLoteTx usa la transacción del caller.
+    void insertarLote(List<T> entidades) throws Exception;
+    void insertLoteTx(List<T> entidades, Connection conn) throws Exception;
     void actualizar(T entidad)throws Exception;
     void eliminar(int id)throws Exception;
     T getById(int id)throws Exception;
+    // Búsqueda de muchos IDs en pocas consultas (IN por partes). Devuelve solo los encontrados.
+    Map<Integer, T> getByIds(Collection<Integer> ids) throws Exception;
     List<T> getAll()throws Exception;
+    // Paginación por clave (keyset): devuelve hasta 'limite' entidades con id > despuesDeId, ordenadas por id.
+    List<T> getPagina(int despuesDeId, int limite) throws Exception;
+    // Recorre todas las entidades sin cargarlas en memoria. El Stream retiene una conexión: cerrarlo siempre.
+    Stream<T> stream() throws Exception;
 
 }
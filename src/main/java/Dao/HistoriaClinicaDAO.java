@@ -1,152 +1,435 @@
 package Dao;
 
 import Config.DatabaseConnection;
-import Models.GrupoSanguineo;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
 import Models.HistoriaClinica;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * DAO para HistoriaClinica - actualizado para mapear todos los atributos del modelo:
- * nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado
+ * nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
  */
 public class HistoriaClinicaDAO implements GenericDAO<HistoriaClinica> {
 
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("HistoriaClinicaDAO");
+
     private static final String INSERT_SQL = """
         INSERT INTO historia_clinica
         (nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id)
         VALUES (?, ?, ?, ?, ?, ?)
     """;
 
+    /** Solo actualiza si la fila sigue en la versión leída (control de concurrencia optimista) */
     private static final String UPDATE_SQL = """
         UPDATE historia_clinica
-        SET nro_historia = ?, grupo_sanguineo = ?, antecedentes = ?, medicacion_actual = ?, observaciones = ?, paciente_id = ?
-        WHERE id = ? AND eliminado = FALSE
+        SET nro_historia = ?, grupo_sanguineo = ?, antecedentes = ?, medicacion_actual = ?, observaciones = ?, paciente_id = ?,
+            version = version + 1
+        WHERE id = ? AND version = ? AND eliminado = FALSE
     """;
 
+    private static final String SELECT_VERSION_SQL = "SELECT version FROM historia_clinica WHERE id = ? AND eliminado = FALSE";
+
     private static final String DELETE_SQL = "UPDATE historia_clinica SET eliminado = TRUE WHERE id = ?";
 
+    // RowMappers lee las columnas de los SELECT por posición: mantener el orden
     private static final String SELECT_BY_ID_SQL = """
-        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
         FROM historia_clinica
         WHERE id = ? AND eliminado = FALSE
     """;
 
     private static final String SELECT_ALL_SQL = """
-        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
         FROM historia_clinica
         WHERE eliminado = FALSE
         ORDER BY id
     """;
 
+    private static final String SELECT_PAGE_SQL = """
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
+        FROM historia_clinica
+        WHERE eliminado = FALSE AND id > ?
+        ORDER BY id
+        LIMIT ?
+    """;
+
     private static final String SEARCH_BY_NRO_SQL = """
-        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
         FROM historia_clinica
         WHERE eliminado = FALSE AND nro_historia = ?
     """;
 
+    /**
+     * Búsqueda de texto con el índice FULLTEXT ft_historia_texto (MySQL, ver SchemaMigrator).
+     * La relevancia va después de las columnas que lee RowMappers.
+     */
+    private static final String SEARCH_TEXT_SQL = """
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version,
+               MATCH(antecedentes, medicacion_actual, observaciones) AGAINST (? IN BOOLEAN MODE) AS relevancia
+        FROM historia_clinica
+        WHERE eliminado = FALSE AND MATCH(antecedentes, medicacion_actual, observaciones) AGAINST (? IN BOOLEAN MODE)
+        ORDER BY relevancia DESC, id
+        LIMIT ? OFFSET ?
+    """;
+
+    /**
+     * Alternativa sin FULLTEXT (otras bases, por ejemplo H2 en los benchmarks, o MySQL sin el
+     * índice: -Ddb.migrate=false o esquema creado a mano): recorre la tabla
+     */
+    private static final String SEARCH_TEXT_LIKE_SQL = """
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
+        FROM historia_clinica
+        WHERE eliminado = FALSE
+          AND (LOWER(antecedentes) LIKE ? OR LOWER(medicacion_actual) LIKE ? OR LOWER(observaciones) LIKE ?)
+        ORDER BY id
+        LIMIT ? OFFSET ?
+    """;
+
+    /** Palabras más cortas no entran en el índice FULLTEXT de InnoDB (innodb_ft_min_token_size) */
+    private static final int MIN_PALABRA = 3;
+
+    /**
+     * Índices FULLTEXT de historia_clinica sobre exactamente las columnas del MATCH
+     * (en otro orden o con otras columnas MySQL rechaza la consulta con el error 1191).
+     */
+    private static final String FULLTEXT_INDEX_SQL = """
+        SELECT index_name
+        FROM information_schema.statistics
+        WHERE table_schema = DATABASE() AND table_name = 'historia_clinica' AND index_type = 'FULLTEXT'
+        GROUP BY index_name
+        HAVING GROUP_CONCAT(column_name ORDER BY column_name) = 'antecedentes,medicacion_actual,observaciones'
+    """;
+
+    /** true si la base es MySQL y tiene el índice FULLTEXT (se detecta con la primera búsqueda de texto) */
+    private static volatile Boolean fullText;
+
     private static final String SEARCH_BY_PACIENTE_SQL = """
-        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
         FROM historia_clinica
         WHERE eliminado = FALSE AND paciente_id = ?
     """;
 
+    private static final String[] SELECT_BY_IDS_SQL = Lotes.variantesIn("""
+        SELECT id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual, observaciones, paciente_id, fecha_creacion, eliminado, version
+        FROM historia_clinica
+        WHERE eliminado = FALSE AND id IN (%s)
+    """);
+
+    /** Sin filtrar eliminado: el índice único de nro_historia incluye las bajas lógicas (ver existeNroHistoria) */
+    private static final String[] EXISTS_NROS_SQL = Lotes.variantesIn("""
+        SELECT nro_historia FROM historia_clinica
+        WHERE nro_historia IN (%s)
+    """);
+
+    private static final String EXISTS_NRO_SQL = """
+        SELECT 1 FROM historia_clinica
+        WHERE nro_historia = ? AND id <> ?
+        LIMIT 1
+    """;
+
     @Override
     public void insertar(HistoriaClinica hc) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            setParameters(stmt, hc);
-            stmt.executeUpdate();
-            setGeneratedId(stmt, hc);
-        }
+        METRICAS.medir("insertar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                setParameters(stmt, hc);
+                stmt.executeUpdate();
+                setGeneratedId(stmt, hc);
+            }
+        });
     }
 
     @Override
     public void insertTx(HistoriaClinica hc, Connection conn) throws Exception {
-        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            setParameters(stmt, hc);
-            stmt.executeUpdate();
-            setGeneratedId(stmt, hc);
-        }
+        METRICAS.medir("insertTx", () -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                setParameters(stmt, hc);
+                stmt.executeUpdate();
+                setGeneratedId(stmt, hc);
+            }
+        });
     }
 
+    @Override
+    public void insertarLote(List<HistoriaClinica> historias) throws Exception {
+        METRICAS.medir("insertarLote", () -> {
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (List<HistoriaClinica> lote : Lotes.partir(historias, Lotes.TAMANIO)) {
+                        insertLoteTx(lote, conn);
+                        conn.commit();
+                    }
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void insertLoteTx(List<HistoriaClinica> historias, Connection conn) throws Exception {
+        METRICAS.medir("insertLoteTx", () -> {
+            if (historias.isEmpty()) return;
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (HistoriaClinica hc : historias) {
+                    setParameters(stmt, hc);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet gk = stmt.getGeneratedKeys()) {
+                    for (HistoriaClinica hc : historias) {
+                        if (!gk.next()) throw new SQLException("No se generaron ids para todas las historias del lote");
+                        hc.setId(gk.getInt(1));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Actualiza la historia si nadie la modificó desde que se leyó; después incrementa su versión.
+     *
+     * @throws VersionConflictException Si la fila tiene otra versión (no se guarda nada)
+     */
     @Override
     public void actualizar(HistoriaClinica hc) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
-            stmt.setString(1, hc.getNroHistoria());
-            stmt.setString(2, hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().getSimbolo() : null);
-            stmt.setString(3, hc.getAntecedentes());
-            stmt.setString(4, hc.getMedaicacionActual());
-            stmt.setString(5, hc.getObservaciones());
-            if (hc.getPacienteId() != null && hc.getPacienteId() > 0) {
-                stmt.setLong(6, hc.getPacienteId());
-            } else {
-                stmt.setNull(6, Types.BIGINT);
-            }
-            stmt.setInt(7, hc.getId());
-
-            int affected = stmt.executeUpdate();
-            if (affected == 0) throw new SQLException("No se actualizó historia clínica (id=" + hc.getId() + ")");
-        }
+        METRICAS.medir("actualizar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                stmt.setString(1, hc.getNroHistoria());
+                stmt.setString(2, hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().getSimbolo() : null);
+                stmt.setString(3, hc.getAntecedentes());
+                stmt.setString(4, hc.getMedaicacionActual());
+                stmt.setString(5, hc.getObservaciones());
+                if (hc.getPacienteId() != null && hc.getPacienteId() > 0) {
+                    stmt.setLong(6, hc.getPacienteId());
+                } else {
+                    stmt.setNull(6, Types.BIGINT);
+                }
+                stmt.setInt(7, hc.getId());
+                stmt.setLong(8, hc.getVersion());
+
+                int affected = stmt.executeUpdate();
+                if (affected == 0) {
+                    Long actual = PacienteDAO.versionActual(conn, SELECT_VERSION_SQL, hc.getId());
+                    if (actual != null) throw new VersionConflictException("HistoriaClinica", hc.getId(), hc.getVersion(), actual);
+                    throw new SQLException("No se actualizó historia clínica (id=" + hc.getId() + ")");
+                }
+                hc.setVersion(hc.getVersion() + 1);
+            }
+        });
     }
 
     @Override
     public void eliminar(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(DELETE_SQL)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
-            if (affected == 0) throw new SQLException("No se encontró historia clínica con id=" + id);
-        }
+        METRICAS.medir("eliminar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(DELETE_SQL)) {
+                stmt.setInt(1, id);
+                int affected = stmt.executeUpdate();
+                if (affected == 0) throw new SQLException("No se encontró historia clínica con id=" + id);
+            }
+        });
     }
 
     @Override
     public HistoriaClinica getById(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ID_SQL)) {
-            stmt.setInt(1, id);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) return mapResultSet(rs);
+        return METRICAS.medir("getById", () -> {
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ID_SQL)) {
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return RowMappers.historia(rs);
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     @Override
     public List<HistoriaClinica> getAll() throws Exception {
-        List<HistoriaClinica> result = new ArrayList<>();
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(SELECT_ALL_SQL)) {
-            while (rs.next()) result.add(mapResultSet(rs));
-        }
-        return result;
+        return METRICAS.medir("getAll", () -> {
+            List<HistoriaClinica> result = new ArrayList<>();
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(SELECT_ALL_SQL)) {
+                while (rs.next()) result.add(RowMappers.historia(rs));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<HistoriaClinica> getPagina(int despuesDeId, int limite) throws Exception {
+        return METRICAS.medir("getPagina", () -> {
+            List<HistoriaClinica> result = new ArrayList<>(limite);
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_PAGE_SQL)) {
+                stmt.setInt(1, despuesDeId);
+                stmt.setInt(2, limite);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) result.add(RowMappers.historia(rs));
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Busca muchas historias por ID con consultas IN (hasta Lotes.MAX_IN IDs por consulta)
+     * sobre una sola conexión.
+     *
+     * @return Historias encontradas por ID; los IDs inexistentes o eliminados no aparecen
+     */
+    @Override
+    public Map<Integer, HistoriaClinica> getByIds(Collection<Integer> ids) throws Exception {
+        return METRICAS.medir("getByIds", () -> {
+            Map<Integer, HistoriaClinica> resultado = new HashMap<>();
+            List<Integer> distintos = ids.stream().filter(Objects::nonNull).distinct().toList();
+            if (distintos.isEmpty()) return resultado;
+            try (Connection conn = DatabaseConnection.getReadConnection()) {
+                Lotes.consultarPorIn(conn, SELECT_BY_IDS_SQL, distintos, RowMappers.HISTORIA,
+                        hc -> resultado.put(hc.getId(), hc));
+            }
+            return resultado;
+        });
+    }
+
+    /**
+     * Recorre todos los registros activos en modo streaming (fila por fila, sin ArrayList).
+     * La conexión queda tomada hasta cerrar el Stream o leer la última fila.
+     */
+    @Override
+    public Stream<HistoriaClinica> stream() throws Exception {
+        return METRICAS.medir("stream", () -> {
+            Connection conn = DatabaseConnection.getReadConnection();
+            PreparedStatement stmt = null;
+            try {
+                stmt = conn.prepareStatement(SELECT_ALL_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(DatabaseConnection.getStreamingFetchSize());
+                ResultSet rs = stmt.executeQuery();
+                return ResultSetStream.of(conn, stmt, rs, RowMappers.HISTORIA);
+            } catch (SQLException | RuntimeException e) {
+                ResultSetStream.cerrarTodo(stmt, conn);
+                throw e;
+            }
+        });
     }
 
     public HistoriaClinica buscarPorNroHistoria(String nro) throws Exception {
-        if (nro == null || nro.trim().isEmpty()) throw new IllegalArgumentException("nroHistoria vacío");
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_NRO_SQL)) {
-            stmt.setString(1, nro.trim());
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) return mapResultSet(rs);
+        return METRICAS.medir("buscarPorNroHistoria", () -> {
+            if (nro == null || nro.trim().isEmpty()) throw new IllegalArgumentException("nroHistoria vacío");
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_NRO_SQL)) {
+                stmt.setString(1, nro.trim());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return RowMappers.historia(rs);
+                }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    /**
+     * Busca historias cuyo texto (antecedentes, medicación actual u observaciones) contenga
+     * todas las palabras de la consulta, ordenadas por relevancia.
+     *
+     * En MySQL usa el índice FULLTEXT en modo BOOLEAN: cada palabra de 3 o más letras es
+     * obligatoria y se busca también como prefijo ("ibupro" encuentra "ibuprofeno").
+     * Mayúsculas y tildes las ignora la collation de las columnas (utf8mb4_0900_ai_ci).
+     * En otras bases, o si falta el índice FULLTEXT, busca la frase completa con LIKE, ordenada por id.
+     *
+     * @return La página pedida; vacía si la consulta no tiene palabras buscables
+     */
+    public List<HistoriaClinica> buscarTexto(String consulta, int offset, int limite) throws Exception {
+        return METRICAS.medir("buscarTexto", () -> {
+            List<HistoriaClinica> result = new ArrayList<>(Math.min(limite, 100));
+            try (Connection conn = DatabaseConnection.getReadConnection()) {
+                boolean mysql = usaFullText(conn);
+                String parametro = mysql ? terminosFullText(consulta) : patronLike(consulta);
+                if (parametro.isEmpty()) return result;
+                try (PreparedStatement stmt = conn.prepareStatement(mysql ? SEARCH_TEXT_SQL : SEARCH_TEXT_LIKE_SQL)) {
+                    int i = 1;
+                    stmt.setString(i++, parametro);
+                    stmt.setString(i++, parametro);
+                    if (!mysql) stmt.setString(i++, parametro);
+                    stmt.setInt(i++, limite);
+                    stmt.setInt(i, offset);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) result.add(RowMappers.historia(rs));
+                    }
+                }
+            }
+            return result;
+        });
     }
 
     public HistoriaClinica buscarPorPacienteId(long pacienteId) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_PACIENTE_SQL)) {
-            stmt.setLong(1, pacienteId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) return mapResultSet(rs);
+        return METRICAS.medir("buscarPorPacienteId", () -> {
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_PACIENTE_SQL)) {
+                stmt.setLong(1, pacienteId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return RowMappers.historia(rs);
+                }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    /**
+     * Verifica si otra historia ya usa el número, sin traer la fila.
+     * Consulta la primaria aunque haya réplicas: es la validación previa a una escritura.
+     *
+     * Cuenta también las historias eliminadas (baja lógica): el índice único de nro_historia
+     * incluye esas filas, así que el número no se reutiliza.
+     *
+     * @param nro Número de historia a verificar
+     * @param excluirId ID de la historia que se está actualizando (0 en altas)
+     */
+    public boolean existeNroHistoria(String nro, int excluirId) throws Exception {
+        return METRICAS.medir("existeNroHistoria", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(EXISTS_NRO_SQL)) {
+                stmt.setString(1, nro.trim());
+                stmt.setInt(2, excluirId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
+    /**
+     * Números, de los recibidos, que ya usa una historia, activa o eliminada (validación previa a una importación).
+     * Consulta la primaria, con consultas IN de hasta Lotes.MAX_IN números.
+     */
+    public Set<String> nrosHistoriaExistentes(Collection<String> nros) throws Exception {
+        return METRICAS.medir("nrosHistoriaExistentes", () -> {
+            Set<String> existentes = new HashSet<>();
+            List<String> distintos = nros.stream().filter(Objects::nonNull).map(String::trim).distinct().toList();
+            if (distintos.isEmpty()) return existentes;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                Lotes.consultarPorIn(conn, EXISTS_NROS_SQL, distintos, rs -> rs.getString(1), existentes::add);
+            }
+            return existentes;
+        });
     }
 
     /* helpers */
@@ -167,21 +450,47 @@ public class HistoriaClinicaDAO implements GenericDAO<HistoriaClinica> {
         }
     }
 
-    private HistoriaClinica mapResultSet(ResultSet rs) throws SQLException {
-        HistoriaClinica hc = new HistoriaClinica();
-        hc.setId(rs.getInt("id"));
-        hc.setNroHistoria(rs.getString("nro_historia"));
-        hc.setAntecedentes(rs.getString("antecedentes"));
-        hc.setMedaicacionActual(rs.getString("medicacion_actual"));
-        hc.setObservaciones(rs.getString("observaciones"));
-        long pid = rs.getLong("paciente_id");
-        if (!rs.wasNull()) hc.setPacienteId(pid);
-        String grupo = rs.getString("grupo_sanguineo");
-        if (grupo != null) {
-            for (GrupoSanguineo g : GrupoSanguineo.values()) {
-                if (g.getSimbolo().equalsIgnoreCase(grupo)) { hc.setGrupoSanguineo(g); break; }
-            }
+    /**
+     * true si la búsqueda puede usar MATCH ... AGAINST: base MySQL con el índice FULLTEXT
+     * que crea la migración 4 de SchemaMigrator. Se consulta una sola vez.
+     */
+    private static boolean usaFullText(Connection conn) throws SQLException {
+        Boolean valor = fullText;
+        if (valor == null) {
+            valor = conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")
+                    && existeIndiceFullText(conn);
+            fullText = valor;
         }
-        return hc;
+        return valor;
+    }
+
+    private static boolean existeIndiceFullText(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(FULLTEXT_INDEX_SQL)) {
+            if (rs.next()) return true;
+        }
+        System.err.println("Falta el índice FULLTEXT de historia_clinica (migración 4): "
+                + "la búsqueda de texto usa LIKE y recorre la tabla");
+        return false;
+    }
+
+    /**
+     * Arma la expresión BOOLEAN MODE: "+palabra*" por cada palabra de la consulta.
+     * Los operadores que escriba el usuario (+ - " ~ * etc.) se descartan al separar.
+     */
+    private static String terminosFullText(String consulta) {
+        StringBuilder sb = new StringBuilder();
+        for (String palabra : consulta.split("[^\\p{L}\\p{N}]+")) {
+            if (palabra.length() < MIN_PALABRA) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('+').append(palabra).append('*');
+        }
+        return sb.toString();
+    }
+
+    private static String patronLike(String consulta) {
+        String texto = consulta.trim().toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return texto.isEmpty() ? "" : "%" + texto + "%";
     }
 }
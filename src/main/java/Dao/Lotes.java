@@ -0,0 +1,87 @@
+package Dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Utilidades para operaciones por lotes (addBatch/executeBatch) y búsquedas
+ * de muchas claves con IN (...).
+ *
+ * El tamaño de cada lote define cuántas filas se envían y confirman juntas.
+ * Configurable via -Ddb.batch.size (por defecto 1000).
+ *
+ * Las listas IN se rellenan hasta la siguiente potencia de 2 (repitiendo la última clave),
+ * así cada consulta tiene como mucho 10 variantes de SQL y el StatementCache del pool
+ * las reutiliza en lugar de preparar una SQL distinta por cada cantidad de claves.
+ */
+public final class Lotes {
+
+    /** Filas por lote y por commit. Configurable via -Ddb.batch.size */
+    public static final int TAMANIO = Integer.getInteger("db.batch.size", 1000);
+
+    /** Máximo de claves por consulta IN (...) */
+    public static final int MAX_IN = 512;
+
+    private static final int VARIANTES_IN = Integer.numberOfTrailingZeros(MAX_IN) + 1;
+
+    private Lotes() {
+        throw new UnsupportedOperationException("Esta es una clase utilitaria y no debe ser instanciada");
+    }
+
+    /**
+     * Parte una lista en sublistas consecutivas de como máximo {@code tamanio} elementos.
+     * Las sublistas son vistas de la original (no copian los elementos).
+     */
+    public static <T> List<List<T>> partir(List<T> items, int tamanio) {
+        if (tamanio <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor a 0");
+        }
+        List<List<T>> partes = new ArrayList<>((items.size() + tamanio - 1) / tamanio);
+        for (int desde = 0; desde < items.size(); desde += tamanio) {
+            partes.add(items.subList(desde, Math.min(desde + tamanio, items.size())));
+        }
+        return partes;
+    }
+
+    /**
+     * Arma las variantes de una consulta con IN: una por cada tamaño 1, 2, 4, ... MAX_IN.
+     *
+     * @param plantilla SQL con un %s donde van los marcadores, por ejemplo "... WHERE id IN (%s)"
+     */
+    static String[] variantesIn(String plantilla) {
+        String[] variantes = new String[VARIANTES_IN];
+        for (int i = 0; i < VARIANTES_IN; i++) {
+            variantes[i] = String.format(plantilla, String.join(", ", Collections.nCopies(1 << i, "?")));
+        }
+        return variantes;
+    }
+
+    /**
+     * Ejecuta la consulta IN en partes de hasta MAX_IN claves, sobre la misma conexión,
+     * y entrega cada entidad leída al destino.
+     *
+     * @param variantes Resultado de {@link #variantesIn(String)}
+     * @param claves Claves sin repetir
+     */
+    static <K, T> void consultarPorIn(Connection conn, String[] variantes, List<K> claves,
+                                      RowMapper<T> mapper, Consumer<T> destino) throws SQLException {
+        for (List<K> parte : partir(claves, MAX_IN)) {
+            int variante = 32 - Integer.numberOfLeadingZeros(parte.size() - 1);
+            int marcadores = 1 << variante;
+            try (PreparedStatement stmt = conn.prepareStatement(variantes[variante])) {
+                for (int i = 0; i < marcadores; i++) {
+                    stmt.setObject(i + 1, parte.get(Math.min(i, parte.size() - 1)));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) destino.accept(mapper.map(rs));
+                }
+            }
+        }
+    }
+}
@@ -1,30 +1,47 @@
 package Dao;
 
 import Config.DatabaseConnection;
-import Models.HistoriaClinica;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
 import Models.Paciente;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class PacienteDAO implements GenericDAO<Paciente> {
 
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("PacienteDAO");
+
     private static final String INSERT_SQL = """
         INSERT INTO paciente (nombre, apellido, dni, fecha_nacimiento, telefono)
         VALUES (?, ?, ?, ?, ?)
     """;
 
+    /** Solo actualiza si la fila sigue en la versión leída (control de concurrencia optimista) */
     private static final String UPDATE_SQL = """
-        UPDATE paciente SET nombre = ?, apellido = ?, dni = ?, fecha_nacimiento = ?, telefono = ?
-        WHERE id = ? AND eliminado = FALSE
+        UPDATE paciente SET nombre = ?, apellido = ?, dni = ?, fecha_nacimiento = ?, telefono = ?, version = version + 1
+        WHERE id = ? AND version = ? AND eliminado = FALSE
     """;
 
+    private static final String SELECT_VERSION_SQL = "SELECT version FROM paciente WHERE id = ? AND eliminado = FALSE";
+
     private static final String DELETE_SQL = "UPDATE paciente SET eliminado = TRUE WHERE id = ?";
 
+    // RowMappers lee las columnas de los SELECT por posición: mantener el orden
     private static final String SELECT_BY_ID_SQL = """
         SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
-               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
         FROM paciente p
         LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
         WHERE p.id = ? AND p.eliminado = FALSE
@@ -32,21 +49,97 @@ public class PacienteDAO implements GenericDAO<Paciente> {
 
     private static final String SELECT_ALL_SQL = """
         SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
-               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
         FROM paciente p
         LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
         WHERE p.eliminado = FALSE
         ORDER BY p.id
     """;
 
+    private static final String SELECT_PAGE_SQL = """
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE AND p.id > ?
+        ORDER BY p.id
+        LIMIT ?
+    """;
+
+    private static final String SELECT_RANGE_SQL = """
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE AND p.id > ? AND p.id <= ?
+        ORDER BY p.id
+    """;
+
+    private static final String SELECT_ID_RANGE_SQL = "SELECT MIN(id), MAX(id) FROM paciente WHERE eliminado = FALSE";
+
     private static final String SEARCH_BY_DNI_SQL = """
         SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
-               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
         FROM paciente p
         LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
         WHERE p.eliminado = FALSE AND p.dni = ?
     """;
 
+    private static final String[] SELECT_BY_IDS_SQL = Lotes.variantesIn("""
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE AND p.id IN (%s)
+    """);
+
+    private static final String[] SEARCH_BY_DNIS_SQL = Lotes.variantesIn("""
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE AND p.dni IN (%s)
+    """);
+
+    /** Sin filtrar eliminado: el índice único de dni incluye las bajas lógicas (ver existeDni) */
+    private static final String[] EXISTS_DNIS_SQL = Lotes.variantesIn("""
+        SELECT dni FROM paciente
+        WHERE dni IN (%s)
+    """);
+
+    /** Solo las columnas del índice de nombres (sin el JOIN ni los textos de la historia) */
+    private static final String SELECT_RESUMEN_SQL = """
+        SELECT id, nombre, apellido, dni
+        FROM paciente
+        WHERE eliminado = FALSE
+        ORDER BY id
+    """;
+
+    /** Prefijo de "apellido nombre" o de "nombre apellido" (recorre la tabla: sin índice por nombre) */
+    private static final String SEARCH_BY_NOMBRE_SQL = """
+        SELECT p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+               h.id AS hc_id, h.nro_historia, h.grupo_sanguineo, h.antecedentes, h.medicacion_actual, h.observaciones,
+               p.version, h.version AS hc_version
+        FROM paciente p
+        LEFT JOIN historia_clinica h ON h.paciente_id = p.id AND h.eliminado = FALSE
+        WHERE p.eliminado = FALSE
+          AND (LOWER(CONCAT(p.apellido, ' ', p.nombre)) LIKE ? OR LOWER(CONCAT(p.nombre, ' ', p.apellido)) LIKE ?)
+        ORDER BY p.apellido, p.nombre, p.id
+        LIMIT ?
+    """;
+
+    private static final String EXISTS_DNI_SQL = """
+        SELECT 1 FROM paciente
+        WHERE dni = ? AND id <> ?
+        LIMIT 1
+    """;
+
     private final HistoriaClinicaDAO historiaClinicaDAO;
 
     // ============================
@@ -59,126 +152,378 @@ public class PacienteDAO implements GenericDAO<Paciente> {
     }
     @Override
     public void insertar(Paciente paciente) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setString(1, paciente.getNombre());
-            stmt.setString(2, paciente.getApellido());
-            stmt.setString(3, paciente.getDni());
-            if (paciente.getFechaNacimiento() != null) stmt.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
-            else stmt.setNull(4, Types.DATE);
-            stmt.setString(5, null); // si no usas telefono en modelo, ajustar
-            stmt.executeUpdate();
-            try (ResultSet gk = stmt.getGeneratedKeys()) {
-                if (gk.next()) paciente.setId(gk.getInt(1));
-                else throw new SQLException("No se generó id para paciente");
+        METRICAS.medir("insertar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                setInsertParameters(stmt, paciente);
+                stmt.executeUpdate();
+                try (ResultSet gk = stmt.getGeneratedKeys()) {
+                    if (gk.next()) paciente.setId(gk.getInt(1));
+                    else throw new SQLException("No se generó id para paciente");
+                }
             }
-        }
+        });
     }
 
     @Override
     public void insertTx(Paciente paciente, Connection conn) throws Exception {
-        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, paciente.getNombre());
-            stmt.setString(2, paciente.getApellido());
-            stmt.setString(3, paciente.getDni());
-            if (paciente.getFechaNacimiento() != null) stmt.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
-            else stmt.setNull(4, Types.DATE);
-            stmt.setString(5, null);
-            stmt.executeUpdate();
-            try (ResultSet gk = stmt.getGeneratedKeys()) {
-                if (gk.next()) paciente.setId(gk.getInt(1));
-                else throw new SQLException("No se generó id para paciente (tx)");
+        METRICAS.medir("insertTx", () -> {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                setInsertParameters(stmt, paciente);
+                stmt.executeUpdate();
+                try (ResultSet gk = stmt.getGeneratedKeys()) {
+                    if (gk.next()) paciente.setId(gk.getInt(1));
+                    else throw new SQLException("No se generó id para paciente (tx)");
+                }
             }
-        }
+        });
     }
 
+    @Override
+    public void insertarLote(List<Paciente> pacientes) throws Exception {
+        METRICAS.medir("insertarLote", () -> {
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (List<Paciente> lote : Lotes.partir(pacientes, Lotes.TAMANIO)) {
+                        insertLoteTx(lote, conn);
+                        conn.commit();
+                    }
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void insertLoteTx(List<Paciente> pacientes, Connection conn) throws Exception {
+        METRICAS.medir("insertLoteTx", () -> {
+            if (pacientes.isEmpty()) return;
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Paciente paciente : pacientes) {
+                    setInsertParameters(stmt, paciente);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet gk = stmt.getGeneratedKeys()) {
+                    for (Paciente paciente : pacientes) {
+                        if (!gk.next()) throw new SQLException("No se generaron ids para todos los pacientes del lote");
+                        paciente.setId(gk.getInt(1));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Actualiza el paciente si nadie lo modificó desde que se leyó; después incrementa su versión.
+     *
+     * @throws VersionConflictException Si la fila tiene otra versión (no se guarda nada)
+     */
     @Override
     public void actualizar(Paciente paciente) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
-            stmt.setString(1, paciente.getNombre());
-            stmt.setString(2, paciente.getApellido());
-            stmt.setString(3, paciente.getDni());
-            if (paciente.getFechaNacimiento() != null) stmt.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
-            else stmt.setNull(4, Types.DATE);
-            stmt.setString(5, null); // telefono
-            stmt.setInt(6, paciente.getId());
-
-            int affected = stmt.executeUpdate();
-            if (affected == 0) throw new SQLException("No se actualizó paciente id=" + paciente.getId());
-        }
+        METRICAS.medir("actualizar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                stmt.setString(1, paciente.getNombre());
+                stmt.setString(2, paciente.getApellido());
+                stmt.setString(3, paciente.getDni());
+                if (paciente.getFechaNacimiento() != null) stmt.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
+                else stmt.setNull(4, Types.DATE);
+                stmt.setString(5, null); // telefono
+                stmt.setInt(6, paciente.getId());
+                stmt.setLong(7, paciente.getVersion());
+
+                int affected = stmt.executeUpdate();
+                if (affected == 0) {
+                    Long actual = versionActual(conn, SELECT_VERSION_SQL, paciente.getId());
+                    if (actual != null) throw new VersionConflictException("Paciente", paciente.getId(), paciente.getVersion(), actual);
+                    throw new SQLException("No se actualizó paciente id=" + paciente.getId());
+                }
+                paciente.setVersion(paciente.getVersion() + 1);
+            }
+        });
     }
 
     @Override
     public void eliminar(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(DELETE_SQL)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
-            if (affected == 0) throw new SQLException("No se encontró paciente id=" + id);
-        }
+        METRICAS.medir("eliminar", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(DELETE_SQL)) {
+                stmt.setInt(1, id);
+                int affected = stmt.executeUpdate();
+                if (affected == 0) throw new SQLException("No se encontró paciente id=" + id);
+            }
+        });
     }
 
     @Override
     public Paciente getById(int id) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ID_SQL)) {
-            stmt.setInt(1, id);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) return mapResultSetToPaciente(rs);
+        return METRICAS.medir("getById", () -> {
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ID_SQL)) {
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return RowMappers.paciente(rs);
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     @Override
     public List<Paciente> getAll() throws Exception {
-        List<Paciente> list = new ArrayList<>();
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(SELECT_ALL_SQL)) {
-            while (rs.next()) list.add(mapResultSetToPaciente(rs));
-        }
-        return list;
+        return METRICAS.medir("getAll", () -> {
+            List<Paciente> list = new ArrayList<>();
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(SELECT_ALL_SQL)) {
+                while (rs.next()) list.add(RowMappers.paciente(rs));
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public List<Paciente> getPagina(int despuesDeId, int limite) throws Exception {
+        return METRICAS.medir("getPagina", () -> {
+            List<Paciente> list = new ArrayList<>(limite);
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_PAGE_SQL)) {
+                stmt.setInt(1, despuesDeId);
+                stmt.setInt(2, limite);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) list.add(RowMappers.paciente(rs));
+                }
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Pacientes activos con id en (despuesDeId, hastaId], ordenados por id. A diferencia de
+     * getPagina el límite es el rango de ids: varios rangos disjuntos se pueden leer en paralelo.
+     */
+    public List<Paciente> getRango(int despuesDeId, int hastaId) throws Exception {
+        return METRICAS.medir("getRango", () -> {
+            List<Paciente> list = new ArrayList<>();
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_RANGE_SQL)) {
+                stmt.setInt(1, despuesDeId);
+                stmt.setInt(2, hastaId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) list.add(RowMappers.paciente(rs));
+                }
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Menor y mayor id de los pacientes activos.
+     * @return {min, max}, o null si no hay pacientes activos
+     */
+    public int[] getRangoIds() throws Exception {
+        return METRICAS.medir("getRangoIds", () -> {
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(SELECT_ID_RANGE_SQL)) {
+                if (!rs.next()) return null;
+                int max = rs.getInt(2);
+                if (rs.wasNull()) return null;
+                return new int[]{rs.getInt(1), max};
+            }
+        });
+    }
+
+    /**
+     * Recorre todos los registros activos en modo streaming (fila por fila, sin ArrayList).
+     * La conexión queda tomada hasta cerrar el Stream o leer la última fila.
+     */
+    @Override
+    public Stream<Paciente> stream() throws Exception {
+        return METRICAS.medir("stream", () -> {
+            Connection conn = DatabaseConnection.getReadConnection();
+            PreparedStatement stmt = null;
+            try {
+                stmt = conn.prepareStatement(SELECT_ALL_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(DatabaseConnection.getStreamingFetchSize());
+                ResultSet rs = stmt.executeQuery();
+                return ResultSetStream.of(conn, stmt, rs, RowMappers.PACIENTE);
+            } catch (SQLException | RuntimeException e) {
+                ResultSetStream.cerrarTodo(stmt, conn);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Recorre id, nombre, apellido y DNI de los pacientes activos (carga del índice de nombres).
+     * Los Paciente devueltos no traen fecha de nacimiento, teléfono ni historia clínica.
+     * El caller debe cerrar el Stream.
+     */
+    public Stream<Paciente> streamResumen() throws Exception {
+        return METRICAS.medir("streamResumen", () -> {
+            Connection conn = DatabaseConnection.getReadConnection();
+            PreparedStatement stmt = null;
+            try {
+                stmt = conn.prepareStatement(SELECT_RESUMEN_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(DatabaseConnection.getStreamingFetchSize());
+                ResultSet rs = stmt.executeQuery();
+                return ResultSetStream.of(conn, stmt, rs, RowMappers.PACIENTE_RESUMEN);
+            } catch (SQLException | RuntimeException e) {
+                ResultSetStream.cerrarTodo(stmt, conn);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Búsqueda por nombre en la base: pacientes cuyo "apellido nombre" o "nombre apellido"
+     * empieza con el texto, ordenados alfabéticamente. Recorre la tabla; la búsqueda rápida
+     * es la del índice en memoria de PacienteServiceImpl.
+     */
+    public List<Paciente> buscarPorNombre(String texto, int limite) throws Exception {
+        return METRICAS.medir("buscarPorNombre", () -> {
+            String patron = texto.trim().toLowerCase(Locale.ROOT)
+                    .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            List<Paciente> result = new ArrayList<>(limite);
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_NOMBRE_SQL)) {
+                stmt.setString(1, patron);
+                stmt.setString(2, patron);
+                stmt.setInt(3, limite);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) result.add(RowMappers.paciente(rs));
+                }
+            }
+            return result;
+        });
     }
 
     public Paciente buscarPorDni(String dni) throws Exception {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_DNI_SQL)) {
-            stmt.setString(1, dni.trim());
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) return mapResultSetToPaciente(rs);
+        return METRICAS.medir("buscarPorDni", () -> {
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SEARCH_BY_DNI_SQL)) {
+                stmt.setString(1, dni.trim());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return RowMappers.paciente(rs);
+                }
             }
-        }
-        return null;
-    }
-
-    private Paciente mapResultSetToPaciente(ResultSet rs) throws SQLException {
-        Paciente p = new Paciente();
-        p.setId(rs.getInt("id"));
-        p.setNombre(rs.getString("nombre"));
-        p.setApellido(rs.getString("apellido"));
-        p.setDni(rs.getString("dni"));
-        Date d = rs.getDate("fecha_nacimiento");
-        if (d != null) p.setFechaNacimiento(d.toLocalDate());
-
-        int hcId = rs.getInt("hc_id");
-        if (!rs.wasNull() && hcId > 0) {
-            HistoriaClinica hc = new HistoriaClinica();
-            hc.setId(hcId);
-            hc.setNroHistoria(rs.getString("nro_historia"));
-            hc.setAntecedentes(rs.getString("antecedentes"));
-            hc.setMedaicacionActual(rs.getString("medicacion_actual"));
-            hc.setObservaciones(rs.getString("observaciones"));
-            String grupo = rs.getString("grupo_sanguineo");
-            if (grupo != null) {
-                for (Models.GrupoSanguineo g : Models.GrupoSanguineo.values()) {
-                    if (g.getSimbolo().equalsIgnoreCase(grupo)) { hc.setGrupoSanguineo(g); break; }
+            return null;
+        });
+    }
+
+    /**
+     * Busca muchos pacientes por ID con consultas IN (hasta Lotes.MAX_IN IDs por consulta)
+     * sobre una sola conexión.
+     *
+     * @return Pacientes encontrados por ID; los IDs inexistentes o eliminados no aparecen
+     */
+    @Override
+    public Map<Integer, Paciente> getByIds(Collection<Integer> ids) throws Exception {
+        return METRICAS.medir("getByIds", () -> {
+            Map<Integer, Paciente> resultado = new HashMap<>();
+            List<Integer> distintos = ids.stream().filter(Objects::nonNull).distinct().toList();
+            if (distintos.isEmpty()) return resultado;
+            try (Connection conn = DatabaseConnection.getReadConnection()) {
+                Lotes.consultarPorIn(conn, SELECT_BY_IDS_SQL, distintos, RowMappers.PACIENTE,
+                        p -> resultado.putIfAbsent(p.getId(), p));
+            }
+            return resultado;
+        });
+    }
+
+    /**
+     * Busca muchos pacientes por DNI con consultas IN (hasta Lotes.MAX_IN DNIs por consulta)
+     * sobre una sola conexión.
+     *
+     * @return Pacientes encontrados, con la misma clave recibida (antes del trim);
+     *         los DNI sin paciente activo no aparecen
+     */
+    public Map<String, Paciente> buscarPorDnis(Collection<String> dnis) throws Exception {
+        return METRICAS.medir("buscarPorDnis", () -> {
+            Map<String, List<String>> clavesPorDni = new LinkedHashMap<>();
+            for (String dni : dnis) {
+                if (dni != null) clavesPorDni.computeIfAbsent(dni.trim(), k -> new ArrayList<>(1)).add(dni);
+            }
+            Map<String, Paciente> resultado = new HashMap<>();
+            if (clavesPorDni.isEmpty()) return resultado;
+            try (Connection conn = DatabaseConnection.getReadConnection()) {
+                Lotes.consultarPorIn(conn, SEARCH_BY_DNIS_SQL, new ArrayList<>(clavesPorDni.keySet()), RowMappers.PACIENTE, p -> {
+                    for (String clave : clavesPorDni.getOrDefault(p.getDni(), List.of())) resultado.putIfAbsent(clave, p);
+                });
+            }
+            return resultado;
+        });
+    }
+
+    /**
+     * DNIs, de los recibidos, que ya usa un paciente, activo o dado de baja (validación previa a una importación).
+     * Consulta la primaria, con consultas IN de hasta Lotes.MAX_IN DNIs y sin el JOIN.
+     */
+    public Set<String> dnisExistentes(Collection<String> dnis) throws Exception {
+        return METRICAS.medir("dnisExistentes", () -> {
+            Set<String> existentes = new HashSet<>();
+            List<String> distintos = dnis.stream().filter(Objects::nonNull).map(String::trim).distinct().toList();
+            if (distintos.isEmpty()) return existentes;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                Lotes.consultarPorIn(conn, EXISTS_DNIS_SQL, distintos, rs -> rs.getString(1), existentes::add);
+            }
+            return existentes;
+        });
+    }
+
+    /**
+     * Verifica si otro paciente ya usa el DNI, sin traer la fila ni hacer el JOIN.
+     * Consulta la primaria aunque haya réplicas: es la validación previa a una escritura.
+     *
+     * Cuenta también los pacientes dados de baja: la baja es lógica y el índice único de dni
+     * incluye esas filas, así que el DNI queda reservado y un alta con el mismo DNI fallaría
+     * en el índice. Se informa acá con el mismo mensaje de negocio.
+     *
+     * @param dni DNI a verificar
+     * @param excluirId ID del paciente que se está actualizando (0 en altas)
+     */
+    public boolean existeDni(String dni, int excluirId) throws Exception {
+        return METRICAS.medir("existeDni", () -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(EXISTS_DNI_SQL)) {
+                stmt.setString(1, dni.trim());
+                stmt.setInt(2, excluirId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
                 }
             }
-            p.setHistoriaClinica(hc);
+        });
+    }
+
+    /* helpers */
+
+    /**
+     * Versión guardada de una fila activa (para distinguir un conflicto de una fila inexistente).
+     *
+     * @return La versión, o null si la fila no existe o está eliminada
+     */
+    static Long versionActual(Connection conn, String sql, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
         }
-        return p;
+    }
+
+    private void setInsertParameters(PreparedStatement stmt, Paciente paciente) throws SQLException {
+        stmt.setString(1, paciente.getNombre());
+        stmt.setString(2, paciente.getApellido());
+        stmt.setString(3, paciente.getDni());
+        if (paciente.getFechaNacimiento() != null) stmt.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
+        else stmt.setNull(4, Types.DATE);
+        stmt.setString(5, null); // si no usas telefono en modelo, ajustar
     }
 }
@@ -0,0 +1,70 @@
+package Dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Adapta un ResultSet abierto a un {@link Stream} que lee fila por fila.
+ *
+ * Ciclo de vida:
+ * - El Stream es dueño del ResultSet, el Statement y la Connection
+ * - Se cierran al cerrar el Stream (usar try-with-resources) o al llegar a la última fila
+ * - Un SQLException durante la lectura se propaga como IllegalStateException
+ *
+ * Pensado para result sets en modo streaming (fetchSize = Integer.MIN_VALUE en MySQL):
+ * solo la fila actual está en memoria.
+ */
+final class ResultSetStream {
+
+    private ResultSetStream() {
+        throw new UnsupportedOperationException("Esta es una clase utilitaria y no debe ser instanciada");
+    }
+
+    static <T> Stream<T> of(Connection conn, Statement stmt, ResultSet rs, RowMapper<T> mapper) {
+        Runnable cerrar = () -> cerrarTodo(rs, stmt, conn);
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean terminado;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (terminado) return false;
+                try {
+                    if (rs.next()) {
+                        action.accept(mapper.map(rs));
+                        return true;
+                    }
+                    terminado = true;
+                    cerrar.run();
+                    return false;
+                } catch (SQLException e) {
+                    terminado = true;
+                    cerrar.run();
+                    throw new IllegalStateException("Error leyendo resultados: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(cerrar);
+    }
+
+    /**
+     * Cierra los recursos en orden inverso a su apertura. Es idempotente.
+     */
+    static void cerrarTodo(AutoCloseable... recursos) {
+        for (AutoCloseable recurso : recursos) {
+            if (recurso == null) continue;
+            try {
+                recurso.close();
+            } catch (Exception e) {
+                System.err.println("Error al cerrar recurso del stream: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package Dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Convierte la fila actual de un ResultSet en una entidad.
+ * Lo usan los DAOs para compartir la lógica de lectura entre listas, páginas y streams.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+}
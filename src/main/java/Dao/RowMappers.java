@@ -0,0 +1,105 @@
+package Dao;
+
+import Metrics.MetricsRegistry;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mapeo de filas compartido por PacienteDAO e HistoriaClinicaDAO.
+ *
+ * Lee las columnas por posición (sin buscar el nombre en cada fila) y decodifica
+ * el grupo sanguíneo con {@link GrupoSanguineo#fromSimbolo(String)}.
+ * Por eso depende del orden de los SELECT de ambos DAOs:
+ *
+ * - Historia: id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual,
+ *   observaciones, paciente_id, fecha_creacion, eliminado, version
+ * - Paciente: p.id, p.nombre, p.apellido, p.dni, p.fecha_nacimiento, p.telefono,
+ *   seguido de las columnas de la historia desde la 7 (h.id AS hc_id, h.nro_historia, ...)
+ *   y al final p.version, h.version AS hc_version (13 y 14)
+ *
+ * - Resumen de paciente (índice de nombres): id, nombre, apellido, dni
+ *
+ * Cada fila mapeada suma en el contador clinica_filas_mapeadas_total de su entidad.
+ */
+final class RowMappers {
+
+    /** Primera columna de la historia en el JOIN de pacientes */
+    static final int COLUMNA_HISTORIA_EN_PACIENTE = 7;
+
+    /** Versiones del paciente y de su historia en el JOIN de pacientes */
+    static final int COLUMNA_VERSION_PACIENTE = 13;
+    static final int COLUMNA_VERSION_HISTORIA_EN_PACIENTE = 14;
+
+    /** Versión en los SELECT de historias */
+    static final int COLUMNA_VERSION_HISTORIA = 10;
+
+    private static final LongAdder FILAS_HISTORIA = MetricsRegistry.contadorFilas("historia_clinica");
+    private static final LongAdder FILAS_PACIENTE = MetricsRegistry.contadorFilas("paciente");
+
+    static final RowMapper<HistoriaClinica> HISTORIA = RowMappers::historia;
+    static final RowMapper<Paciente> PACIENTE = RowMappers::paciente;
+    static final RowMapper<Paciente> PACIENTE_RESUMEN = RowMappers::pacienteResumen;
+
+    private RowMappers() {
+    }
+
+    static HistoriaClinica historia(ResultSet rs) throws SQLException {
+        HistoriaClinica hc = historiaDesde(rs, 1);
+        long pid = rs.getLong(7);
+        if (!rs.wasNull()) hc.setPacienteId(pid);
+        hc.setVersion(rs.getLong(COLUMNA_VERSION_HISTORIA));
+        FILAS_HISTORIA.increment();
+        return hc;
+    }
+
+    static Paciente paciente(ResultSet rs) throws SQLException {
+        Paciente p = new Paciente();
+        p.setId(rs.getInt(1));
+        p.setNombre(rs.getString(2));
+        p.setApellido(rs.getString(3));
+        p.setDni(rs.getString(4));
+        p.setFechaNacimiento(rs.getObject(5, LocalDate.class));
+        p.setVersion(rs.getLong(COLUMNA_VERSION_PACIENTE));
+
+        int hcId = rs.getInt(COLUMNA_HISTORIA_EN_PACIENTE);
+        if (!rs.wasNull() && hcId > 0) {
+            HistoriaClinica hc = historiaDesde(rs, COLUMNA_HISTORIA_EN_PACIENTE);
+            hc.setPacienteId((long) p.getId());
+            hc.setVersion(rs.getLong(COLUMNA_VERSION_HISTORIA_EN_PACIENTE));
+            p.setHistoriaClinica(hc);
+        }
+        FILAS_PACIENTE.increment();
+        return p;
+    }
+
+    static Paciente pacienteResumen(ResultSet rs) throws SQLException {
+        Paciente p = new Paciente();
+        p.setId(rs.getInt(1));
+        p.setNombre(rs.getString(2));
+        p.setApellido(rs.getString(3));
+        p.setDni(rs.getString(4));
+        FILAS_PACIENTE.increment();
+        return p;
+    }
+
+    /**
+     * Lee id, nro_historia, grupo_sanguineo, antecedentes, medicacion_actual y observaciones
+     * a partir de la columna indicada.
+     */
+    private static HistoriaClinica historiaDesde(ResultSet rs, int col) throws SQLException {
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setId(rs.getInt(col));
+        hc.setNroHistoria(rs.getString(col + 1));
+        hc.setGrupoSanguineo(GrupoSanguineo.fromSimbolo(rs.getString(col + 2)));
+        hc.setAntecedentes(rs.getString(col + 3));
+        hc.setMedaicacionActual(rs.getString(col + 4));
+        hc.setObservaciones(rs.getString(col + 5));
+        return hc;
+    }
+}
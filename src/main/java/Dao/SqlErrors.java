@@ -0,0 +1,87 @@
+package Dao;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Clase utilitaria para interpretar errores SQL de la base de datos.
+ *
+ * Se usa para traducir violaciones de índices únicos (dni, nro_historia)
+ * a los mismos mensajes de negocio que da la validación previa del Service.
+ */
+public final class SqlErrors {
+
+    /** Código de error de MySQL para "Duplicate entry ... for key ..." */
+    private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+
+    /**
+     * Nombres posibles del índice único de paciente.dni: el que crea SchemaMigrator y el que
+     * crea MySQL para la columna "dni ... UNIQUE" del script del README (toma el nombre de la columna)
+     */
+    public static final String[] INDICES_DNI = {"uk_paciente_dni", "dni"};
+
+    /** Nombres posibles del índice único de historia_clinica.nro_historia (ver INDICES_DNI) */
+    public static final String[] INDICES_NRO_HISTORIA = {"uk_historia_nro", "nro_historia"};
+
+    /** Nombre del índice en el mensaje de MySQL: "for key 'tabla.indice'" (8.0) o "for key 'indice'" (5.7) */
+    private static final Pattern CLAVE_MYSQL = Pattern.compile("for key '(?:[^'.]*\\.)?([^']*)'");
+
+    private SqlErrors() {
+        throw new UnsupportedOperationException("Esta es una clase utilitaria y no debe ser instanciada");
+    }
+
+    /**
+     * Indica si el error (o alguna de sus causas) es una violación de clave única
+     * sobre alguno de los índices indicados.
+     *
+     * Con MySQL se compara el nombre del índice que informa el mensaje ("for key ...");
+     * con otros motores (H2), que nombran el índice y sus columnas de otra forma, alcanza
+     * con que el mensaje contenga alguno de los nombres.
+     *
+     * @param e Excepción capturada (puede venir envuelta)
+     * @param indices Nombres posibles del índice único (ej: INDICES_DNI)
+     */
+    public static boolean esClaveDuplicada(Throwable e, String... indices) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && esDuplicado(sql)) {
+                String mensaje = sql.getMessage();
+                if (mensaje == null) return false;
+                Matcher clave = CLAVE_MYSQL.matcher(mensaje);
+                if (clave.find()) {
+                    for (String indice : indices) {
+                        if (clave.group(1).equalsIgnoreCase(indice)) return true;
+                    }
+                    return false;
+                }
+                String texto = mensaje.toLowerCase(Locale.ROOT);
+                for (String indice : indices) {
+                    if (texto.contains(indice.toLowerCase(Locale.ROOT))) return true;
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indica si el error (o alguna de sus causas) se debe a los datos de la fila y no a la
+     * conexión o al servidor: SQLState de clase 22 (valor inválido o demasiado largo)
+     * o 23 (violación de una restricción).
+     */
+    public static boolean esErrorDeDatos(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getSQLState() != null
+                    && (sql.getSQLState().startsWith("22") || sql.getSQLState().startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean esDuplicado(SQLException e) {
+        // MySQL informa 1062; otros motores usan SQLState 23505 (unique_violation)
+        return e.getErrorCode() == MYSQL_DUPLICATE_ENTRY || "23505".equals(e.getSQLState());
+    }
+}
@@ -0,0 +1,44 @@
+package Dao;
+
+/**
+ * Una actualización encontró la fila con otra versión: alguien la modificó después
+ * de que se leyó (control de concurrencia optimista con la columna version).
+ *
+ * No se guardó nada. Para reintentar hay que volver a leer la entidad y aplicar los
+ * cambios sobre la versión actual (ver actualizarConReintento en los servicios).
+ */
+public class VersionConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entidad;
+    private final int id;
+    private final long versionLeida;
+    private final long versionActual;
+
+    public VersionConflictException(String entidad, int id, long versionLeida, long versionActual) {
+        super(entidad + " id=" + id + " fue modificado por otro usuario (versión leída "
+                + versionLeida + ", versión actual " + versionActual + ")");
+        this.entidad = entidad;
+        this.id = id;
+        this.versionLeida = versionLeida;
+        this.versionActual = versionActual;
+    }
+
+    /** "Paciente" o "HistoriaClinica" */
+    public String getEntidad() {
+        return entidad;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getVersionLeida() {
+        return versionLeida;
+    }
+
+    public long getVersionActual() {
+        return versionActual;
+    }
+}
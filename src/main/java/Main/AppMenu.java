@@ -1,5 +1,8 @@
 package Main;
 
+import Config.SchemaMigrator;
+import Dao.CachedHistoriaClinicaDAO;
+import Dao.CachedPacienteDAO;
 import Dao.HistoriaClinicaDAO;
 import Dao.PacienteDAO;
 import Service.HistoriaClinicaServiceImpl;
@@ -21,6 +24,7 @@ public class AppMenu {
 
     public AppMenu() {
         this.scanner = new Scanner(System.in);
+        SchemaMigrator.alIniciar();
         PacienteServiceImpl pacienteService = createPacienteService();
         this.menuHandler = new MenuHandler(scanner, pacienteService);
         this.running = true;
@@ -56,6 +60,11 @@ public class AppMenu {
             case 8 -> menuHandler.eliminarHistoriaClinica();
             case 9 -> menuHandler.buscarPacientePorDni();
             case 10 -> menuHandler.buscarHistoriaPorNumero();
+            case 11 -> menuHandler.buscarHistoriasPorTexto();
+            case 12 -> menuHandler.buscarPacientesPorNombre();
+            case 13 -> menuHandler.mostrarEstadisticas();
+            case 14 -> menuHandler.exportarRegistro();
+            case 15 -> menuHandler.importarPacientes();
             case 0 -> {
                 System.out.println("Saliendo...");
                 running = false;
@@ -67,10 +76,13 @@ public class AppMenu {
     /**
      * Inyección de dependencias manual:
      * HistoriaClinicaDAO → PacienteDAO → HistoriaClinicaService → PacienteService
+     *
+     * Con -Ddb.cache.enabled=true (por defecto) se usan los DAOs con caché de lectura.
      */
-    private PacienteServiceImpl createPacienteService() {
-        HistoriaClinicaDAO hcDAO = new HistoriaClinicaDAO();
-        PacienteDAO pacienteDAO = new PacienteDAO(hcDAO);
+    static PacienteServiceImpl createPacienteService() {
+        boolean cache = Boolean.parseBoolean(System.getProperty("db.cache.enabled", "true"));
+        HistoriaClinicaDAO hcDAO = cache ? new CachedHistoriaClinicaDAO() : new HistoriaClinicaDAO();
+        PacienteDAO pacienteDAO = cache ? new CachedPacienteDAO(hcDAO) : new PacienteDAO(hcDAO);
         HistoriaClinicaServiceImpl hcService = new HistoriaClinicaServiceImpl(hcDAO);
         return new PacienteServiceImpl(pacienteDAO, hcService);
     }
@@ -0,0 +1,607 @@
+package Main;
+
+import Config.ReplicaRouter;
+import Config.SchemaMigrator;
+import Config.SqlTracer;
+import Dao.VersionConflictException;
+import Metrics.MetricsRegistry;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.AnalyticsSnapshot;
+import Service.GenericService;
+import Service.HistoriaClinicaServiceImpl;
+import Service.PacienteServiceImpl;
+import Service.RequestExecutor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Modo servidor HTTP: expone las operaciones de los servicios como API JSON.
+ *
+ * Endpoints (mismo esquema para /pacientes y /historias):
+ * - GET    /pacientes                      → listado completo, por páginas
+ * - GET    /pacientes?despuesDe=0&limite=50 → página (paginación por clave)
+ * - GET    /pacientes?dni=...               → búsqueda por DNI (en /historias: ?nro=...)
+ * - GET    /pacientes?dnis=a,b,c            → varios DNI en una consulta (los no encontrados se omiten)
+ * - GET    /pacientes?nombre=...&limite=10 → nombres parecidos (type-ahead; id, nombre, apellido y DNI)
+ * - GET    /historias?texto=...&offset=0&limite=50 → búsqueda de texto por relevancia
+ * - GET    /pacientes/{id}                  → un registro
+ * - POST   /pacientes                       → alta (201)
+ * - PUT    /pacientes/{id}                  → actualización (con "version": 409 si otro la modificó;
+ *                                              sin "version": se aplica sobre la versión actual)
+ * - DELETE /pacientes/{id}                  → baja lógica (204)
+ * - GET    /estadisticas?franja=10&medicaciones=10 → conteos por grupo sanguíneo, franja etaria
+ *                                              y medicación (AnalyticsSnapshot)
+ * - GET    /metrics                         → métricas en formato de texto Prometheus
+ * - GET    /metrics/sql                     → tiempos por plantilla de SQL (con -Ddb.trace.slowMs)
+ *
+ * Detalles:
+ * - Cada conexión HTTP la atiende un hilo del executor (virtual en Java 21+)
+ * - Las llamadas puntuales pasan por {@link RequestExecutor} (límite de concurrencia y timeout)
+ * - Los listados se escriben fila por fila con {@link JsonWriter} sobre respuesta chunked
+ * - El listado completo se lee de a GenericService.MAX_PAGINA filas, cada página con
+ *   {@link RequestExecutor}: no ocupa una conexión mientras el cliente lee la respuesta
+ * - Respuesta comprimida con gzip si el cliente envía Accept-Encoding: gzip
+ * - Keep-alive: HTTP/1.1 persistente (el cuerpo de cada solicitud se consume completo)
+ *
+ * Errores: 400 validación, 404 no encontrado, 405 método, 409 conflicto de versión, 503 timeout, 500 otros.
+ * El 500 responde un mensaje genérico: el detalle (que en los SQLException puede incluir SQL,
+ * columnas, índices y valores) solo va al log del servidor.
+ *
+ * Configuración: -Dhttp.port (por defecto 8080), -Dhttp.threads (hilos si no hay hilos virtuales, 32).
+ */
+public class HttpServerApp {
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final PacienteServiceImpl pacienteService;
+    private final HistoriaClinicaServiceImpl historiaService;
+    private final RequestExecutor requestExecutor;
+
+    public HttpServerApp(int puerto, PacienteServiceImpl pacienteService, RequestExecutor requestExecutor) throws IOException {
+        if (pacienteService == null) throw new IllegalArgumentException("PacienteService no puede ser null");
+        if (requestExecutor == null) throw new IllegalArgumentException("RequestExecutor no puede ser null");
+        this.pacienteService = pacienteService;
+        this.historiaService = pacienteService.getHistoriaClinicaService();
+        this.requestExecutor = requestExecutor;
+
+        this.server = HttpServer.create(new InetSocketAddress(puerto), 0);
+        this.httpExecutor = RequestExecutor.nuevoExecutorPorTarea(Integer.getInteger("http.threads", 32), "http");
+        server.setExecutor(httpExecutor);
+        server.createContext("/pacientes", this::manejarPacientes);
+        server.createContext("/historias", this::manejarHistorias);
+        server.createContext("/estadisticas", this::manejarEstadisticas);
+        server.createContext("/metrics", ex -> responderTexto(ex, "text/plain; version=0.0.4; charset=utf-8", MetricsRegistry::prometheus));
+        server.createContext("/metrics/sql", ex -> responderTexto(ex, "text/plain; charset=utf-8", SqlTracer::reporte));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int puerto = Integer.getInteger("http.port", 8080);
+        SchemaMigrator.alIniciar();
+        RequestExecutor requestExecutor = RequestExecutor.desdeConfiguracion();
+        HttpServerApp app = new HttpServerApp(puerto, AppMenu.createPacienteService(), requestExecutor);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            app.detener();
+            requestExecutor.close();
+        }, "http-shutdown"));
+        app.iniciar();
+        System.out.println("Servidor HTTP escuchando en el puerto " + puerto
+                + (requestExecutor.isVirtual() ? " (hilos virtuales)" : " (hilos de plataforma)"));
+    }
+
+    public void iniciar() {
+        server.start();
+    }
+
+    public void detener() {
+        server.stop(1);
+        httpExecutor.shutdown();
+    }
+
+    /**
+     * Agrega un endpoint adicional (por ejemplo métricas) sobre el mismo servidor.
+     */
+    public void agregarEndpoint(String ruta, com.sun.net.httpserver.HttpHandler handler) {
+        server.createContext(ruta, handler);
+    }
+
+    // =====================================
+    //  Pacientes
+    // =====================================
+
+    private void manejarPacientes(HttpExchange ex) {
+        atender(ex, () -> {
+            Integer id = idDeRuta(ex);
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            switch (ex.getRequestMethod()) {
+                case "GET" -> {
+                    if (id != null) {
+                        responder(ex, 200, llamar(() -> pacienteService.getById(id)), HttpServerApp::escribirPaciente);
+                    } else if (query.containsKey("dni")) {
+                        responder(ex, 200, llamar(() -> pacienteService.buscarPorDni(query.get("dni"))), HttpServerApp::escribirPaciente);
+                    } else if (query.containsKey("dnis")) {
+                        List<String> dnis = List.of(query.get("dnis").split(","));
+                        Map<String, Paciente> encontrados = llamar(() -> pacienteService.buscarPorDnis(dnis));
+                        responderLista(ex, dnis.stream().distinct().map(encontrados::get).filter(Objects::nonNull), HttpServerApp::escribirPaciente);
+                    } else if (query.containsKey("nombre")) {
+                        int limite = entero(query.getOrDefault("limite", "10"), "limite");
+                        List<Paciente> parecidos = llamar(() -> pacienteService.buscarPorNombre(query.get("nombre"), limite));
+                        responderLista(ex, parecidos.stream(), HttpServerApp::escribirPaciente);
+                    } else if (query.containsKey("limite")) {
+                        int despuesDe = entero(query.getOrDefault("despuesDe", "0"), "despuesDe");
+                        int limite = entero(query.get("limite"), "limite");
+                        List<Paciente> pagina = llamar(() -> pacienteService.getPagina(despuesDe, limite));
+                        responderLista(ex, pagina.stream(), HttpServerApp::escribirPaciente);
+                    } else {
+                        responderTodos(ex, pacienteService::getPagina, Paciente::getId, HttpServerApp::escribirPaciente);
+                    }
+                }
+                case "POST" -> {
+                    Paciente p = pacienteDesdeJson(JsonReader.parseObject(leerCuerpo(ex)));
+                    llamar(() -> { pacienteService.insertar(p); return null; });
+                    responder(ex, 201, p, HttpServerApp::escribirPaciente);
+                }
+                case "PUT" -> {
+                    int existente = requerirId(id);
+                    Map<String, Object> datos = JsonReader.parseObject(leerCuerpo(ex));
+                    Paciente p = pacienteDesdeJson(datos);
+                    p.setId(existente);
+                    Paciente guardado = llamar(() -> {
+                        if (datos.containsKey("version")) {
+                            p.setVersion(version(datos));
+                            pacienteService.actualizar(p);
+                            return p;
+                        }
+                        Paciente actual = pacienteService.getById(existente);
+                        if (actual == null) return null;
+                        return pacienteService.actualizarConReintento(actual, x -> {
+                            x.setNombre(p.getNombre());
+                            x.setApellido(p.getApellido());
+                            x.setDni(p.getDni());
+                            x.setFechaNacimiento(p.getFechaNacimiento());
+                        });
+                    });
+                    responder(ex, 200, guardado, HttpServerApp::escribirPaciente);
+                }
+                case "DELETE" -> {
+                    int existente = requerirId(id);
+                    llamar(() -> { pacienteService.eliminar(existente); return null; });
+                    responderVacio(ex, 204);
+                }
+                default -> responderError(ex, 405, "Método no permitido: " + ex.getRequestMethod());
+            }
+        });
+    }
+
+    // =====================================
+    //  Historias clínicas
+    // =====================================
+
+    private void manejarHistorias(HttpExchange ex) {
+        atender(ex, () -> {
+            Integer id = idDeRuta(ex);
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            switch (ex.getRequestMethod()) {
+                case "GET" -> {
+                    if (id != null) {
+                        responder(ex, 200, llamar(() -> historiaService.getById(id)), HttpServerApp::escribirHistoria);
+                    } else if (query.containsKey("nro")) {
+                        responder(ex, 200, llamar(() -> historiaService.buscarPorNroHistoria(query.get("nro"))), HttpServerApp::escribirHistoria);
+                    } else if (query.containsKey("texto")) {
+                        int offset = entero(query.getOrDefault("offset", "0"), "offset");
+                        int limite = entero(query.getOrDefault("limite", "50"), "limite");
+                        List<HistoriaClinica> pagina = llamar(() -> historiaService.buscarTexto(query.get("texto"), offset, limite));
+                        responderLista(ex, pagina.stream(), HttpServerApp::escribirHistoria);
+                    } else if (query.containsKey("limite")) {
+                        int despuesDe = entero(query.getOrDefault("despuesDe", "0"), "despuesDe");
+                        int limite = entero(query.get("limite"), "limite");
+                        List<HistoriaClinica> pagina = llamar(() -> historiaService.getPagina(despuesDe, limite));
+                        responderLista(ex, pagina.stream(), HttpServerApp::escribirHistoria);
+                    } else {
+                        responderTodos(ex, historiaService::getPagina, HistoriaClinica::getId, HttpServerApp::escribirHistoria);
+                    }
+                }
+                case "POST" -> {
+                    HistoriaClinica hc = historiaDesdeJson(JsonReader.parseObject(leerCuerpo(ex)));
+                    llamar(() -> { historiaService.insertar(hc); return null; });
+                    responder(ex, 201, hc, HttpServerApp::escribirHistoria);
+                }
+                case "PUT" -> {
+                    int existente = requerirId(id);
+                    Map<String, Object> datos = JsonReader.parseObject(leerCuerpo(ex));
+                    HistoriaClinica hc = historiaDesdeJson(datos);
+                    hc.setId(existente);
+                    HistoriaClinica guardada = llamar(() -> {
+                        if (datos.containsKey("version")) {
+                            hc.setVersion(version(datos));
+                            historiaService.actualizar(hc);
+                            return hc;
+                        }
+                        HistoriaClinica actual = historiaService.getById(existente);
+                        if (actual == null) return null;
+                        return historiaService.actualizarConReintento(actual, x -> {
+                            x.setNroHistoria(hc.getNroHistoria());
+                            x.setGrupoSanguineo(hc.getGrupoSanguineo());
+                            x.setAntecedentes(hc.getAntecedentes());
+                            x.setMedaicacionActual(hc.getMedaicacionActual());
+                            x.setObservaciones(hc.getObservaciones());
+                            x.setPacienteId(hc.getPacienteId());
+                        });
+                    });
+                    responder(ex, 200, guardada, HttpServerApp::escribirHistoria);
+                }
+                case "DELETE" -> {
+                    int existente = requerirId(id);
+                    llamar(() -> { historiaService.eliminar(existente); return null; });
+                    responderVacio(ex, 204);
+                }
+                default -> responderError(ex, 405, "Método no permitido: " + ex.getRequestMethod());
+            }
+        });
+    }
+
+    // =====================================
+    //  Estadísticas
+    // =====================================
+
+    /** Resultado de GET /estadisticas */
+    private static final class Estadisticas {
+        private long pacientes;
+        private long historias;
+        private Map<String, Long> porGrupoSanguineo;
+        private Map<String, Long> porFranjaEtaria;
+        private long historiasSinMedicacion;
+        private Map<String, Long> medicacionesFrecuentes;
+    }
+
+    private void manejarEstadisticas(HttpExchange ex) {
+        atender(ex, () -> {
+            if (!ex.getRequestMethod().equals("GET")) {
+                responderError(ex, 405, "Método no permitido: " + ex.getRequestMethod());
+                return;
+            }
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            int franja = entero(query.getOrDefault("franja", "10"), "franja");
+            int medicaciones = entero(query.getOrDefault("medicaciones", "10"), "medicaciones");
+            AnalyticsSnapshot analitica = pacienteService.getAnalitica();
+            Estadisticas e = llamar(() -> {
+                Estadisticas r = new Estadisticas();
+                r.porGrupoSanguineo = analitica.contarPorGrupoSanguineo();
+                r.porFranjaEtaria = analitica.contarPorFranjaEtaria(franja);
+                r.historiasSinMedicacion = analitica.contarHistoriasSinMedicacion();
+                r.medicacionesFrecuentes = analitica.medicacionesMasFrecuentes(medicaciones);
+                r.pacientes = analitica.getPacientesActivos();
+                r.historias = analitica.getHistoriasActivas();
+                return r;
+            });
+            responder(ex, 200, e, this::escribirEstadisticas);
+        });
+    }
+
+    // =====================================
+    //  Métricas
+    // =====================================
+
+    private void responderTexto(HttpExchange ex, String contentType, Supplier<String> contenido) {
+        atender(ex, () -> {
+            if (!ex.getRequestMethod().equals("GET")) {
+                responderError(ex, 405, "Método no permitido: " + ex.getRequestMethod());
+                return;
+            }
+            byte[] cuerpo = contenido.get().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", contentType);
+            ex.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(cuerpo);
+            }
+        });
+    }
+
+    // =====================================
+    //  Conversión JSON
+    // =====================================
+
+    static void escribirPaciente(JsonWriter json, Paciente p) throws IOException {
+        json.beginObject()
+                .name("id").value(p.getId())
+                .name("nombre").value(p.getNombre())
+                .name("apellido").value(p.getApellido())
+                .name("dni").value(p.getDni())
+                .name("fechaNacimiento").value(p.getFechaNacimiento() != null ? p.getFechaNacimiento().toString() : null)
+                .name("version").value(p.getVersion());
+        json.name("historiaClinica");
+        if (p.getHistoriaClinica() != null) escribirHistoria(json, p.getHistoriaClinica());
+        else json.nullValue();
+        json.endObject();
+    }
+
+    private void escribirEstadisticas(JsonWriter json, Estadisticas e) throws IOException {
+        json.beginObject()
+                .name("pacientes").value(e.pacientes)
+                .name("historias").value(e.historias)
+                .name("historiasSinMedicacion").value(e.historiasSinMedicacion);
+        escribirConteos(json, "porGrupoSanguineo", e.porGrupoSanguineo);
+        escribirConteos(json, "porFranjaEtaria", e.porFranjaEtaria);
+        escribirConteos(json, "medicacionesFrecuentes", e.medicacionesFrecuentes);
+        json.endObject();
+    }
+
+    private static void escribirConteos(JsonWriter json, String nombre, Map<String, Long> conteos) throws IOException {
+        json.name(nombre).beginObject();
+        for (Map.Entry<String, Long> c : conteos.entrySet()) json.name(c.getKey()).value(c.getValue());
+        json.endObject();
+    }
+
+    static void escribirHistoria(JsonWriter json, HistoriaClinica hc) throws IOException {
+        json.beginObject()
+                .name("id").value(hc.getId())
+                .name("nroHistoria").value(hc.getNroHistoria())
+                .name("grupoSanguineo").value(hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().getSimbolo() : null)
+                .name("antecedentes").value(hc.getAntecedentes())
+                .name("medicacionActual").value(hc.getMedaicacionActual())
+                .name("observaciones").value(hc.getObservaciones())
+                .name("pacienteId").value(hc.getPacienteId())
+                .name("version").value(hc.getVersion())
+                .endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Paciente pacienteDesdeJson(Map<String, Object> datos) {
+        Paciente p = new Paciente();
+        p.setNombre(texto(datos, "nombre"));
+        p.setApellido(texto(datos, "apellido"));
+        p.setDni(texto(datos, "dni"));
+        String fecha = texto(datos, "fechaNacimiento");
+        if (fecha != null) {
+            try {
+                p.setFechaNacimiento(LocalDate.parse(fecha));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("fechaNacimiento debe tener formato YYYY-MM-DD");
+            }
+        }
+        Object hc = datos.get("historiaClinica");
+        if (hc instanceof Map) {
+            p.setHistoriaClinica(historiaDesdeJson((Map<String, Object>) hc));
+        } else if (hc != null) {
+            throw new IllegalArgumentException("historiaClinica debe ser un objeto");
+        }
+        return p;
+    }
+
+    private HistoriaClinica historiaDesdeJson(Map<String, Object> datos) {
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setNroHistoria(texto(datos, "nroHistoria"));
+        hc.setGrupoSanguineo(grupoSanguineo(texto(datos, "grupoSanguineo")));
+        hc.setAntecedentes(texto(datos, "antecedentes"));
+        hc.setMedaicacionActual(texto(datos, "medicacionActual"));
+        hc.setObservaciones(texto(datos, "observaciones"));
+        Object pacienteId = datos.get("pacienteId");
+        if (pacienteId instanceof BigDecimal n) {
+            hc.setPacienteId(n.longValueExact());
+        } else if (pacienteId != null) {
+            throw new IllegalArgumentException("pacienteId debe ser numérico");
+        }
+        return hc;
+    }
+
+    /**
+     * Acepta el símbolo ("A+") o el nombre del enum ("A_POSITIVO").
+     */
+    private GrupoSanguineo grupoSanguineo(String valor) {
+        if (valor == null) return null;
+        GrupoSanguineo g = GrupoSanguineo.fromSimbolo(valor);
+        if (g != null) return g;
+        try {
+            return GrupoSanguineo.valueOf(valor.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Grupo sanguíneo inválido: " + valor);
+        }
+    }
+
+    /** Versión con la que el cliente leyó la entidad */
+    private static long version(Map<String, Object> datos) {
+        Object valor = datos.get("version");
+        if (valor instanceof BigDecimal n) {
+            try {
+                return n.longValueExact();
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("version debe ser un número entero");
+            }
+        }
+        throw new IllegalArgumentException("version debe ser un número entero");
+    }
+
+    private static String texto(Map<String, Object> datos, String campo) {
+        Object valor = datos.get(campo);
+        if (valor == null) return null;
+        if (valor instanceof String s) return s;
+        if (valor instanceof BigDecimal n) return n.toPlainString();
+        throw new IllegalArgumentException("El campo " + campo + " debe ser texto");
+    }
+
+    // =====================================
+    //  Métodos auxiliares HTTP
+    // =====================================
+
+    @FunctionalInterface
+    private interface Accion {
+        void ejecutar() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface EscritorJson<T> {
+        void escribir(JsonWriter json, T entidad) throws IOException;
+    }
+
+    /** Página por clave de un listado (GenericService.getPagina) */
+    @FunctionalInterface
+    private interface LectorPagina<T> {
+        List<T> leer(int despuesDeId, int limite) throws Exception;
+    }
+
+    /**
+     * Ejecuta el handler traduciendo excepciones a códigos HTTP y cerrando siempre el intercambio.
+     * Cada intercambio es una solicitud para ReplicaRouter: después de una escritura, sus
+     * lecturas van a la primaria.
+     */
+    private void atender(HttpExchange ex, Accion accion) {
+        try {
+            ReplicaRouter.enSolicitud(accion::ejecutar);
+        } catch (IllegalArgumentException e) {
+            responderErrorSeguro(ex, 400, e.getMessage());
+        } catch (VersionConflictException e) {
+            responderErrorSeguro(ex, 409, e.getMessage());
+        } catch (TimeoutException e) {
+            responderErrorSeguro(ex, 503, e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error en " + ex.getRequestMethod() + " " + ex.getRequestURI() + ": " + e.getMessage());
+            responderErrorSeguro(ex, 500, "Error interno del servidor");
+        } finally {
+            ex.close();
+        }
+    }
+
+    /** Llamada puntual a un servicio, con límite de concurrencia y timeout */
+    private <T> T llamar(Callable<T> llamada) throws Exception {
+        return requestExecutor.ejecutar(llamada);
+    }
+
+    private <T> void responder(HttpExchange ex, int status, T entidad, EscritorJson<T> escritor) throws IOException {
+        if (entidad == null) {
+            responderError(ex, 404, "No encontrado");
+            return;
+        }
+        try (BufferedWriter out = abrirCuerpo(ex, status)) {
+            escritor.escribir(new JsonWriter(out), entidad);
+        }
+    }
+
+    private <T> void responderLista(HttpExchange ex, Stream<T> entidades, EscritorJson<T> escritor) throws IOException {
+        try (BufferedWriter out = abrirCuerpo(ex, 200)) {
+            JsonWriter json = new JsonWriter(out);
+            json.beginArray();
+            Iterator<T> it = entidades.iterator();
+            while (it.hasNext()) escritor.escribir(json, it.next());
+            json.endArray();
+        }
+    }
+
+    /**
+     * Listado completo por páginas (paginación por clave). Cada página pasa por {@link #llamar},
+     * con el límite de concurrencia y el timeout, y se escribe con la conexión ya devuelta al
+     * pool: un cliente lento no retiene conexiones. La primera página se lee antes de enviar
+     * los encabezados, así un timeout todavía se responde con 503.
+     */
+    private <T> void responderTodos(HttpExchange ex, LectorPagina<T> paginas, ToIntFunction<T> id,
+                                    EscritorJson<T> escritor) throws Exception {
+        List<T> pagina = llamar(() -> paginas.leer(0, GenericService.MAX_PAGINA));
+        try (BufferedWriter out = abrirCuerpo(ex, 200)) {
+            JsonWriter json = new JsonWriter(out);
+            json.beginArray();
+            while (true) {
+                for (T entidad : pagina) escritor.escribir(json, entidad);
+                if (pagina.size() < GenericService.MAX_PAGINA) break;
+                int ultimo = id.applyAsInt(pagina.get(pagina.size() - 1));
+                pagina = llamar(() -> paginas.leer(ultimo, GenericService.MAX_PAGINA));
+            }
+            json.endArray();
+        }
+    }
+
+    private void responderVacio(HttpExchange ex, int status) throws IOException {
+        ex.sendResponseHeaders(status, -1);
+    }
+
+    private void responderError(HttpExchange ex, int status, String mensaje) throws IOException {
+        try (BufferedWriter out = abrirCuerpo(ex, status)) {
+            new JsonWriter(out).beginObject().name("error").value(mensaje).endObject();
+        }
+    }
+
+    /** Si los encabezados ya se enviaron (error a mitad de un listado) solo se puede cortar la respuesta */
+    private void responderErrorSeguro(HttpExchange ex, int status, String mensaje) {
+        if (ex.getResponseCode() != -1) return;
+        try {
+            responderError(ex, status, mensaje);
+        } catch (IOException e) {
+            System.err.println("No se pudo enviar la respuesta de error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Envía los encabezados (respuesta chunked) y devuelve el cuerpo, comprimido si el cliente acepta gzip.
+     */
+    private BufferedWriter abrirCuerpo(HttpExchange ex, int status) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", JSON);
+        String aceptadas = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = aceptadas != null && aceptadas.toLowerCase().contains("gzip");
+        if (gzip) ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        ex.sendResponseHeaders(status, 0);
+        OutputStream cuerpo = gzip ? new GZIPOutputStream(ex.getResponseBody(), 8192) : ex.getResponseBody();
+        return new BufferedWriter(new OutputStreamWriter(cuerpo, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    private static String leerCuerpo(HttpExchange ex) throws IOException {
+        return new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Extrae el {id} de /recurso/{id}; null si la ruta es la colección.
+     */
+    private static Integer idDeRuta(HttpExchange ex) {
+        String contexto = ex.getHttpContext().getPath();
+        String resto = ex.getRequestURI().getPath().substring(contexto.length());
+        if (resto.isEmpty() || resto.equals("/")) return null;
+        return entero(resto.substring(1), "id");
+    }
+
+    private static int requerirId(Integer id) {
+        if (id == null) throw new IllegalArgumentException("Falta el ID en la ruta");
+        return id;
+    }
+
+    private static int entero(String valor, String nombre) {
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El parámetro " + nombre + " debe ser un número entero");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) return params;
+        for (String par : query.split("&")) {
+            int igual = par.indexOf('=');
+            String clave = igual >= 0 ? par.substring(0, igual) : par;
+            String valor = igual >= 0 ? par.substring(igual + 1) : "";
+            params.put(URLDecoder.decode(clave, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,169 @@
+package Main;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parser JSON mínimo para los cuerpos de las solicitudes de la API HTTP.
+ *
+ * Convierte el texto a tipos de Java:
+ * - objeto → Map (mantiene el orden), arreglo → List
+ * - string → String, número → BigDecimal, true/false → Boolean, null → null
+ *
+ * Cualquier error de sintaxis se informa con IllegalArgumentException (HTTP 400).
+ */
+public class JsonReader {
+    private final String texto;
+    private int pos;
+
+    private JsonReader(String texto) {
+        this.texto = texto;
+    }
+
+    /**
+     * Parsea un documento JSON completo.
+     */
+    public static Object parse(String texto) {
+        if (texto == null) {
+            throw new IllegalArgumentException("El cuerpo JSON no puede ser null");
+        }
+        JsonReader reader = new JsonReader(texto);
+        Object valor = reader.leerValor();
+        reader.saltarEspacios();
+        if (reader.pos != texto.length()) {
+            throw reader.error("Contenido inesperado después del JSON");
+        }
+        return valor;
+    }
+
+    /**
+     * Parsea un documento que debe ser un objeto JSON.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String texto) {
+        Object valor = parse(texto);
+        if (!(valor instanceof Map)) {
+            throw new IllegalArgumentException("Se esperaba un objeto JSON");
+        }
+        return (Map<String, Object>) valor;
+    }
+
+    /* helpers */
+
+    private Object leerValor() {
+        saltarEspacios();
+        if (pos >= texto.length()) throw error("Fin inesperado del JSON");
+        char c = texto.charAt(pos);
+        switch (c) {
+            case '{': return leerObjeto();
+            case '[': return leerArreglo();
+            case '"': return leerString();
+            case 't': return leerLiteral("true", Boolean.TRUE);
+            case 'f': return leerLiteral("false", Boolean.FALSE);
+            case 'n': return leerLiteral("null", null);
+            default:
+                if (c == '-' || Character.isDigit(c)) return leerNumero();
+                throw error("Carácter inesperado '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> leerObjeto() {
+        Map<String, Object> objeto = new LinkedHashMap<>();
+        pos++;
+        saltarEspacios();
+        if (consumir('}')) return objeto;
+        do {
+            saltarEspacios();
+            if (pos >= texto.length() || texto.charAt(pos) != '"') throw error("Se esperaba el nombre de un campo");
+            String nombre = leerString();
+            saltarEspacios();
+            if (!consumir(':')) throw error("Se esperaba ':'");
+            objeto.put(nombre, leerValor());
+            saltarEspacios();
+        } while (consumir(','));
+        if (!consumir('}')) throw error("Se esperaba '}'");
+        return objeto;
+    }
+
+    private List<Object> leerArreglo() {
+        List<Object> lista = new ArrayList<>();
+        pos++;
+        saltarEspacios();
+        if (consumir(']')) return lista;
+        do {
+            lista.add(leerValor());
+            saltarEspacios();
+        } while (consumir(','));
+        if (!consumir(']')) throw error("Se esperaba ']'");
+        return lista;
+    }
+
+    private String leerString() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (pos < texto.length()) {
+            char c = texto.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= texto.length()) break;
+            char esc = texto.charAt(pos++);
+            switch (esc) {
+                case '"', '\\', '/' -> sb.append(esc);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > texto.length()) throw error("Secuencia \\u incompleta");
+                    try {
+                        sb.append((char) Integer.parseInt(texto.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Secuencia \\u inválida");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("Escape inválido '\\" + esc + "'");
+            }
+        }
+        throw error("String sin cerrar");
+    }
+
+    private BigDecimal leerNumero() {
+        int inicio = pos;
+        while (pos < texto.length() && "+-0123456789.eE".indexOf(texto.charAt(pos)) >= 0) pos++;
+        try {
+            return new BigDecimal(texto.substring(inicio, pos));
+        } catch (NumberFormatException e) {
+            throw error("Número inválido");
+        }
+    }
+
+    private Object leerLiteral(String literal, Object valor) {
+        if (!texto.startsWith(literal, pos)) throw error("Literal inválido");
+        pos += literal.length();
+        return valor;
+    }
+
+    private boolean consumir(char c) {
+        if (pos < texto.length() && texto.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void saltarEspacios() {
+        while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String mensaje) {
+        return new IllegalArgumentException("JSON inválido en la posición " + pos + ": " + mensaje);
+    }
+}
@@ -0,0 +1,127 @@
+package Main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Escritor JSON en streaming: escribe directamente sobre el Writer, sin armar
+ * el documento en memoria. Se usa en los listados de la API HTTP para enviar
+ * miles de registros sin bufferizarlos.
+ *
+ * Uso:
+ * <pre>
+ * json.beginObject().name("id").value(1).name("dni").value("123").endObject();
+ * </pre>
+ */
+public class JsonWriter {
+    private final Writer out;
+
+    /** Por cada nivel abierto: true si todavía no se escribió ningún elemento */
+    private final Deque<Boolean> primeros = new ArrayDeque<>();
+    private boolean despuesDeNombre;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separar();
+        out.write('{');
+        primeros.push(true);
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        primeros.pop();
+        out.write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separar();
+        out.write('[');
+        primeros.push(true);
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        primeros.pop();
+        out.write(']');
+        return this;
+    }
+
+    public JsonWriter name(String nombre) throws IOException {
+        separar();
+        escribirString(nombre);
+        out.write(':');
+        despuesDeNombre = true;
+        return this;
+    }
+
+    public JsonWriter value(String valor) throws IOException {
+        separar();
+        if (valor == null) out.write("null");
+        else escribirString(valor);
+        return this;
+    }
+
+    public JsonWriter value(Number valor) throws IOException {
+        separar();
+        out.write(valor == null ? "null" : valor.toString());
+        return this;
+    }
+
+    public JsonWriter value(boolean valor) throws IOException {
+        separar();
+        out.write(valor ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separar();
+        out.write("null");
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /* helpers */
+
+    private void separar() throws IOException {
+        if (despuesDeNombre) {
+            despuesDeNombre = false;
+            return;
+        }
+        if (!primeros.isEmpty()) {
+            if (primeros.peek()) {
+                primeros.pop();
+                primeros.push(false);
+            } else {
+                out.write(',');
+            }
+        }
+    }
+
+    private void escribirString(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) out.write(String.format("\\u%04x", (int) c));
+                    else out.write(c);
+                }
+            }
+        }
+        out.write('"');
+    }
+}
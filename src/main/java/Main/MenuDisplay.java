@@ -18,6 +18,11 @@ public class MenuDisplay {
         System.out.println("----------------------------------");
         System.out.println("9. Buscar paciente por DNI");
         System.out.println("10. Buscar historia clínica por número");
+        System.out.println("11. Buscar historias clínicas por texto");
+        System.out.println("12. Buscar pacientes por nombre");
+        System.out.println("13. Estadísticas");
+        System.out.println("14. Exportar registro completo");
+        System.out.println("15. Importar pacientes desde CSV");
         System.out.println("0. Salir");
         System.out.print("Ingrese una opción: ");
     }
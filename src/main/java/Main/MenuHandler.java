@@ -3,13 +3,19 @@ package Main;
 import Models.GrupoSanguineo;
 import Models.HistoriaClinica;
 import Models.Paciente;
+import Service.AnalyticsSnapshot;
 import Service.PacienteServiceImpl;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class MenuHandler {
+    /** Registros mostrados por página en los listados */
+    private static final int TAMANIO_PAGINA = 20;
+
     private final Scanner scanner;
     private final PacienteServiceImpl pacienteService;
 
@@ -57,20 +63,27 @@ public class MenuHandler {
 
     public void listarPacientes() {
         try {
-            List<Paciente> pacientes = pacienteService.getAll();
-            if (pacientes.isEmpty()) {
-                System.out.println("No hay pacientes registrados.");
-                return;
-            }
-
-            for (Paciente p : pacientes) {
-                System.out.println("ID: " + p.getId() + " | " + p.getNombre() + " " + p.getApellido()
-                        + " | DNI: " + p.getDni()
-                        + " | Nacimiento: " + p.getFechaNacimiento());
-                if (p.getHistoriaClinica() != null) {
-                    System.out.println("   HC Nº: " + p.getHistoriaClinica().getNroHistoria()
-                            + " | Grupo: " + p.getHistoriaClinica().getGrupoSanguineo().getSimbolo());
+            int ultimoId = 0;
+            boolean hayRegistros = false;
+            while (true) {
+                List<Paciente> pagina = pacienteService.getPagina(ultimoId, TAMANIO_PAGINA);
+                if (pagina.isEmpty()) break;
+                hayRegistros = true;
+
+                for (Paciente p : pagina) {
+                    System.out.println("ID: " + p.getId() + " | " + p.getNombre() + " " + p.getApellido()
+                            + " | DNI: " + p.getDni()
+                            + " | Nacimiento: " + p.getFechaNacimiento());
+                    if (p.getHistoriaClinica() != null) {
+                        System.out.println("   HC Nº: " + p.getHistoriaClinica().getNroHistoria()
+                                + " | Grupo: " + p.getHistoriaClinica().getGrupoSanguineo().getSimbolo());
+                    }
                 }
+                ultimoId = pagina.get(pagina.size() - 1).getId();
+                if (pagina.size() < TAMANIO_PAGINA || !continuarPaginando()) break;
+            }
+            if (!hayRegistros) {
+                System.out.println("No hay pacientes registrados.");
             }
         } catch (Exception e) {
             System.err.println("Error al listar pacientes: " + e.getMessage());
@@ -89,17 +102,20 @@ public class MenuHandler {
 
             System.out.print("Nuevo nombre (" + p.getNombre() + "): ");
             String nombre = scanner.nextLine().trim();
-            if (!nombre.isEmpty()) p.setNombre(nombre);
 
             System.out.print("Nuevo apellido (" + p.getApellido() + "): ");
             String apellido = scanner.nextLine().trim();
-            if (!apellido.isEmpty()) p.setApellido(apellido);
 
             System.out.print("Nuevo DNI (" + p.getDni() + "): ");
             String dni = scanner.nextLine().trim();
-            if (!dni.isEmpty()) p.setDni(dni);
 
-            pacienteService.actualizar(p);
+            // Si otro usuario lo modificó mientras se cargaban los datos, se aplican
+            // solo los campos ingresados sobre su versión
+            pacienteService.actualizarConReintento(p, x -> {
+                if (!nombre.isEmpty()) x.setNombre(nombre);
+                if (!apellido.isEmpty()) x.setApellido(apellido);
+                if (!dni.isEmpty()) x.setDni(dni);
+            });
             System.out.println("Paciente actualizado correctamente.");
         } catch (Exception e) {
             System.err.println("Error al actualizar paciente: " + e.getMessage());
@@ -133,15 +149,23 @@ public class MenuHandler {
 
     public void listarHistoriasClinicas() {
         try {
-            List<HistoriaClinica> historias = pacienteService.getHistoriaClinicaService().getAll();
-            if (historias.isEmpty()) {
-                System.out.println("No hay historias clínicas registradas.");
-                return;
+            int ultimoId = 0;
+            boolean hayRegistros = false;
+            while (true) {
+                List<HistoriaClinica> pagina = pacienteService.getHistoriaClinicaService().getPagina(ultimoId, TAMANIO_PAGINA);
+                if (pagina.isEmpty()) break;
+                hayRegistros = true;
+
+                for (HistoriaClinica hc : pagina) {
+                    System.out.println("ID: " + hc.getId() + " | Nº: " + hc.getNroHistoria() +
+                            " | Grupo: " + hc.getGrupoSanguineo().getSimbolo() +
+                            " | PacienteID: " + hc.getPacienteId());
+                }
+                ultimoId = pagina.get(pagina.size() - 1).getId();
+                if (pagina.size() < TAMANIO_PAGINA || !continuarPaginando()) break;
             }
-            for (HistoriaClinica hc : historias) {
-                System.out.println("ID: " + hc.getId() + " | Nº: " + hc.getNroHistoria() +
-                        " | Grupo: " + hc.getGrupoSanguineo().getSimbolo() +
-                        " | PacienteID: " + hc.getPacienteId());
+            if (!hayRegistros) {
+                System.out.println("No hay historias clínicas registradas.");
             }
         } catch (Exception e) {
             System.err.println("Error al listar historias clínicas: " + e.getMessage());
@@ -160,9 +184,10 @@ public class MenuHandler {
 
             System.out.print("Nuevo número de historia (" + hc.getNroHistoria() + "): ");
             String nro = scanner.nextLine().trim();
-            if (!nro.isEmpty()) hc.setNroHistoria(nro);
 
-            pacienteService.getHistoriaClinicaService().actualizar(hc);
+            pacienteService.getHistoriaClinicaService().actualizarConReintento(hc, x -> {
+                if (!nro.isEmpty()) x.setNroHistoria(nro);
+            });
             System.out.println("Historia clínica actualizada correctamente.");
         } catch (Exception e) {
             System.err.println("Error al actualizar historia clínica: " + e.getMessage());
@@ -200,6 +225,63 @@ public class MenuHandler {
         }
     }
 
+    public void buscarPacientesPorNombre() {
+        try {
+            System.out.print("Nombre y/o apellido (puede ser parcial): ");
+            String texto = scanner.nextLine().trim();
+            List<Paciente> pacientes = pacienteService.buscarPorNombre(texto, TAMANIO_PAGINA);
+            if (pacientes.isEmpty()) {
+                System.out.println("No se encontraron pacientes con ese nombre.");
+                return;
+            }
+            for (Paciente p : pacientes) {
+                System.out.println("ID: " + p.getId() + " | " + p.getApellido() + ", " + p.getNombre() + " | DNI: " + p.getDni());
+            }
+        } catch (Exception e) {
+            System.err.println("Error al buscar pacientes: " + e.getMessage());
+        }
+    }
+
+    public void mostrarEstadisticas() {
+        try {
+            AnalyticsSnapshot analitica = pacienteService.getAnalitica();
+            Map<String, Long> porGrupo = analitica.contarPorGrupoSanguineo();
+            Map<String, Long> porEdad = analitica.contarPorFranjaEtaria(10);
+            long sinMedicacion = analitica.contarHistoriasSinMedicacion();
+            System.out.println("Pacientes activos: " + analitica.getPacientesActivos()
+                    + " | Historias activas: " + analitica.getHistoriasActivas());
+            System.out.println("Historias por grupo sanguíneo:");
+            porGrupo.forEach((grupo, cantidad) -> System.out.println("  " + grupo + ": " + cantidad));
+            System.out.println("Pacientes por edad:");
+            porEdad.forEach((franja, cantidad) -> System.out.println("  " + franja + ": " + cantidad));
+            System.out.println("Historias sin medicación actual: " + sinMedicacion);
+        } catch (Exception e) {
+            System.err.println("Error al calcular estadísticas: " + e.getMessage());
+        }
+    }
+
+    public void exportarRegistro() {
+        try {
+            System.out.print("Archivo de destino (.csv, .ndjson o .jsonl, con .gz opcional): ");
+            String archivo = scanner.nextLine().trim();
+            RegistryExporter exportador = RegistryExporter.desdeConfiguracion(pacienteService);
+            System.out.println(exportador.exportar(Path.of(archivo)));
+        } catch (Exception e) {
+            System.err.println("Error al exportar: " + e.getMessage());
+        }
+    }
+
+    public void importarPacientes() {
+        try {
+            System.out.print("Archivo CSV a importar: ");
+            String archivo = scanner.nextLine().trim();
+            RegistryImporter importador = RegistryImporter.desdeConfiguracion(pacienteService);
+            System.out.println(importador.importar(Path.of(archivo)));
+        } catch (Exception e) {
+            System.err.println("Error al importar: " + e.getMessage());
+        }
+    }
+
     public void buscarHistoriaPorNumero() {
         try {
             System.out.print("Número de historia clínica: ");
@@ -216,10 +298,38 @@ public class MenuHandler {
         }
     }
 
+    public void buscarHistoriasPorTexto() {
+        try {
+            System.out.print("Texto a buscar (antecedentes, medicación, observaciones): ");
+            String texto = scanner.nextLine().trim();
+            int offset = 0;
+            while (true) {
+                List<HistoriaClinica> pagina = pacienteService.getHistoriaClinicaService().buscarTexto(texto, offset, TAMANIO_PAGINA);
+                if (pagina.isEmpty()) {
+                    if (offset == 0) System.out.println("No se encontraron historias clínicas con ese texto.");
+                    break;
+                }
+                for (HistoriaClinica hc : pagina) {
+                    System.out.println("ID: " + hc.getId() + " | Nº: " + hc.getNroHistoria() +
+                            " | PacienteID: " + hc.getPacienteId());
+                }
+                offset += pagina.size();
+                if (pagina.size() < TAMANIO_PAGINA || !continuarPaginando()) break;
+            }
+        } catch (Exception e) {
+            System.err.println("Error al buscar historias clínicas: " + e.getMessage());
+        }
+    }
+
     // =====================================
     //  Métodos auxiliares
     // =====================================
 
+    private boolean continuarPaginando() {
+        System.out.print("-- Enter para ver más, 'q' para terminar: ");
+        return !scanner.nextLine().trim().equalsIgnoreCase("q");
+    }
+
     private HistoriaClinica crearHistoriaClinicaInteractiva() {
         System.out.print("Número de historia: ");
         String nro = scanner.nextLine().trim();
@@ -0,0 +1,359 @@
+package Main;
+
+import Config.ConnectionPool;
+import Config.DatabaseConnection;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.PacienteServiceImpl;
+import Service.RequestExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación completa de pacientes con su historia clínica a CSV o NDJSON
+ * (un objeto JSON por línea, con los mismos campos que GET /pacientes).
+ *
+ * Pipeline:
+ * - El rango de ids (MIN/MAX de los pacientes activos) se divide en bloques de
+ *   -Dexport.chunkIds ids (por defecto 5000): cada bloque es una consulta
+ *   "id > ? AND id <= ?" que devuelve como mucho esa cantidad de filas
+ * - Hasta -Dexport.threads bloques se leen a la vez, cada uno con su conexión del pool,
+ *   y en el mismo hilo se codifican (y comprimen) a bytes
+ * - El hilo que exporta toma los bloques en orden de id y los escribe con un FileChannel
+ *   a través de un ByteBuffer directo de -Dexport.bufferBytes (por defecto 4 MB)
+ *
+ * Memoria constante: nunca hay más de export.threads bloques codificados esperando,
+ * sin importar el tamaño de la tabla. La salida es determinística (ordenada por id).
+ *
+ * Con gzip cada bloque se comprime por separado, en paralelo, como un miembro gzip;
+ * los miembros concatenados forman un .gz válido (gzip -d, zcat, GZIPInputStream).
+ *
+ * Se escribe en "destino.parcial" y se renombra al terminar: un archivo con el nombre
+ * final siempre está completo. Cada bloque es una consulta aparte: las filas que cambian
+ * durante la exportación pueden salir con el valor anterior o el nuevo, y los pacientes
+ * creados después de leer el MAX(id) no se incluyen.
+ *
+ * Uso: java Main.RegistryExporter pacientes.csv.gz (formato según la extensión:
+ * .csv, .ndjson o .jsonl, con .gz opcional)
+ */
+public final class RegistryExporter {
+
+    public enum Formato {
+        CSV, NDJSON;
+
+        /** Formato según la extensión del archivo, sin el .gz */
+        static Formato desdeArchivo(String nombre) {
+            String n = nombre.toLowerCase(Locale.ROOT);
+            if (n.endsWith(".gz")) n = n.substring(0, n.length() - 3);
+            if (n.endsWith(".csv")) return CSV;
+            if (n.endsWith(".ndjson") || n.endsWith(".jsonl")) return NDJSON;
+            throw new IllegalArgumentException("Extensión no soportada (usar .csv, .ndjson o .jsonl, con .gz opcional): " + nombre);
+        }
+    }
+
+    @FunctionalInterface
+    public interface LimitesIds {
+        /** @return {min, max} de los ids a exportar, o null si no hay filas */
+        int[] leer() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Rango<T> {
+        List<T> leer(int despuesDeId, int hastaId) throws Exception;
+    }
+
+    /** Resumen de una exportación terminada */
+    public static final class Resultado {
+        private final Path archivo;
+        private final long filas;
+        private final int bloques;
+        private final long bytes;
+        private final long millis;
+
+        Resultado(Path archivo, long filas, int bloques, long bytes, long millis) {
+            this.archivo = archivo;
+            this.filas = filas;
+            this.bloques = bloques;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        public Path getArchivo() {
+            return archivo;
+        }
+
+        public long getFilas() {
+            return filas;
+        }
+
+        public int getBloques() {
+            return bloques;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return filas + " pacientes exportados a " + archivo + " (" + bytes / 1024 + " KB, "
+                    + bloques + " bloques, " + millis + " ms)";
+        }
+    }
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("RegistryExporter");
+
+    private static final String ENCABEZADO_CSV = "id,nombre,apellido,dni,fecha_nacimiento,historia_id,nro_historia,"
+            + "grupo_sanguineo,antecedentes,medicacion_actual,observaciones\r\n";
+
+    /** Estimación de bytes por fila para dimensionar el texto de cada bloque */
+    private static final int BYTES_POR_FILA = 256;
+
+    private final LimitesIds limites;
+    private final Rango<Paciente> rango;
+    private final int hilos;
+    private final int idsPorBloque;
+    private final int bufferBytes;
+
+    /**
+     * @param limites Menor y mayor id a exportar
+     * @param rango Lectura de los pacientes de un rango de ids, ordenados por id
+     * @param hilos Bloques leídos y codificados a la vez
+     * @param idsPorBloque Ancho de cada rango de ids
+     * @param bufferBytes Tamaño del buffer directo de escritura
+     */
+    public RegistryExporter(LimitesIds limites, Rango<Paciente> rango, int hilos, int idsPorBloque, int bufferBytes) {
+        if (limites == null || rango == null) {
+            throw new IllegalArgumentException("Las fuentes de datos no pueden ser null");
+        }
+        if (hilos <= 0 || idsPorBloque <= 0 || bufferBytes <= 0) {
+            throw new IllegalArgumentException("Hilos, ids por bloque y tamaño de buffer deben ser mayores a 0");
+        }
+        this.limites = limites;
+        this.rango = rango;
+        this.hilos = hilos;
+        this.idsPorBloque = idsPorBloque;
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * Exportador sobre el servicio de pacientes con los límites -Dexport.*.
+     * Por defecto usa la mitad del pool de conexiones, para no dejar sin conexiones
+     * al resto de la aplicación mientras exporta.
+     */
+    public static RegistryExporter desdeConfiguracion(PacienteServiceImpl pacienteService) {
+        ConnectionPool pool = DatabaseConnection.getPool();
+        int porDefecto = Math.max(1, (pool != null ? pool.getMaxSize() : 4) / 2);
+        return new RegistryExporter(pacienteService::getRangoIds, pacienteService::getRango,
+                Integer.getInteger("export.threads", porDefecto),
+                Integer.getInteger("export.chunkIds", 5_000),
+                Integer.getInteger("export.bufferBytes", 4 << 20));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Uso: java Main.RegistryExporter <archivo.csv|.ndjson|.jsonl>[.gz]");
+            System.exit(2);
+        }
+        RegistryExporter exportador = desdeConfiguracion(AppMenu.createPacienteService());
+        System.out.println(exportador.exportar(Path.of(args[0])));
+    }
+
+    /**
+     * Exporta con el formato y la compresión que indica la extensión del archivo.
+     */
+    public Resultado exportar(Path destino) throws Exception {
+        String nombre = destino.getFileName().toString();
+        return exportar(destino, Formato.desdeArchivo(nombre), nombre.toLowerCase(Locale.ROOT).endsWith(".gz"));
+    }
+
+    /**
+     * Exporta todos los pacientes activos a 'destino' (se reemplaza si existe).
+     * Si falla no queda ningún archivo nuevo: se borra el parcial.
+     */
+    public Resultado exportar(Path destino, Formato formato, boolean gzip) throws Exception {
+        if (destino == null || formato == null) {
+            throw new IllegalArgumentException("Destino y formato son obligatorios");
+        }
+        return METRICAS.medir("exportar", () -> {
+            long inicio = System.nanoTime();
+            Path parcial = destino.resolveSibling(destino.getFileName() + ".parcial");
+            int[] ids = limites.leer();
+            ExecutorService executor = RequestExecutor.nuevoExecutorPorTarea(hilos, "export");
+            Deque<Future<Bloque>> pendientes = new ArrayDeque<>();
+            long filas = 0;
+            long bytes = 0;
+            int bloques = 0;
+            try (FileChannel canal = FileChannel.open(parcial, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bufferBytes);
+                if (formato == Formato.CSV) {
+                    byte[] encabezado = ENCABEZADO_CSV.getBytes(StandardCharsets.UTF_8);
+                    bytes += escribir(canal, buffer, gzip ? comprimir(encabezado) : encabezado);
+                }
+                if (ids != null) {
+                    // long: el último bloque puede pasar de Integer.MAX_VALUE
+                    long siguiente = ids[0] - 1L;
+                    long maximo = ids[1];
+                    while (siguiente < maximo || !pendientes.isEmpty()) {
+                        while (pendientes.size() < hilos && siguiente < maximo) {
+                            int desde = (int) siguiente;
+                            int hasta = (int) Math.min(maximo, siguiente + idsPorBloque);
+                            pendientes.add(executor.submit(() -> codificar(desde, hasta, formato, gzip)));
+                            siguiente = hasta;
+                        }
+                        Bloque bloque = esperar(pendientes.poll());
+                        bytes += escribir(canal, buffer, bloque.datos);
+                        filas += bloque.filas;
+                        bloques++;
+                    }
+                }
+                vaciar(canal, buffer);
+                canal.force(true);
+            } catch (Exception e) {
+                pendientes.forEach(f -> f.cancel(true));
+                Files.deleteIfExists(parcial);
+                throw e;
+            } finally {
+                executor.shutdownNow();
+            }
+            mover(parcial, destino);
+            return new Resultado(destino, filas, bloques, bytes, (System.nanoTime() - inicio) / 1_000_000);
+        });
+    }
+
+    /* helpers */
+
+    /** Filas de un rango de ids ya codificadas (y comprimidas si corresponde) */
+    private static final class Bloque {
+        final int filas;
+        final byte[] datos;
+
+        Bloque(int filas, byte[] datos) {
+            this.filas = filas;
+            this.datos = datos;
+        }
+    }
+
+    private Bloque codificar(int despuesDeId, int hastaId, Formato formato, boolean gzip) throws Exception {
+        List<Paciente> pacientes = rango.leer(despuesDeId, hastaId);
+        StringWriter texto = new StringWriter(Math.max(16, pacientes.size() * BYTES_POR_FILA));
+        for (Paciente p : pacientes) {
+            if (formato == Formato.CSV) escribirCsv(texto.getBuffer(), p);
+            else escribirJson(texto, p);
+        }
+        byte[] datos = texto.toString().getBytes(StandardCharsets.UTF_8);
+        return new Bloque(pacientes.size(), gzip && datos.length > 0 ? comprimir(datos) : datos);
+    }
+
+    private static void escribirCsv(StringBuffer sb, Paciente p) {
+        HistoriaClinica hc = p.getHistoriaClinica();
+        sb.append(p.getId()).append(',');
+        campoCsv(sb, p.getNombre()).append(',');
+        campoCsv(sb, p.getApellido()).append(',');
+        campoCsv(sb, p.getDni()).append(',');
+        campoCsv(sb, p.getFechaNacimiento() != null ? p.getFechaNacimiento().toString() : null).append(',');
+        if (hc != null) {
+            sb.append(hc.getId()).append(',');
+            campoCsv(sb, hc.getNroHistoria()).append(',');
+            campoCsv(sb, hc.getGrupoSanguineo() != null ? hc.getGrupoSanguineo().getSimbolo() : null).append(',');
+            campoCsv(sb, hc.getAntecedentes()).append(',');
+            campoCsv(sb, hc.getMedaicacionActual()).append(',');
+            campoCsv(sb, hc.getObservaciones());
+        } else {
+            sb.append(",,,,,");
+        }
+        sb.append("\r\n");
+    }
+
+    /** Campo CSV según RFC 4180: entre comillas si tiene separadores, comillas o saltos de línea */
+    static StringBuffer campoCsv(StringBuffer sb, String valor) {
+        if (valor == null) return sb;
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) return sb.append(valor);
+        sb.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    private static void escribirJson(StringWriter texto, Paciente p) throws IOException {
+        HttpServerApp.escribirPaciente(new JsonWriter(texto), p);
+        texto.write('\n');
+    }
+
+    private static byte[] comprimir(byte[] datos) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(datos.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(salida, 64 * 1024)) {
+            gzip.write(datos);
+        }
+        return salida.toByteArray();
+    }
+
+    private static Bloque esperar(Future<Bloque> futuro) throws Exception {
+        try {
+            return futuro.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception causa) throw causa;
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    /** Copia los datos al buffer directo y lo escribe en el canal cada vez que se llena */
+    private static int escribir(FileChannel canal, ByteBuffer buffer, byte[] datos) throws IOException {
+        int posicion = 0;
+        while (posicion < datos.length) {
+            int n = Math.min(buffer.remaining(), datos.length - posicion);
+            buffer.put(datos, posicion, n);
+            posicion += n;
+            if (!buffer.hasRemaining()) vaciar(canal, buffer);
+        }
+        return datos.length;
+    }
+
+    private static void vaciar(FileChannel canal, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) canal.write(buffer);
+        buffer.clear();
+    }
+
+    private static void mover(Path parcial, Path destino) throws IOException {
+        try {
+            Files.move(parcial, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(parcial, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package Main;
+
+import Dao.Lotes;
+import Dao.SqlErrors;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.PacienteServiceImpl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Importación masiva de pacientes (con su historia clínica) desde un CSV, para dar de alta
+ * el padrón de una clínica nueva sin cargarlo de a uno por el menú.
+ *
+ * Formato: CSV RFC 4180 en UTF-8 con encabezado. Las columnas se buscan por nombre:
+ * nombre, apellido y dni son obligatorias; fecha_nacimiento (AAAA-MM-DD), nro_historia,
+ * grupo_sanguineo, antecedentes, medicacion_actual y observaciones son opcionales (sin
+ * nro_historia no se crea historia). Las demás columnas se ignoran, así que un archivo de
+ * RegistryExporter se puede importar tal cual.
+ *
+ * Pipeline, por lotes de Lotes.TAMANIO filas (-Ddb.batch.size):
+ * - El archivo se lee mapeado en memoria (FileChannel.map) por ventanas de
+ *   -Dimport.windowBytes (por defecto 64 MB), sin copiarlo a un buffer de Java
+ * - Las filas del lote se convierten y validan en paralelo (las mismas validaciones que el alta)
+ * - DNI y número de historia repetidos dentro del archivo se detectan en memoria, antes de ir
+ *   a la base: se importa la primera aparición
+ * - Un hilo aparte descarta los DNI y números que ya existen (consultas IN a la primaria) e
+ *   inserta el lote con insertarLote (INSERT de varias filas con rewriteBatchedStatements),
+ *   mientras el hilo que importa lee y valida el lote siguiente
+ * - Si el INSERT de un lote falla por los datos (por ejemplo, un valor demasiado largo o un
+ *   duplicado cargado al mismo tiempo por otra instancia) ese lote se reintenta fila por fila;
+ *   cualquier otro error (base caída) corta la importación, con los lotes anteriores ya confirmados
+ *
+ * Las filas rechazadas se escriben en "origen.rechazados.csv" con la línea, el motivo y las
+ * columnas originales: una vez corregido, ese archivo se puede volver a importar.
+ *
+ * Uso: java Main.RegistryImporter padron.csv
+ */
+public final class RegistryImporter {
+
+    /** Resumen de una importación terminada */
+    public static final class Resultado {
+        private final long leidas;
+        private final long importadas;
+        private final long rechazadas;
+        private final long millis;
+        private final Path rechazos;
+
+        Resultado(long leidas, long importadas, long rechazadas, long millis, Path rechazos) {
+            this.leidas = leidas;
+            this.importadas = importadas;
+            this.rechazadas = rechazadas;
+            this.millis = millis;
+            this.rechazos = rechazos;
+        }
+
+        public long getLeidas() {
+            return leidas;
+        }
+
+        public long getImportadas() {
+            return importadas;
+        }
+
+        public long getRechazadas() {
+            return rechazadas;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /** Archivo con las filas rechazadas, o null si no hubo rechazos */
+        public Path getRechazos() {
+            return rechazos;
+        }
+
+        public long getFilasPorSegundo() {
+            return leidas * 1000 / Math.max(1, millis);
+        }
+
+        @Override
+        public String toString() {
+            return leidas + " filas leídas, " + importadas + " importadas, " + rechazadas + " rechazadas en "
+                    + millis + " ms (" + getFilasPorSegundo() + " filas/s)"
+                    + (rechazos != null ? ". Rechazos en " + rechazos : "");
+        }
+    }
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("RegistryImporter");
+
+    private final PacienteServiceImpl pacienteService;
+    private final int tamanioLote;
+    private final int ventanaBytes;
+
+    /**
+     * @param tamanioLote Filas por lote; como mucho Lotes.TAMANIO para que cada lote sea un solo commit
+     * @param ventanaBytes Tamaño de cada ventana mapeada del archivo (límite para una fila)
+     */
+    public RegistryImporter(PacienteServiceImpl pacienteService, int tamanioLote, int ventanaBytes) {
+        if (pacienteService == null) {
+            throw new IllegalArgumentException("PacienteServiceImpl no puede ser null");
+        }
+        if (tamanioLote <= 0 || tamanioLote > Lotes.TAMANIO) {
+            throw new IllegalArgumentException("El tamaño de lote debe estar entre 1 y " + Lotes.TAMANIO);
+        }
+        if (ventanaBytes <= 0) {
+            throw new IllegalArgumentException("El tamaño de la ventana debe ser mayor a 0");
+        }
+        this.pacienteService = pacienteService;
+        this.tamanioLote = tamanioLote;
+        this.ventanaBytes = ventanaBytes;
+    }
+
+    /**
+     * Importador sobre el servicio de pacientes con los límites -Ddb.batch.size e -Dimport.windowBytes.
+     */
+    public static RegistryImporter desdeConfiguracion(PacienteServiceImpl pacienteService) {
+        return new RegistryImporter(pacienteService, Lotes.TAMANIO, Integer.getInteger("import.windowBytes", 64 << 20));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Uso: java Main.RegistryImporter <archivo.csv>");
+            System.exit(2);
+        }
+        RegistryImporter importador = desdeConfiguracion(AppMenu.createPacienteService());
+        System.out.println(importador.importar(Path.of(args[0])));
+    }
+
+    /**
+     * Importa todas las filas válidas del archivo.
+     *
+     * @throws IllegalArgumentException Si el archivo está vacío o le faltan columnas obligatorias
+     */
+    public Resultado importar(Path origen) throws Exception {
+        if (origen == null) {
+            throw new IllegalArgumentException("El archivo de origen es obligatorio");
+        }
+        return METRICAS.medir("importar", () -> {
+            long inicio = System.nanoTime();
+            Path rechazos = origen.resolveSibling(origen.getFileName() + ".rechazados.csv");
+            Files.deleteIfExists(rechazos);
+            ExecutorService escritor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "importacion-escritura");
+                t.setDaemon(true);
+                return t;
+            });
+            Future<?> escritura = null;
+            long leidas = 0;
+            try (LectorCsv lector = new LectorCsv(origen, ventanaBytes)) {
+                Fila encabezado = lector.siguiente();
+                if (encabezado == null) {
+                    throw new IllegalArgumentException("El archivo está vacío: " + origen);
+                }
+                Columnas columnas = new Columnas(encabezado.campos);
+                try (Informe informe = new Informe(rechazos, encabezado.campos)) {
+                    Set<String> dnis = new HashSet<>();
+                    Set<String> nros = new HashSet<>();
+                    List<Fila> filas = new ArrayList<>(tamanioLote);
+                    Fila fila;
+                    do {
+                        fila = lector.siguiente();
+                        if (fila != null) {
+                            if (fila.campos.length == 1 && fila.campos[0].isBlank()) continue;
+                            filas.add(fila);
+                            leidas++;
+                            if (filas.size() < tamanioLote) continue;
+                        }
+                        if (!filas.isEmpty()) {
+                            List<Alta> altas = validar(filas, columnas, dnis, nros, informe);
+                            esperar(escritura);
+                            escritura = escritor.submit(() -> {
+                                insertar(altas, informe);
+                                return null;
+                            });
+                            filas = new ArrayList<>(tamanioLote);
+                        }
+                    } while (fila != null);
+                    esperar(escritura);
+
+                    long millis = (System.nanoTime() - inicio) / 1_000_000;
+                    return new Resultado(leidas, informe.importadas, informe.rechazadas, millis,
+                            informe.rechazadas > 0 ? rechazos : null);
+                }
+            } catch (Exception e) {
+                if (escritura != null) escritura.cancel(true);
+                throw e;
+            } finally {
+                escritor.shutdownNow();
+            }
+        });
+    }
+
+    /* helpers */
+
+    /** Registro leído del CSV y la línea del archivo donde empieza */
+    static final class Fila {
+        final long linea;
+        final String[] campos;
+
+        Fila(long linea, String[] campos) {
+            this.linea = linea;
+            this.campos = campos;
+        }
+    }
+
+    /** Fila válida y el paciente que se va a insertar */
+    private static final class Alta {
+        final Fila fila;
+        final Paciente paciente;
+
+        Alta(Fila fila, Paciente paciente) {
+            this.fila = fila;
+            this.paciente = paciente;
+        }
+    }
+
+    /** Posición de cada columna conocida en el encabezado (-1 si no está) */
+    private static final class Columnas {
+        final int total;
+        final int nombre;
+        final int apellido;
+        final int dni;
+        final int fechaNacimiento;
+        final int nroHistoria;
+        final int grupoSanguineo;
+        final int antecedentes;
+        final int medicacionActual;
+        final int observaciones;
+
+        Columnas(String[] encabezado) {
+            Map<String, Integer> posiciones = new HashMap<>();
+            for (int i = 0; i < encabezado.length; i++) {
+                posiciones.putIfAbsent(encabezado[i].trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String obligatoria : List.of("nombre", "apellido", "dni")) {
+                if (!posiciones.containsKey(obligatoria)) {
+                    throw new IllegalArgumentException("Falta la columna obligatoria '" + obligatoria + "' en el encabezado");
+                }
+            }
+            this.total = encabezado.length;
+            this.nombre = posiciones.get("nombre");
+            this.apellido = posiciones.get("apellido");
+            this.dni = posiciones.get("dni");
+            this.fechaNacimiento = posiciones.getOrDefault("fecha_nacimiento", -1);
+            this.nroHistoria = posiciones.getOrDefault("nro_historia", -1);
+            this.grupoSanguineo = posiciones.getOrDefault("grupo_sanguineo", -1);
+            this.antecedentes = posiciones.getOrDefault("antecedentes", -1);
+            this.medicacionActual = posiciones.getOrDefault("medicacion_actual", -1);
+            this.observaciones = posiciones.getOrDefault("observaciones", -1);
+        }
+    }
+
+    /**
+     * Convierte y valida el lote en paralelo; después, en orden de línea, descarta los DNI
+     * y números de historia que ya aparecieron antes en el archivo.
+     */
+    private List<Alta> validar(List<Fila> filas, Columnas columnas, Set<String> dnis, Set<String> nros,
+                               Informe informe) throws IOException {
+        Object[] resultados = new Object[filas.size()];
+        IntStream.range(0, filas.size()).parallel().forEach(i -> {
+            try {
+                Paciente paciente = convertir(filas.get(i).campos, columnas);
+                pacienteService.validarDatos(paciente);
+                resultados[i] = paciente;
+            } catch (IllegalArgumentException e) {
+                resultados[i] = e.getMessage();
+            }
+        });
+
+        List<Alta> altas = new ArrayList<>(filas.size());
+        for (int i = 0; i < resultados.length; i++) {
+            if (resultados[i] instanceof String motivo) {
+                informe.rechazar(filas.get(i), motivo);
+                continue;
+            }
+            Paciente paciente = (Paciente) resultados[i];
+            String nro = paciente.getHistoriaClinica() != null ? paciente.getHistoriaClinica().getNroHistoria() : null;
+            if (dnis.contains(paciente.getDni())) {
+                informe.rechazar(filas.get(i), "DNI repetido en el archivo: " + paciente.getDni());
+            } else if (nro != null && nros.contains(nro)) {
+                informe.rechazar(filas.get(i), "Número de historia repetido en el archivo: " + nro);
+            } else {
+                dnis.add(paciente.getDni());
+                if (nro != null) nros.add(nro);
+                altas.add(new Alta(filas.get(i), paciente));
+            }
+        }
+        return altas;
+    }
+
+    private static Paciente convertir(String[] campos, Columnas columnas) {
+        if (campos.length != columnas.total) {
+            throw new IllegalArgumentException("Se esperaban " + columnas.total + " columnas y la fila tiene " + campos.length);
+        }
+        Paciente paciente = new Paciente();
+        paciente.setNombre(valor(campos, columnas.nombre));
+        paciente.setApellido(valor(campos, columnas.apellido));
+        paciente.setDni(valor(campos, columnas.dni));
+        String fecha = valor(campos, columnas.fechaNacimiento);
+        if (fecha != null) {
+            try {
+                paciente.setFechaNacimiento(LocalDate.parse(fecha));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Fecha de nacimiento inválida (usar AAAA-MM-DD): " + fecha);
+            }
+        }
+
+        String nro = valor(campos, columnas.nroHistoria);
+        if (nro != null) {
+            HistoriaClinica hc = new HistoriaClinica();
+            hc.setNroHistoria(nro);
+            String grupo = valor(campos, columnas.grupoSanguineo);
+            if (grupo != null) {
+                hc.setGrupoSanguineo(GrupoSanguineo.fromSimbolo(grupo));
+                if (hc.getGrupoSanguineo() == null) {
+                    throw new IllegalArgumentException("Grupo sanguíneo inválido: " + grupo);
+                }
+            }
+            hc.setAntecedentes(valor(campos, columnas.antecedentes));
+            hc.setMedaicacionActual(valor(campos, columnas.medicacionActual));
+            hc.setObservaciones(valor(campos, columnas.observaciones));
+            paciente.setHistoriaClinica(hc);
+        }
+        return paciente;
+    }
+
+    /** Valor de la columna sin espacios alrededor, o null si la columna no está o está vacía */
+    private static String valor(String[] campos, int columna) {
+        if (columna < 0) return null;
+        String valor = campos[columna].trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    /**
+     * Descarta los DNI y números de historia que ya están en la base e inserta el resto del lote
+     * en una sola transacción. Si falla por los datos, reintenta fila por fila.
+     */
+    private void insertar(List<Alta> altas, Informe informe) throws Exception {
+        List<String> dnis = new ArrayList<>(altas.size());
+        List<String> nros = new ArrayList<>(altas.size());
+        for (Alta alta : altas) {
+            dnis.add(alta.paciente.getDni());
+            HistoriaClinica hc = alta.paciente.getHistoriaClinica();
+            if (hc != null) nros.add(hc.getNroHistoria());
+        }
+        Set<String> dnisEnBase = pacienteService.dnisExistentes(dnis);
+        Set<String> nrosEnBase = nros.isEmpty() ? Set.of() : pacienteService.getHistoriaClinicaService().nrosHistoriaExistentes(nros);
+
+        List<Alta> nuevas = new ArrayList<>(altas.size());
+        for (Alta alta : altas) {
+            HistoriaClinica hc = alta.paciente.getHistoriaClinica();
+            if (dnisEnBase.contains(alta.paciente.getDni())) {
+                informe.rechazar(alta.fila, "Ya existe un paciente con el DNI: " + alta.paciente.getDni());
+            } else if (hc != null && nrosEnBase.contains(hc.getNroHistoria())) {
+                informe.rechazar(alta.fila, "Ya existe una historia clínica con el número: " + hc.getNroHistoria());
+            } else {
+                nuevas.add(alta);
+            }
+        }
+        if (nuevas.isEmpty()) return;
+
+        try {
+            pacienteService.insertarLote(nuevas.stream().map(a -> a.paciente).toList());
+            informe.importadas(nuevas.size());
+        } catch (Exception e) {
+            if (!SqlErrors.esErrorDeDatos(e)) throw e;
+            for (Alta alta : nuevas) insertarFila(alta, informe);
+        }
+    }
+
+    private void insertarFila(Alta alta, Informe informe) throws Exception {
+        try {
+            pacienteService.insertar(alta.paciente);
+            informe.importadas(1);
+        } catch (IllegalArgumentException e) {
+            informe.rechazar(alta.fila, e.getMessage());
+        } catch (Exception e) {
+            if (!SqlErrors.esErrorDeDatos(e)) throw e;
+            informe.rechazar(alta.fila, e.getMessage());
+        }
+    }
+
+    private static void esperar(Future<?> futuro) throws Exception {
+        if (futuro == null) return;
+        try {
+            futuro.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception causa) throw causa;
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    /**
+     * Contadores y archivo de rechazos (se crea con el primer rechazo).
+     * Lo usan el hilo que valida y el que inserta.
+     */
+    private static final class Informe implements AutoCloseable {
+        private final Path archivo;
+        private final String[] encabezado;
+        private BufferedWriter salida;
+        long importadas;
+        long rechazadas;
+
+        Informe(Path archivo, String[] encabezado) {
+            this.archivo = archivo;
+            this.encabezado = encabezado;
+        }
+
+        synchronized void importadas(int cantidad) {
+            importadas += cantidad;
+        }
+
+        synchronized void rechazar(Fila fila, String motivo) throws IOException {
+            rechazadas++;
+            if (salida == null) {
+                salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8);
+                escribir(-1, "motivo", encabezado);
+            }
+            escribir(fila.linea, motivo, fila.campos);
+        }
+
+        private void escribir(long linea, String motivo, String[] campos) throws IOException {
+            StringBuffer sb = new StringBuffer();
+            sb.append(linea < 0 ? "linea" : Long.toString(linea)).append(',');
+            RegistryExporter.campoCsv(sb, motivo);
+            for (String campo : campos) RegistryExporter.campoCsv(sb.append(','), campo);
+            salida.append(sb).append("\r\n");
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (salida != null) salida.close();
+        }
+    }
+
+    /**
+     * Lector de registros CSV (RFC 4180) sobre el archivo mapeado en memoria.
+     *
+     * Recorre los bytes de la ventana directamente: los separadores (coma, comillas, saltos
+     * de línea) son ASCII y nunca aparecen dentro de un carácter UTF-8 de varios bytes, así
+     * que solo se decodifica el texto de cada campo. Si un registro cruza el final de la
+     * ventana se vuelve a mapear desde el comienzo de ese registro.
+     */
+    static final class LectorCsv implements AutoCloseable {
+        private final FileChannel canal;
+        private final long tamanio;
+        private final int ventanaBytes;
+        private MappedByteBuffer ventana;
+        private long inicioVentana;
+
+        /** Posición en el archivo y línea del próximo registro */
+        private long posicion;
+        private long linea = 1;
+        /** Línea donde empieza el último registro leído */
+        private long lineaRegistro;
+
+        private final List<String> campos = new ArrayList<>();
+        private byte[] campo = new byte[256];
+        private int largo;
+
+        LectorCsv(Path archivo, int ventanaBytes) throws IOException {
+            this.canal = FileChannel.open(archivo, StandardOpenOption.READ);
+            this.tamanio = canal.size();
+            this.ventanaBytes = ventanaBytes;
+            if (tamanio >= 3) {
+                MappedByteBuffer inicio = canal.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+                // BOM de UTF-8 (lo agregan algunas planillas de cálculo)
+                if (inicio.get(0) == (byte) 0xEF && inicio.get(1) == (byte) 0xBB && inicio.get(2) == (byte) 0xBF) {
+                    posicion = 3;
+                }
+            }
+        }
+
+        /** @return El próximo registro, o null al llegar al final del archivo */
+        Fila siguiente() throws IOException {
+            if (posicion >= tamanio) return null;
+            if (ventana == null || posicion >= inicioVentana + ventana.limit()) mapear();
+            String[] registro = leerRegistro();
+            if (registro == null) {
+                // Cruza el final de la ventana: se mapea desde el comienzo del registro
+                if (inicioVentana == posicion) {
+                    throw new IOException("La fila de la línea " + linea + " supera el tamaño de ventana (" + ventanaBytes + " bytes)");
+                }
+                mapear();
+                registro = leerRegistro();
+                if (registro == null) {
+                    throw new IOException("La fila de la línea " + linea + " supera el tamaño de ventana (" + ventanaBytes + " bytes)");
+                }
+            }
+            return new Fila(lineaRegistro, registro);
+        }
+
+        private void mapear() throws IOException {
+            inicioVentana = posicion;
+            ventana = canal.map(FileChannel.MapMode.READ_ONLY, inicioVentana, Math.min(ventanaBytes, tamanio - inicioVentana));
+        }
+
+        /**
+         * Lee el registro que empieza en 'posicion' y avanza 'posicion' y 'linea'.
+         * @return Los campos, o null si la ventana termina antes que el registro
+         */
+        private String[] leerRegistro() throws IOException {
+            boolean finDeArchivo = inicioVentana + ventana.limit() == tamanio;
+            int fin = ventana.limit();
+            int i = (int) (posicion - inicioVentana);
+            long saltos = 0;
+            boolean entreComillas = false;
+            boolean citado = false;
+            campos.clear();
+            largo = 0;
+            while (true) {
+                if (i == fin) {
+                    if (!finDeArchivo) return null;
+                    if (entreComillas) throw new IOException("Comillas sin cerrar en la fila de la línea " + linea);
+                    campos.add(texto());
+                    break;
+                }
+                byte b = ventana.get(i++);
+                if (entreComillas) {
+                    if (b != '"') {
+                        if (b == '\n') saltos++;
+                        agregar(b);
+                    } else if (i < fin && ventana.get(i) == '"') {
+                        agregar(b);
+                        i++;
+                    } else if (i == fin && !finDeArchivo) {
+                        return null;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else if (b == '"' && largo == 0 && !citado) {
+                    entreComillas = true;
+                    citado = true;
+                } else if (b == ',') {
+                    campos.add(texto());
+                    citado = false;
+                } else if (b == '\n') {
+                    campos.add(texto());
+                    saltos++;
+                    break;
+                } else if (b != '\r') {
+                    agregar(b);
+                }
+            }
+            lineaRegistro = linea;
+            linea += saltos;
+            posicion = inicioVentana + i;
+            return campos.toArray(new String[0]);
+        }
+
+        private void agregar(byte b) {
+            if (largo == campo.length) campo = Arrays.copyOf(campo, largo * 2);
+            campo[largo++] = b;
+        }
+
+        private String texto() {
+            String s = new String(campo, 0, largo, StandardCharsets.UTF_8);
+            largo = 0;
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Métricas de las operaciones de una clase (por ejemplo "PacienteDAO").
+ * Cada operación se registra como "PacienteDAO.getById".
+ *
+ * Uso típico, con un grupo estático por clase:
+ * <pre>
+ * private static final MetricsGroup METRICAS = MetricsRegistry.grupo("PacienteDAO");
+ * ...
+ * return METRICAS.medir("getById", () -> { ... });
+ * </pre>
+ */
+public final class MetricsGroup {
+
+    private final String prefijo;
+    private final ConcurrentHashMap<String, OperationMetrics> operaciones = new ConcurrentHashMap<>();
+
+    MetricsGroup(String prefijo) {
+        this.prefijo = prefijo;
+    }
+
+    public <T> T medir(String operacion, OperationMetrics.Medicion<T> medicion) throws Exception {
+        return operacion(operacion).medir(medicion);
+    }
+
+    public void medir(String operacion, OperationMetrics.Accion accion) throws Exception {
+        operacion(operacion).medir(accion);
+    }
+
+    public OperationMetrics operacion(String operacion) {
+        OperationMetrics m = operaciones.get(operacion);
+        if (m != null) return m;
+        return operaciones.computeIfAbsent(operacion, op -> MetricsRegistry.operacion(prefijo + "." + op));
+    }
+}
@@ -0,0 +1,176 @@
+package Metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro global de métricas de la aplicación.
+ *
+ * Contenido:
+ * - Operaciones de DAO y Service (cantidad, errores, percentiles de latencia)
+ * - Contadores (filas mapeadas por entidad)
+ * - Gauges leídos al momento de exportar (estado del pool de conexiones)
+ *
+ * Exportación:
+ * - JMX: cada operación es un MBean "Clinica:type=Operacion,name=..." (jconsole, VisualVM)
+ * - Texto en formato Prometheus con {@link #prometheus()} (endpoint /metrics de HttpServerApp)
+ *
+ * Configuración:
+ * - -Dmetrics.enabled=false desactiva la medición (medir() solo ejecuta la operación)
+ * - -Dmetrics.jmx=false no registra los MBeans
+ */
+public final class MetricsRegistry {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+    private static final boolean JMX = Boolean.parseBoolean(System.getProperty("metrics.jmx", "true"));
+    private static final double[] CUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final ConcurrentHashMap<String, OperationMetrics> OPERACIONES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> FILAS_MAPEADAS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static MetricsGroup grupo(String prefijo) {
+        return new MetricsGroup(prefijo);
+    }
+
+    /**
+     * Devuelve (creando y registrando en JMX si hace falta) las métricas de una operación.
+     */
+    public static OperationMetrics operacion(String nombre) {
+        OperationMetrics m = OPERACIONES.get(nombre);
+        if (m != null) return m;
+        return OPERACIONES.computeIfAbsent(nombre, n -> {
+            OperationMetrics nueva = new OperationMetrics(n);
+            if (JMX) registrarMBean(nueva);
+            return nueva;
+        });
+    }
+
+    /**
+     * Contador de filas leídas de la base y convertidas en entidades.
+     * El caller guarda el LongAdder para no buscarlo en cada fila.
+     */
+    public static LongAdder contadorFilas(String entidad) {
+        return FILAS_MAPEADAS.computeIfAbsent(entidad, e -> new LongAdder());
+    }
+
+    public static long getFilasMapeadas(String entidad) {
+        LongAdder contador = FILAS_MAPEADAS.get(entidad);
+        return contador == null ? 0 : contador.sum();
+    }
+
+    /**
+     * Registra un valor que se lee en cada exportación (reemplaza uno anterior con el mismo nombre).
+     *
+     * @param nombre Nombre Prometheus, por ejemplo "clinica_pool_conexiones_activas"
+     * @param ayuda Descripción corta
+     */
+    public static void registrarGauge(String nombre, String ayuda, LongSupplier valor) {
+        GAUGES.put(nombre, new Gauge(ayuda, valor));
+    }
+
+    /**
+     * Operaciones registradas, ordenadas por nombre.
+     */
+    public static Map<String, OperationMetrics> operaciones() {
+        return new TreeMap<>(OPERACIONES);
+    }
+
+    /**
+     * Vuelve a cero todas las operaciones y contadores.
+     */
+    public static void reset() {
+        OPERACIONES.values().forEach(OperationMetrics::reset);
+        FILAS_MAPEADAS.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * Exporta todas las métricas en formato de texto de Prometheus (version 0.0.4).
+     * Las latencias se expresan en segundos, como pide la convención de Prometheus.
+     */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        Map<String, OperationMetrics> ops = operaciones();
+
+        sb.append("# HELP clinica_operacion_segundos Latencia de operaciones de DAO y Service\n");
+        sb.append("# TYPE clinica_operacion_segundos summary\n");
+        for (OperationMetrics m : ops.values()) {
+            String op = etiqueta(m.getNombre());
+            LatencyHistogram h = m.getLatencias();
+            for (double q : CUANTILES) {
+                sb.append("clinica_operacion_segundos{operacion=\"").append(op)
+                        .append("\",quantile=\"").append(q).append("\"} ")
+                        .append(segundos(h.getPercentile(q * 100))).append('\n');
+            }
+            sb.append("clinica_operacion_segundos_sum{operacion=\"").append(op).append("\"} ")
+                    .append(segundos(h.getSum())).append('\n');
+            sb.append("clinica_operacion_segundos_count{operacion=\"").append(op).append("\"} ")
+                    .append(h.getCount()).append('\n');
+        }
+
+        sb.append("# HELP clinica_operacion_errores_total Operaciones terminadas con excepción\n");
+        sb.append("# TYPE clinica_operacion_errores_total counter\n");
+        for (OperationMetrics m : ops.values()) {
+            sb.append("clinica_operacion_errores_total{operacion=\"").append(etiqueta(m.getNombre())).append("\"} ")
+                    .append(m.getErrors()).append('\n');
+        }
+
+        sb.append("# HELP clinica_filas_mapeadas_total Filas convertidas en entidades\n");
+        sb.append("# TYPE clinica_filas_mapeadas_total counter\n");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(FILAS_MAPEADAS).entrySet()) {
+            sb.append("clinica_filas_mapeadas_total{entidad=\"").append(etiqueta(e.getKey())).append("\"} ")
+                    .append(e.getValue().sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Gauge> e : new TreeMap<>(GAUGES).entrySet()) {
+            sb.append("# HELP ").append(e.getKey()).append(' ').append(e.getValue().ayuda).append('\n');
+            sb.append("# TYPE ").append(e.getKey()).append(" gauge\n");
+            sb.append(e.getKey()).append(' ').append(e.getValue().valor.getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /* helpers */
+
+    private static void registrarMBean(OperationMetrics m) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName("Clinica:type=Operacion,name=" + ObjectName.quote(m.getNombre()));
+            if (!server.isRegistered(nombre)) server.registerMBean(m, nombre);
+        } catch (JMException e) {
+            System.err.println("No se pudo registrar el MBean de " + m.getNombre() + ": " + e.getMessage());
+        }
+    }
+
+    private static String segundos(long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+
+    private static String etiqueta(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Gauge {
+        private final String ayuda;
+        private final LongSupplier valor;
+
+        private Gauge(String ayuda, LongSupplier valor) {
+            this.ayuda = ayuda;
+            this.valor = valor;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de una operación de DAO o Service: cantidad de llamadas, errores y
+ * distribución de latencias.
+ *
+ * Uso:
+ * <pre>
+ * return operacion.medir(() -> dao.getById(id));
+ * </pre>
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+    /** Operación medida que devuelve un valor */
+    @FunctionalInterface
+    public interface Medicion<T> {
+        T ejecutar() throws Exception;
+    }
+
+    /** Operación medida sin valor de retorno */
+    @FunctionalInterface
+    public interface Accion {
+        void ejecutar() throws Exception;
+    }
+
+    private static final double NANOS_POR_MS = 1_000_000.0;
+
+    private final String nombre;
+    private final LatencyHistogram latencias = new LatencyHistogram();
+    private final LongAdder errores = new LongAdder();
+
+    OperationMetrics(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Ejecuta la operación registrando su latencia (y el error, si lanza una excepción).
+     */
+    public <T> T medir(Medicion<T> operacion) throws Exception {
+        if (!MetricsRegistry.isEnabled()) return operacion.ejecutar();
+        long inicio = System.nanoTime();
+        try {
+            return operacion.ejecutar();
+        } catch (Exception | Error e) {
+            errores.increment();
+            throw e;
+        } finally {
+            latencias.record(System.nanoTime() - inicio);
+        }
+    }
+
+    public void medir(Accion operacion) throws Exception {
+        medir(() -> {
+            operacion.ejecutar();
+            return null;
+        });
+    }
+
+    /**
+     * Registra una medición tomada por fuera de medir() (por ejemplo en código que no lanza Exception).
+     */
+    public void registrar(long nanos, boolean error) {
+        if (!MetricsRegistry.isEnabled()) return;
+        latencias.record(nanos);
+        if (error) errores.increment();
+    }
+
+    public LatencyHistogram getLatencias() {
+        return latencias;
+    }
+
+    @Override
+    public String getNombre() {
+        return nombre;
+    }
+
+    @Override
+    public long getCount() {
+        return latencias.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errores.sum();
+    }
+
+    @Override
+    public double getMeanMs() {
+        return latencias.getMean() / NANOS_POR_MS;
+    }
+
+    @Override
+    public double getP50Ms() {
+        return latencias.getPercentile(50) / NANOS_POR_MS;
+    }
+
+    @Override
+    public double getP90Ms() {
+        return latencias.getPercentile(90) / NANOS_POR_MS;
+    }
+
+    @Override
+    public double getP99Ms() {
+        return latencias.getPercentile(99) / NANOS_POR_MS;
+    }
+
+    @Override
+    public double getP999Ms() {
+        return latencias.getPercentile(99.9) / NANOS_POR_MS;
+    }
+
+    @Override
+    public double getMaxMs() {
+        return latencias.getMax() / NANOS_POR_MS;
+    }
+
+    @Override
+    public void reset() {
+        latencias.reset();
+        errores.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[n=%d, errores=%d, p50=%.3fms, p99=%.3fms, max=%.3fms]",
+                nombre, getCount(), getErrors(), getP50Ms(), getP99Ms(), getMaxMs());
+    }
+}
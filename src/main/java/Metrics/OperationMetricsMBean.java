@@ -0,0 +1,27 @@
+package Metrics;
+
+/**
+ * Vista JMX de una operación (jconsole / VisualVM: dominio "Clinica", type=Operacion).
+ * Las latencias se informan en milisegundos.
+ */
+public interface OperationMetricsMBean {
+    String getNombre();
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMs();
+
+    double getP50Ms();
+
+    double getP90Ms();
+
+    double getP99Ms();
+
+    double getP999Ms();
+
+    double getMaxMs();
+
+    void reset();
+}
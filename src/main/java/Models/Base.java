@@ -29,6 +29,13 @@ public abstract class Base {
      */
     private boolean eliminado;
 
+    /**
+     * Versión de la fila para el control de concurrencia optimista.
+     * La base la incrementa en cada actualización; los DAOs solo actualizan si la
+     * versión guardada sigue siendo la que se leyó (0 en entidades nuevas).
+     */
+    private long version;
+
     /**
      * Constructor completo con todos los campos.
      * Usado por los DAOs al reconstruir entidades desde la base de datos.
@@ -86,6 +93,24 @@ public abstract class Base {
         this.eliminado = eliminado;
     }
 
+    /**
+     * Obtiene la versión con la que se leyó la entidad.
+     * @return Versión de la fila, 0 si la entidad es nueva
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Establece la versión de la entidad.
+     * Típicamente llamado por el DAO al leer la fila o después de actualizarla.
+     *
+     * @param version Versión de la fila
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Dos entidades se consideran iguales si son del mismo tipo y tienen el mismo ID.
      * Si el ID aún no fue asignado (id == 0), se delega la comparación a la subclase.
@@ -0,0 +1,60 @@
+package Models;
+
+import java.time.Instant;
+
+/**
+ * Registro de un cambio sobre un paciente o una historia clínica (tabla auditoria_cambio).
+ *
+ * No extiende Base: las entradas de auditoría no se modifican ni se eliminan.
+ * La secuencia la asigna el journal y es única dentro de su segmento.
+ */
+public class CambioAuditoria {
+
+    private final long secuencia;
+    private final String entidad;
+    private final int entidadId;
+    private final String operacion;
+    private final Instant fecha;
+    private final String detalle;
+
+    public CambioAuditoria(long secuencia, String entidad, int entidadId, String operacion, Instant fecha, String detalle) {
+        this.secuencia = secuencia;
+        this.entidad = entidad;
+        this.entidadId = entidadId;
+        this.operacion = operacion;
+        this.fecha = fecha;
+        this.detalle = detalle;
+    }
+
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    /** "Paciente" o "HistoriaClinica" */
+    public String getEntidad() {
+        return entidad;
+    }
+
+    public int getEntidadId() {
+        return entidadId;
+    }
+
+    /** ALTA, MODIFICACION o BAJA */
+    public String getOperacion() {
+        return operacion;
+    }
+
+    public Instant getFecha() {
+        return fecha;
+    }
+
+    /** Estado de la entidad después del cambio (null en las bajas) */
+    public String getDetalle() {
+        return detalle;
+    }
+
+    @Override
+    public String toString() {
+        return "Cambio [#" + secuencia + " " + operacion + " " + entidad + " " + entidadId + " " + fecha + "]";
+    }
+}
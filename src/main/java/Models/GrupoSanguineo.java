@@ -1,9 +1,21 @@
 package Models;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum GrupoSanguineo {
     A_POSITIVO("A+"), A_NEGATIVO("A-"), B_POSITIVO("B+"), B_NEGATIVO("B-"),
     AB_POSITIVO("AB+"), AB_NEGATIVO("AB-"), O_POSITIVO("O+"), O_NEGATIVO("O-");
 
+    /** Símbolo → grupo, armado una sola vez (values() crea un arreglo nuevo en cada llamada) */
+    private static final Map<String, GrupoSanguineo> POR_SIMBOLO = new HashMap<>();
+
+    static {
+        for (GrupoSanguineo g : values()) {
+            POR_SIMBOLO.put(g.simbolo, g);
+        }
+    }
+
     private final String simbolo;
 
     private GrupoSanguineo(String simbolo) {
@@ -13,4 +25,14 @@ public enum GrupoSanguineo {
     public String getSimbolo() {
         return simbolo;
     }
+
+    /**
+     * Busca el grupo por su símbolo ("A+", "ab-"), sin distinguir mayúsculas.
+     * @return El grupo, o null si el símbolo es null o no existe
+     */
+    public static GrupoSanguineo fromSimbolo(String simbolo) {
+        if (simbolo == null) return null;
+        GrupoSanguineo g = POR_SIMBOLO.get(simbolo);
+        return g != null ? g : POR_SIMBOLO.get(simbolo.toUpperCase());
+    }
 }
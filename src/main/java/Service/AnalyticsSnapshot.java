@@ -0,0 +1,561 @@
+package Service;
+
+import Config.DatabaseConnection;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Copia en memoria, por columnas, de pacientes e historias clínicas para estadísticas.
+ *
+ * En lugar de objetos Paciente con Strings se guardan arreglos primitivos paralelos
+ * (unos 9 bytes por paciente y 10 por historia):
+ * - Pacientes: id (int), fecha de nacimiento en días desde 1970 (int), activo
+ * - Historias: id (int), grupo sanguíneo (byte, ordinal o -1), medicación actual
+ *   codificada con un diccionario (int, 0 = sin medicación), activa
+ *
+ * Actualización incremental:
+ * - Las filas nuevas se leen por marca de agua: getPagina(último id cargado, LOTE)
+ * - Las modificaciones y bajas las marcan PacienteServiceImpl e HistoriaClinicaServiceImpl
+ *   después del commit; en la próxima actualización se releen solo esos IDs (getByIds).
+ *   También cubre los IDs confirmados fuera de orden, por debajo de la marca de agua
+ * - getByIds puede leer de una réplica atrasada (o de la caché cargada desde ella), así que
+ *   cada ID se vuelve a marcar cuando pasa el atraso máximo tolerado de las réplicas
+ *   (DatabaseConnection.despuesDelRetrasoDeReplicas, como las cachés de los DAOs)
+ * - Las consultas actualizan la copia si tiene más de -Danalytics.maxAgeMs (por defecto 1000)
+ *
+ * Limitaciones (recargar() arma la copia desde cero):
+ * - Las modificaciones y bajas hechas por otras instancias de la aplicación no se ven
+ * - Una fila nueva de otra instancia con un ID menor que la marca de agua (confirmada después
+ *   de otra con un ID mayor, que ya se leyó) no se carga: la marca de agua ya la pasó
+ *
+ * Las agregaciones recorren los arreglos en bloques en paralelo (ForkJoinPool común),
+ * cada bloque con sus propios contadores, y suman los parciales al final.
+ *
+ * Concurrencia: ReentrantReadWriteLock; las consultas comparten el lock de lectura y las
+ * actualizaciones aplican cada lote con el de escritura (la lectura de la base va sin lock).
+ */
+public final class AnalyticsSnapshot {
+
+    @FunctionalInterface
+    public interface Pagina<T> {
+        List<T> leer(int despuesDeId, int limite) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface PorIds<T> {
+        Map<Integer, T> leer(Collection<Integer> ids) throws Exception;
+    }
+
+    /** Devuelve la cubeta de una fila, o -1 si la fila no cuenta */
+    @FunctionalInterface
+    private interface Clasificador {
+        int cubeta(int fila);
+    }
+
+    /** Máximo de medicaciones en medicacionesMasFrecuentes */
+    public static final int MAX_RESULTADOS = 100;
+
+    /** Antigüedad máxima de la copia antes de una consulta. Configurable via -Danalytics.maxAgeMs */
+    private static final long MAX_ANTIGUEDAD_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("analytics.maxAgeMs", 1_000L));
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("AnalyticsSnapshot");
+
+    /** Filas por lectura a la base (GenericService.MAX_PAGINA) */
+    private static final int LOTE = GenericService.MAX_PAGINA;
+
+    /** Filas por bloque de las agregaciones en paralelo */
+    private static final int BLOQUE = 1 << 16;
+
+    /** Las franjas etarias se cierran en la primera que empieza en esta edad o después ("90+") */
+    private static final int EDAD_ULTIMA_FRANJA = 90;
+
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+    private static final byte SIN_GRUPO = -1;
+    private static final GrupoSanguineo[] GRUPOS = GrupoSanguineo.values();
+
+    private final Pagina<Paciente> paginaPacientes;
+    private final PorIds<Paciente> pacientesPorId;
+    private final Pagina<HistoriaClinica> paginaHistorias;
+    private final PorIds<HistoriaClinica> historiasPorId;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock actualizando = new ReentrantLock();
+
+    /* Pacientes, ordenados por id */
+    private int pacientes;
+    private int[] pacienteId = new int[1024];
+    private int[] nacimiento = new int[1024];
+    private boolean[] pacienteActivo = new boolean[1024];
+
+    /* Historias, ordenadas por id */
+    private int historias;
+    private int[] historiaId = new int[1024];
+    private byte[] grupo = new byte[1024];
+    private int[] medicacion = new int[1024];
+    private boolean[] historiaActiva = new boolean[1024];
+
+    /** Medicaciones distintas (código 0 = sin medicación) */
+    private final Map<String, Integer> codigoMedicacion = new HashMap<>();
+    private final List<String> medicaciones = new ArrayList<>(List.of(""));
+
+    /* Solo los modifica el hilo que tiene 'actualizando' */
+    private int marcaPacientes;
+    private int marcaHistorias;
+    private volatile long ultimaActualizacion;
+    private volatile boolean enUso;
+
+    private final Set<Integer> pacientesCambiados = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> historiasCambiadas = ConcurrentHashMap.newKeySet();
+
+    public AnalyticsSnapshot(Pagina<Paciente> paginaPacientes, PorIds<Paciente> pacientesPorId,
+                             Pagina<HistoriaClinica> paginaHistorias, PorIds<HistoriaClinica> historiasPorId) {
+        this.paginaPacientes = paginaPacientes;
+        this.pacientesPorId = pacientesPorId;
+        this.paginaHistorias = paginaHistorias;
+        this.historiasPorId = historiasPorId;
+    }
+
+    // =====================================
+    //  Actualización
+    // =====================================
+
+    /**
+     * Lee las filas nuevas y relee las marcadas como modificadas.
+     */
+    public void actualizar() throws Exception {
+        METRICAS.medir("actualizar", () -> {
+            actualizando.lock();
+            try {
+                enUso = true;
+                long inicio = System.nanoTime();
+                cargarPacientes();
+                cargarHistorias();
+                ultimaActualizacion = inicio;
+            } finally {
+                actualizando.unlock();
+            }
+        });
+    }
+
+    /**
+     * Descarta la copia y la vuelve a armar desde la base.
+     */
+    public void recargar() throws Exception {
+        actualizando.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                pacientes = 0;
+                historias = 0;
+                codigoMedicacion.clear();
+                medicaciones.subList(1, medicaciones.size()).clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            marcaPacientes = 0;
+            marcaHistorias = 0;
+            pacientesCambiados.clear();
+            historiasCambiadas.clear();
+            actualizar();
+        } finally {
+            actualizando.unlock();
+        }
+    }
+
+    /** Un paciente cambió (alta, modificación o baja confirmada) */
+    public void marcarPaciente(int id) {
+        if (!enUso) return;
+        pacientesCambiados.add(id);
+        DatabaseConnection.despuesDelRetrasoDeReplicas(() -> pacientesCambiados.add(id));
+    }
+
+    /** Una historia clínica cambió (alta, modificación o baja confirmada) */
+    public void marcarHistoria(int id) {
+        if (!enUso) return;
+        historiasCambiadas.add(id);
+        DatabaseConnection.despuesDelRetrasoDeReplicas(() -> historiasCambiadas.add(id));
+    }
+
+    // =====================================
+    //  Agregaciones
+    // =====================================
+
+    /**
+     * Historias activas por grupo sanguíneo, en el orden del enum, más "Sin dato".
+     */
+    public Map<String, Long> contarPorGrupoSanguineo() throws Exception {
+        return METRICAS.medir("contarPorGrupoSanguineo", () -> {
+            actualizarSiVencida();
+            long[] cuentas;
+            lock.readLock().lock();
+            try {
+                boolean[] activa = historiaActiva;
+                byte[] grupos = grupo;
+                int sinDato = GRUPOS.length;
+                cuentas = contar(historias, GRUPOS.length + 1,
+                        i -> !activa[i] ? -1 : grupos[i] == SIN_GRUPO ? sinDato : grupos[i]);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Map<String, Long> resultado = new LinkedHashMap<>();
+            for (GrupoSanguineo g : GRUPOS) resultado.put(g.getSimbolo(), cuentas[g.ordinal()]);
+            resultado.put("Sin dato", cuentas[GRUPOS.length]);
+            return resultado;
+        });
+    }
+
+    /**
+     * Pacientes activos por franja etaria al día de hoy.
+     */
+    public Map<String, Long> contarPorFranjaEtaria(int anchoAnios) throws Exception {
+        return contarPorFranjaEtaria(anchoAnios, LocalDate.now());
+    }
+
+    /**
+     * Pacientes activos por franja etaria ("0-9", "10-19", ..., "90+") más "Sin fecha".
+     *
+     * Para cada edad de corte se calcula una sola vez la fecha de nacimiento límite;
+     * así cada fila se clasifica comparando enteros, sin armar fechas.
+     *
+     * @param anchoAnios Años por franja (1 a 90)
+     * @param referencia Fecha a la que se calculan las edades
+     */
+    public Map<String, Long> contarPorFranjaEtaria(int anchoAnios, LocalDate referencia) throws Exception {
+        return METRICAS.medir("contarPorFranjaEtaria", () -> {
+            if (anchoAnios <= 0 || anchoAnios > EDAD_ULTIMA_FRANJA) {
+                throw new IllegalArgumentException("El ancho de la franja debe estar entre 1 y " + EDAD_ULTIMA_FRANJA + " años");
+            }
+            if (referencia == null) {
+                throw new IllegalArgumentException("La fecha de referencia no puede ser null");
+            }
+            int franjas = (EDAD_ULTIMA_FRANJA + anchoAnios - 1) / anchoAnios + 1;
+            // limites[k]: nacidos ese día o antes tienen al menos k * anchoAnios años
+            int[] limites = new int[franjas];
+            limites[0] = Integer.MAX_VALUE;
+            for (int k = 1; k < franjas; k++) {
+                limites[k] = (int) referencia.minusYears((long) k * anchoAnios).toEpochDay();
+            }
+            int sinFecha = franjas;
+
+            actualizarSiVencida();
+            long[] cuentas;
+            lock.readLock().lock();
+            try {
+                boolean[] activo = pacienteActivo;
+                int[] dias = nacimiento;
+                cuentas = contar(pacientes, franjas + 1, i -> {
+                    if (!activo[i]) return -1;
+                    int d = dias[i];
+                    if (d == SIN_FECHA) return sinFecha;
+                    int k = 1;
+                    while (k < franjas && d <= limites[k]) k++;
+                    return k - 1;
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Map<String, Long> resultado = new LinkedHashMap<>();
+            for (int k = 0; k < franjas; k++) {
+                int desde = k * anchoAnios;
+                String etiqueta = k == franjas - 1 ? desde + "+" : desde + "-" + (desde + anchoAnios - 1);
+                resultado.put(etiqueta, cuentas[k]);
+            }
+            resultado.put("Sin fecha", cuentas[sinFecha]);
+            return resultado;
+        });
+    }
+
+    /**
+     * Historias activas sin medicación actual (vacía o null).
+     */
+    public long contarHistoriasSinMedicacion() throws Exception {
+        return METRICAS.medir("contarHistoriasSinMedicacion", () -> {
+            actualizarSiVencida();
+            lock.readLock().lock();
+            try {
+                boolean[] activa = historiaActiva;
+                int[] codigos = medicacion;
+                return contar(historias, 1, i -> activa[i] && codigos[i] == 0 ? 0 : -1)[0];
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Medicaciones actuales más frecuentes entre las historias activas.
+     *
+     * @param limite Cantidad máxima de medicaciones (1 a MAX_RESULTADOS)
+     * @return Medicación → historias, de mayor a menor
+     */
+    public Map<String, Long> medicacionesMasFrecuentes(int limite) throws Exception {
+        return METRICAS.medir("medicacionesMasFrecuentes", () -> {
+            if (limite <= 0 || limite > MAX_RESULTADOS) {
+                throw new IllegalArgumentException("La cantidad de resultados debe estar entre 1 y " + MAX_RESULTADOS);
+            }
+            actualizarSiVencida();
+            long[] cuentas;
+            String[] valores;
+            lock.readLock().lock();
+            try {
+                boolean[] activa = historiaActiva;
+                int[] codigos = medicacion;
+                valores = medicaciones.toArray(new String[0]);
+                cuentas = contar(historias, valores.length, i -> activa[i] && codigos[i] != 0 ? codigos[i] : -1);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Integer[] orden = new Integer[valores.length - 1];
+            for (int i = 0; i < orden.length; i++) orden[i] = i + 1;
+            Arrays.sort(orden, (a, b) -> Long.compare(cuentas[b], cuentas[a]));
+            Map<String, Long> resultado = new LinkedHashMap<>();
+            for (int i = 0; i < orden.length && resultado.size() < limite && cuentas[orden[i]] > 0; i++) {
+                resultado.put(valores[orden[i]], cuentas[orden[i]]);
+            }
+            return resultado;
+        });
+    }
+
+    /** Pacientes activos en la copia (sin actualizarla) */
+    public long getPacientesActivos() {
+        lock.readLock().lock();
+        try {
+            boolean[] activo = pacienteActivo;
+            return contar(pacientes, 1, i -> activo[i] ? 0 : -1)[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Historias activas en la copia (sin actualizarla) */
+    public long getHistoriasActivas() {
+        lock.readLock().lock();
+        try {
+            boolean[] activa = historiaActiva;
+            return contar(historias, 1, i -> activa[i] ? 0 : -1)[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Memoria aproximada de los arreglos (capacidad reservada, sin el diccionario) */
+    public long getBytesColumnas() {
+        lock.readLock().lock();
+        try {
+            return (long) pacienteId.length * (4 + 4 + 1)
+                    + (long) historiaId.length * (4 + 1 + 4 + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            return "AnalyticsSnapshot[pacientes=" + pacientes + ", historias=" + historias
+                    + ", medicaciones=" + (medicaciones.size() - 1) + ", columnas=" + getBytesColumnas() / 1024 + " KB]";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* helpers */
+
+    private void actualizarSiVencida() throws Exception {
+        if (enUso && System.nanoTime() - ultimaActualizacion < MAX_ANTIGUEDAD_NANOS) return;
+        actualizando.lock();
+        try {
+            // otro hilo pudo actualizarla mientras se esperaba el lock
+            if (enUso && System.nanoTime() - ultimaActualizacion < MAX_ANTIGUEDAD_NANOS) return;
+            actualizar();
+        } finally {
+            actualizando.unlock();
+        }
+    }
+
+    private void cargarPacientes() throws Exception {
+        while (true) {
+            List<Paciente> pagina = paginaPacientes.leer(marcaPacientes, LOTE);
+            if (pagina.isEmpty()) break;
+            lock.writeLock().lock();
+            try {
+                for (Paciente p : pagina) guardarPaciente(p);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            marcaPacientes = Math.max(marcaPacientes, pagina.get(pagina.size() - 1).getId());
+            if (pagina.size() < LOTE) break;
+        }
+        for (List<Integer> ids : drenar(pacientesCambiados)) {
+            Map<Integer, Paciente> leidos = pacientesPorId.leer(ids);
+            lock.writeLock().lock();
+            try {
+                for (int id : ids) {
+                    Paciente p = leidos.get(id);
+                    if (p != null && !p.isEliminado()) guardarPaciente(p);
+                    else darDeBaja(id, pacienteId, pacienteActivo, pacientes);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void cargarHistorias() throws Exception {
+        while (true) {
+            List<HistoriaClinica> pagina = paginaHistorias.leer(marcaHistorias, LOTE);
+            if (pagina.isEmpty()) break;
+            lock.writeLock().lock();
+            try {
+                for (HistoriaClinica hc : pagina) guardarHistoria(hc);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            marcaHistorias = Math.max(marcaHistorias, pagina.get(pagina.size() - 1).getId());
+            if (pagina.size() < LOTE) break;
+        }
+        for (List<Integer> ids : drenar(historiasCambiadas)) {
+            Map<Integer, HistoriaClinica> leidas = historiasPorId.leer(ids);
+            lock.writeLock().lock();
+            try {
+                for (int id : ids) {
+                    HistoriaClinica hc = leidas.get(id);
+                    if (hc != null && !hc.isEliminado()) guardarHistoria(hc);
+                    else darDeBaja(id, historiaId, historiaActiva, historias);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** Vacía el conjunto de IDs cambiados y lo devuelve en lotes de LOTE */
+    private static List<List<Integer>> drenar(Set<Integer> cambiados) {
+        List<List<Integer>> lotes = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+        for (Integer id : cambiados) {
+            if (!cambiados.remove(id)) continue;
+            actual.add(id);
+            if (actual.size() == LOTE) {
+                lotes.add(actual);
+                actual = new ArrayList<>();
+            }
+        }
+        if (!actual.isEmpty()) lotes.add(actual);
+        return lotes;
+    }
+
+    /** Con el lock de escritura: agrega o reemplaza la fila del paciente */
+    private void guardarPaciente(Paciente p) {
+        int fila = Arrays.binarySearch(pacienteId, 0, pacientes, p.getId());
+        if (fila < 0) {
+            fila = -fila - 1;
+            if (pacientes == pacienteId.length) {
+                int capacidad = pacienteId.length * 2;
+                pacienteId = Arrays.copyOf(pacienteId, capacidad);
+                nacimiento = Arrays.copyOf(nacimiento, capacidad);
+                pacienteActivo = Arrays.copyOf(pacienteActivo, capacidad);
+            }
+            // las filas nuevas llegan en orden; solo un ID confirmado fuera de orden desplaza filas
+            int mover = pacientes - fila;
+            if (mover > 0) {
+                System.arraycopy(pacienteId, fila, pacienteId, fila + 1, mover);
+                System.arraycopy(nacimiento, fila, nacimiento, fila + 1, mover);
+                System.arraycopy(pacienteActivo, fila, pacienteActivo, fila + 1, mover);
+            }
+            pacientes++;
+        }
+        pacienteId[fila] = p.getId();
+        nacimiento[fila] = p.getFechaNacimiento() != null ? (int) p.getFechaNacimiento().toEpochDay() : SIN_FECHA;
+        pacienteActivo[fila] = true;
+    }
+
+    /** Con el lock de escritura: agrega o reemplaza la fila de la historia */
+    private void guardarHistoria(HistoriaClinica hc) {
+        int fila = Arrays.binarySearch(historiaId, 0, historias, hc.getId());
+        if (fila < 0) {
+            fila = -fila - 1;
+            if (historias == historiaId.length) {
+                int capacidad = historiaId.length * 2;
+                historiaId = Arrays.copyOf(historiaId, capacidad);
+                grupo = Arrays.copyOf(grupo, capacidad);
+                medicacion = Arrays.copyOf(medicacion, capacidad);
+                historiaActiva = Arrays.copyOf(historiaActiva, capacidad);
+            }
+            int mover = historias - fila;
+            if (mover > 0) {
+                System.arraycopy(historiaId, fila, historiaId, fila + 1, mover);
+                System.arraycopy(grupo, fila, grupo, fila + 1, mover);
+                System.arraycopy(medicacion, fila, medicacion, fila + 1, mover);
+                System.arraycopy(historiaActiva, fila, historiaActiva, fila + 1, mover);
+            }
+            historias++;
+        }
+        historiaId[fila] = hc.getId();
+        grupo[fila] = hc.getGrupoSanguineo() != null ? (byte) hc.getGrupoSanguineo().ordinal() : SIN_GRUPO;
+        medicacion[fila] = codificarMedicacion(hc.getMedaicacionActual());
+        historiaActiva[fila] = true;
+    }
+
+    private static void darDeBaja(int id, int[] ids, boolean[] activos, int filas) {
+        int fila = Arrays.binarySearch(ids, 0, filas, id);
+        if (fila >= 0) activos[fila] = false;
+    }
+
+    /** Código de diccionario de la medicación (0 si está vacía) */
+    private int codificarMedicacion(String texto) {
+        if (texto == null || texto.isBlank()) return 0;
+        String valor = texto.trim();
+        Integer codigo = codigoMedicacion.get(valor);
+        if (codigo == null) {
+            codigo = medicaciones.size();
+            medicaciones.add(valor);
+            codigoMedicacion.put(valor, codigo);
+        }
+        return codigo;
+    }
+
+    /**
+     * Cuenta las filas [0, filas) por cubeta, en bloques de BLOQUE filas procesados en paralelo.
+     */
+    private static long[] contar(int filas, int cubetas, Clasificador clasificador) {
+        int bloques = (filas + BLOQUE - 1) / BLOQUE;
+        return IntStream.range(0, bloques).parallel()
+                .mapToObj(b -> {
+                    long[] parcial = new long[cubetas];
+                    int fin = Math.min(filas, (b + 1) * BLOQUE);
+                    for (int i = b * BLOQUE; i < fin; i++) {
+                        int cubeta = clasificador.cubeta(i);
+                        if (cubeta >= 0) parcial[cubeta]++;
+                    }
+                    return parcial;
+                })
+                .reduce(new long[cubetas], (a, b) -> {
+                    long[] suma = new long[cubetas];
+                    for (int i = 0; i < cubetas; i++) suma[i] = a[i] + b[i];
+                    return suma;
+                });
+    }
+}
@@ -0,0 +1,224 @@
+package Service;
+
+import Config.ConnectionPool;
+import Config.DatabaseConnection;
+import Config.ReplicaRouter;
+import Config.TransactionScope;
+import Metrics.MetricsRegistry;
+import Models.HistoriaClinica;
+import Models.Paciente;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fachada asíncrona de PacienteServiceImpl y HistoriaClinicaServiceImpl.
+ *
+ * Cada método devuelve un CompletableFuture, así las búsquedas independientes
+ * se superponen en lugar de sumar sus latencias:
+ * <pre>
+ * CompletableFuture&lt;Paciente&gt; p = async.buscarPacientePorDni(dni);
+ * CompletableFuture&lt;HistoriaClinica&gt; hc = async.buscarHistoriaPorNro(nro);
+ * p.thenCombine(hc, (paciente, historia) -> ...).join();
+ * </pre>
+ *
+ * Executor dedicado y acotado:
+ * - Tantos hilos como conexiones tiene el pool (más hilos solo esperarían una conexión)
+ * - Cola de tamaño fijo; con la cola llena la tarea corre en el hilo que la envía
+ *   (contrapresión: el productor se frena al ritmo de la base en vez de acumular tareas).
+ *   Si ese hilo está dentro de TransactionScope.enTransaccion, la tarea corre con la
+ *   transacción suspendida, igual que en un hilo del executor: no se suma a ella ni
+ *   depende de su commit o rollback
+ * - Después de close() las tareas nuevas terminan con RejectedExecutionException
+ *
+ * Las validaciones y excepciones son las de los servicios; llegan como causa del
+ * CompletionException (join) o ExecutionException (get).
+ *
+ * Importante: una tarea de este executor no debe esperar (join/get) otra tarea del
+ * mismo executor; con todos los hilos ocupados esperando, nadie atendería la cola.
+ * Para encadenar usar thenCompose / thenCombine.
+ *
+ * Configuración:
+ * - -Dservice.async.threads (por defecto: tamaño máximo del pool de conexiones, o 10)
+ * - -Dservice.async.queueSize (por defecto 4 tareas por hilo)
+ */
+public final class AsyncClinicaService implements AutoCloseable {
+
+    private final PacienteServiceImpl pacienteService;
+    private final HistoriaClinicaServiceImpl historiaService;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param hilos Hilos del executor
+     * @param capacidadCola Tareas que pueden esperar en cola antes de aplicar contrapresión
+     */
+    public AsyncClinicaService(PacienteServiceImpl pacienteService, int hilos, int capacidadCola) {
+        if (pacienteService == null) {
+            throw new IllegalArgumentException("PacienteService no puede ser null");
+        }
+        if (hilos <= 0) {
+            throw new IllegalArgumentException("La cantidad de hilos debe ser mayor a 0");
+        }
+        if (capacidadCola <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cola debe ser mayor a 0");
+        }
+        this.pacienteService = pacienteService;
+        this.historiaService = pacienteService.getHistoriaClinicaService();
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacidadCola),
+                r -> {
+                    Thread t = new Thread(r, "async-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new EjecutarEnLlamador());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Crea la fachada con los límites -Dservice.async.* y el tamaño del pool de conexiones.
+     */
+    public static AsyncClinicaService desdeConfiguracion(PacienteServiceImpl pacienteService) {
+        ConnectionPool pool = DatabaseConnection.getPool();
+        int hilos = Integer.getInteger("service.async.threads", pool != null ? pool.getMaxSize() : 10);
+        AsyncClinicaService async = new AsyncClinicaService(pacienteService, hilos,
+                Integer.getInteger("service.async.queueSize", hilos * 4));
+        async.registrarMetricas();
+        return async;
+    }
+
+    // =====================================
+    //  Pacientes
+    // =====================================
+
+    public CompletableFuture<Paciente> getPaciente(int id) {
+        return ejecutar(() -> pacienteService.getById(id));
+    }
+
+    public CompletableFuture<Paciente> buscarPacientePorDni(String dni) {
+        return ejecutar(() -> pacienteService.buscarPorDni(dni));
+    }
+
+    /** Completa con el mismo paciente, ya con el ID asignado */
+    public CompletableFuture<Paciente> insertarPaciente(Paciente paciente) {
+        return ejecutar(() -> {
+            pacienteService.insertar(paciente);
+            return paciente;
+        });
+    }
+
+    public CompletableFuture<Paciente> actualizarPaciente(Paciente paciente) {
+        return ejecutar(() -> {
+            pacienteService.actualizar(paciente);
+            return paciente;
+        });
+    }
+
+    // =====================================
+    //  Historias clínicas
+    // =====================================
+
+    public CompletableFuture<HistoriaClinica> getHistoria(int id) {
+        return ejecutar(() -> historiaService.getById(id));
+    }
+
+    public CompletableFuture<HistoriaClinica> buscarHistoriaPorNro(String nro) {
+        return ejecutar(() -> historiaService.buscarPorNroHistoria(nro));
+    }
+
+    /** Completa con la misma historia, ya con el ID asignado */
+    public CompletableFuture<HistoriaClinica> insertarHistoria(HistoriaClinica hc) {
+        return ejecutar(() -> {
+            historiaService.insertar(hc);
+            return hc;
+        });
+    }
+
+    public CompletableFuture<HistoriaClinica> actualizarHistoria(HistoriaClinica hc) {
+        return ejecutar(() -> {
+            historiaService.actualizar(hc);
+            return hc;
+        });
+    }
+
+    // =====================================
+    //  Estado
+    // =====================================
+
+    /** Tareas esperando un hilo libre */
+    public int getEnCola() {
+        return executor.getQueue().size();
+    }
+
+    /** Tareas ejecutándose en este momento */
+    public int getActivas() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Deja de aceptar tareas y espera hasta 10 s a que terminen las encoladas.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* helpers */
+
+    /**
+     * Envía la tarea al executor. Con la cola llena corre en este mismo hilo
+     * antes de devolver el future (ya completado).
+     */
+    private <T> CompletableFuture<T> ejecutar(Callable<T> tarea) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Callable<T> enSolicitud = ReplicaRouter.propagar(tarea);
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(enSolicitud.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void registrarMetricas() {
+        MetricsRegistry.registrarGauge("clinica_async_en_cola", "Tareas asíncronas esperando un hilo", this::getEnCola);
+        MetricsRegistry.registrarGauge("clinica_async_activas", "Tareas asíncronas en ejecución", this::getActivas);
+    }
+
+    /**
+     * Con la cola llena ejecuta la tarea en el hilo que la envía (como CallerRunsPolicy),
+     * fuera de la transacción que ese hilo tenga abierta, pero después de close() la rechaza
+     * en lugar de descartarla en silencio: así ningún future queda sin completar.
+     */
+    private static final class EjecutarEnLlamador implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("El servicio asíncrono está cerrado");
+            }
+            TransactionScope.fueraDeTransaccion(r);
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package Service;
+
+import Dao.AuditoriaDAO;
+import Dao.SqlErrors;
+import Metrics.MetricsRegistry;
+import Models.CambioAuditoria;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Journal de cambios (auditoría) con escritura diferida.
+ *
+ * Los servicios registran cada alta, modificación y baja después de confirmarla;
+ * el registro no toca la base:
+ * 1. La entrada se agrega a un segmento de archivo mapeado en memoria (copia de bytes, sin fsync)
+ * 2. Se encola en una cola sin locks (ConcurrentLinkedQueue)
+ * 3. Un hilo de fondo la inserta en auditoria_cambio en lotes (un executeBatch y un commit)
+ *    y recién entonces avanza el offset confirmado en la cabecera del segmento
+ *
+ * Recuperación: al abrir el journal se leen las entradas posteriores al offset confirmado
+ * (verificadas con CRC y secuencia consecutiva) y se vuelven a encolar. Las que ya se
+ * habían insertado antes de la caída se descartan comparando con la última secuencia
+ * del segmento en la base (índice único segmento + secuencia).
+ *
+ * Garantías:
+ * - Caída del proceso: el segmento queda en la caché de páginas del sistema operativo,
+ *   no se pierde ningún cambio registrado
+ * - Caída del sistema operativo: el hilo de fondo hace force() del segmento antes de cada
+ *   lote, así se pierden como mucho los cambios de los últimos -Daudit.flushMs
+ * - Con la base caída los cambios se acumulan en el segmento y se reintenta con espera
+ *   creciente (hasta 30 s). Si el segmento se llena, cada registro espera hasta
+ *   -Daudit.fullWaitMs y luego el cambio queda solo en memoria (se informa por System.err)
+ * - Después de cualquier lote fallido el siguiente intento descarta las entradas que ya están
+ *   en la base: un commit que se aplicó pero informó error no se inserta dos veces
+ * - Un lote rechazado por sus datos (SQLState 22 o 23) se divide en mitades hasta aislar las
+ *   entradas inválidas, que se apartan en "archivo.rechazados" en lugar de trabar el journal
+ *
+ * Cuando todo lo escrito quedó confirmado el segmento vuelve a empezar desde la cabecera,
+ * así que su tamaño no crece con el tiempo.
+ *
+ * Formato del segmento:
+ * - Cabecera de 64 bytes: magic, versión, id de segmento, offset confirmado, última secuencia confirmada
+ * - Entradas: largo (int), secuencia (long), datos, CRC32 de los datos (int)
+ *
+ * Configuración:
+ * - -Daudit.enabled (por defecto true)
+ * - -Daudit.file (por defecto auditoria.journal en el directorio de trabajo)
+ * - -Daudit.segmentBytes (por defecto 8 MB), -Daudit.batchSize (500), -Daudit.flushMs (200)
+ * - -Daudit.fullWaitMs (5000)
+ */
+public final class AuditJournal implements AutoCloseable {
+
+    public static final String ALTA = "ALTA";
+    public static final String MODIFICACION = "MODIFICACION";
+    public static final String BAJA = "BAJA";
+
+    private static final int MAGIC = 0x41554449;                   // "AUDI"
+    private static final int VERSION = 1;
+    private static final int CABECERA = 64;
+    private static final int POS_SEGMENTO = 8;
+    private static final int POS_CONFIRMADO = 16;
+    private static final int POS_SECUENCIA_CONFIRMADA = 24;
+
+    /** largo + secuencia antes de los datos, CRC después */
+    private static final int ENCABEZADO_ENTRADA = 4 + 8;
+    private static final int MAX_DETALLE = 8_000;
+    private static final long MAX_ESPERA_REINTENTO_MS = 30_000;
+
+    private static volatile AuditJournal global;
+
+    private final AuditoriaDAO dao;
+    private final boolean activo;
+    private final int tamanioLote;
+    private final long intervaloNanos;
+    private final long esperaLlenoNanos;
+
+    /** Segmento mapeado, o null si no se pudo abrir (los cambios quedan solo en memoria) */
+    private final MappedByteBuffer segmento;
+    private final FileChannel canal;
+    private final long idSegmento;
+
+    /** Entradas que la base rechazó por sus datos, o null si el journal no usa archivo */
+    private final Path apartados;
+
+    /** Protege la escritura en el segmento, posicion y siguienteSecuencia */
+    private final ReentrantLock escritura = new ReentrantLock();
+    private final Condition hayEspacio = escritura.newCondition();
+    private int posicion;
+    private long siguienteSecuencia;
+
+    private final ConcurrentLinkedQueue<Pendiente> cola = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final Thread flusher;
+    private volatile boolean cerrado;
+
+    /**
+     * true después de recuperar entradas o de un lote fallido (el commit pudo haberse aplicado):
+     * el siguiente lote descarta las ya insertadas
+     */
+    private boolean verificarDuplicados;
+
+    /**
+     * Abre (o crea) el journal y arranca el hilo de escritura.
+     *
+     * @param archivo Segmento; null para no usar archivo (sin recuperación ante caídas)
+     * @param tamanioSegmento Bytes del segmento (mínimo 64 KB)
+     */
+    public AuditJournal(AuditoriaDAO dao, Path archivo, int tamanioSegmento,
+                        int tamanioLote, long intervaloMs, long esperaLlenoMs) {
+        if (dao == null) {
+            throw new IllegalArgumentException("AuditoriaDAO no puede ser null");
+        }
+        if (tamanioSegmento < 64 * 1024) {
+            throw new IllegalArgumentException("El segmento debe tener al menos 64 KB");
+        }
+        if (tamanioLote <= 0 || intervaloMs <= 0) {
+            throw new IllegalArgumentException("El lote y el intervalo deben ser mayores a 0");
+        }
+        this.dao = dao;
+        this.activo = true;
+        this.tamanioLote = tamanioLote;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.esperaLlenoNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, esperaLlenoMs));
+
+        FileChannel abierto = null;
+        MappedByteBuffer mapeado = null;
+        if (archivo != null) {
+            try {
+                abierto = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                mapeado = abierto.map(FileChannel.MapMode.READ_WRITE, 0, tamanioSegmento);
+            } catch (IOException e) {
+                System.err.println("[Auditoría] No se pudo abrir el journal " + archivo
+                        + ", los cambios pendientes quedan solo en memoria: " + e.getMessage());
+                cerrarCanal(abierto);
+                abierto = null;
+                mapeado = null;
+            }
+        }
+        this.canal = abierto;
+        this.segmento = mapeado;
+        this.apartados = archivo != null ? archivo.resolveSibling(archivo.getFileName() + ".rechazados") : null;
+        this.idSegmento = segmento != null ? inicializarSegmento() : ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        this.siguienteSecuencia = Math.max(siguienteSecuencia, 1);
+
+        this.flusher = new Thread(this::ejecutarFlusher, "auditoria-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /** Journal desactivado: registrar() no hace nada */
+    private AuditJournal() {
+        this.dao = null;
+        this.activo = false;
+        this.tamanioLote = 1;
+        this.intervaloNanos = 0;
+        this.esperaLlenoNanos = 0;
+        this.segmento = null;
+        this.canal = null;
+        this.idSegmento = 0;
+        this.apartados = null;
+        this.flusher = null;
+    }
+
+    /**
+     * Journal compartido por los servicios, creado con la configuración -Daudit.* al primer uso.
+     */
+    public static AuditJournal global() {
+        AuditJournal journal = global;
+        if (journal == null) {
+            synchronized (AuditJournal.class) {
+                if (global == null) {
+                    global = desdeConfiguracion();
+                }
+                journal = global;
+            }
+        }
+        return journal;
+    }
+
+    private static AuditJournal desdeConfiguracion() {
+        if (!Boolean.parseBoolean(System.getProperty("audit.enabled", "true"))) {
+            return new AuditJournal();
+        }
+        AuditJournal journal = new AuditJournal(
+                new AuditoriaDAO(),
+                Path.of(System.getProperty("audit.file", "auditoria.journal")),
+                Integer.getInteger("audit.segmentBytes", 8 * 1024 * 1024),
+                Integer.getInteger("audit.batchSize", 500),
+                Long.getLong("audit.flushMs", 200L),
+                Long.getLong("audit.fullWaitMs", 5_000L));
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "auditoria-shutdown"));
+        MetricsRegistry.registrarGauge("clinica_auditoria_pendientes",
+                "Cambios de auditoría todavía no insertados en la base", journal::getPendientes);
+        return journal;
+    }
+
+    /**
+     * Registra un cambio ya confirmado. No accede a la base.
+     *
+     * @param entidad "Paciente" o "HistoriaClinica"
+     * @param operacion {@link #ALTA}, {@link #MODIFICACION} o {@link #BAJA}
+     * @param detalle Estado de la entidad después del cambio (null en las bajas)
+     */
+    public void registrar(String entidad, int entidadId, String operacion, String detalle) {
+        if (!activo) return;
+        if (cerrado) {
+            System.err.println("[Auditoría] Journal cerrado, cambio no registrado: "
+                    + operacion + " " + entidad + " " + entidadId);
+            return;
+        }
+        if (detalle != null && detalle.length() > MAX_DETALLE) {
+            detalle = detalle.substring(0, MAX_DETALLE);
+        }
+        Instant fecha = Instant.now();
+        byte[] datos = serializar(entidad, entidadId, operacion, fecha, detalle);
+        int crc = crc(datos, 0, datos.length);
+
+        int enCola;
+        escritura.lock();
+        try {
+            int fin = posicion;
+            if (segmento != null && esperarEspacio(ENCABEZADO_ENTRADA + datos.length + 4)) {
+                fin = escribirEntrada(siguienteSecuencia, datos, crc);
+            }
+            cola.offer(new Pendiente(
+                    new CambioAuditoria(siguienteSecuencia++, entidad, entidadId, operacion, fecha, detalle), fin));
+            // Dentro del lock: confirmar() solo reinicia el segmento si no quedó nada encolado
+            enCola = pendientes.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cola.offer(new Pendiente(
+                    new CambioAuditoria(siguienteSecuencia++, entidad, entidadId, operacion, fecha, detalle), posicion));
+            enCola = pendientes.incrementAndGet();
+        } finally {
+            escritura.unlock();
+        }
+        if (enCola >= tamanioLote) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /** Cambios registrados que todavía no se insertaron en la base */
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    /**
+     * Deja de aceptar cambios, inserta los pendientes (si la base responde) y libera el segmento.
+     * Lo que no se pudo insertar queda en el segmento y se recupera al reiniciar.
+     */
+    @Override
+    public void close() {
+        if (!activo || cerrado) return;
+        cerrado = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segmento != null) {
+            segmento.force();
+        }
+        cerrarCanal(canal);
+    }
+
+    /* helpers */
+
+    /** Cambio encolado y offset del segmento donde termina su entrada */
+    private static final class Pendiente {
+        private final CambioAuditoria cambio;
+        private final int fin;
+
+        private Pendiente(CambioAuditoria cambio, int fin) {
+            this.cambio = cambio;
+            this.fin = fin;
+        }
+    }
+
+    /**
+     * Valida o crea la cabecera y vuelve a encolar las entradas no confirmadas.
+     *
+     * @return El id del segmento
+     */
+    private long inicializarSegmento() {
+        int magic = segmento.getInt(0);
+        if (magic == 0) {
+            long id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            segmento.putInt(4, VERSION);
+            segmento.putLong(POS_SEGMENTO, id);
+            segmento.putLong(POS_CONFIRMADO, CABECERA);
+            segmento.putLong(POS_SECUENCIA_CONFIRMADA, 0);
+            segmento.putInt(0, MAGIC);
+            posicion = CABECERA;
+            siguienteSecuencia = 1;
+            return id;
+        }
+        if (magic != MAGIC || segmento.getInt(4) != VERSION) {
+            throw new IllegalStateException("El archivo no es un journal de auditoría compatible");
+        }
+        long id = segmento.getLong(POS_SEGMENTO);
+        int pos = (int) segmento.getLong(POS_CONFIRMADO);
+        long confirmada = segmento.getLong(POS_SECUENCIA_CONFIRMADA);
+
+        // La primera entrada puede tener cualquier secuencia posterior a la confirmada
+        // (la cabecera se actualiza en dos escrituras); las siguientes deben ser consecutivas.
+        // Una secuencia vieja indica restos de una vuelta anterior del segmento.
+        long esperada = -1;
+        int recuperadas = 0;
+        while (pos + ENCABEZADO_ENTRADA + 4 <= segmento.capacity()) {
+            int largo = segmento.getInt(pos);
+            long secuencia = segmento.getLong(pos + 4);
+            int fin = pos + ENCABEZADO_ENTRADA + largo + 4;
+            if (largo <= 0 || fin > segmento.capacity()) break;
+            if (esperada < 0 ? secuencia <= confirmada : secuencia != esperada) break;
+
+            byte[] datos = new byte[largo];
+            segmento.get(pos + ENCABEZADO_ENTRADA, datos);
+            if (crc(datos, 0, largo) != segmento.getInt(fin - 4)) break;
+
+            cola.offer(new Pendiente(deserializar(secuencia, datos), fin));
+            recuperadas++;
+            esperada = secuencia + 1;
+            pos = fin;
+        }
+        posicion = pos;
+        siguienteSecuencia = esperada > 0 ? esperada : confirmada + 1;
+        if (recuperadas > 0) {
+            pendientes.addAndGet(recuperadas);
+            verificarDuplicados = true;
+            System.err.println("[Auditoría] Se recuperaron " + recuperadas + " cambios no confirmados del journal");
+        }
+        return id;
+    }
+
+    /**
+     * Espera (con el lock tomado) a que el segmento tenga lugar para la entrada.
+     *
+     * @return false si no hubo lugar a tiempo: el cambio queda solo en memoria
+     */
+    private boolean esperarEspacio(int largo) throws InterruptedException {
+        if (largo > segmento.capacity() - CABECERA) return false;
+        long restante = esperaLlenoNanos;
+        while (posicion + largo > segmento.capacity()) {
+            LockSupport.unpark(flusher);
+            if (restante <= 0) {
+                System.err.println("[Auditoría] Journal lleno (¿base caída?): el cambio queda solo en memoria");
+                return false;
+            }
+            restante = hayEspacio.awaitNanos(restante);
+        }
+        return true;
+    }
+
+    private int escribirEntrada(long secuencia, byte[] datos, int crc) {
+        int pos = posicion;
+        segmento.putInt(pos, datos.length);
+        segmento.putLong(pos + 4, secuencia);
+        segmento.put(pos + ENCABEZADO_ENTRADA, datos);
+        segmento.putInt(pos + ENCABEZADO_ENTRADA + datos.length, crc);
+        posicion = pos + ENCABEZADO_ENTRADA + datos.length + 4;
+        return posicion;
+    }
+
+    /**
+     * Bucle del hilo de fondo: junta hasta tamanioLote cambios, los inserta y confirma.
+     */
+    private void ejecutarFlusher() {
+        List<Pendiente> lote = new ArrayList<>(tamanioLote);
+        long esperaReintentoMs = 0;
+        while (true) {
+            drenar(lote);
+            if (lote.isEmpty()) {
+                if (cerrado) return;
+                LockSupport.parkNanos(this, intervaloNanos);
+                continue;
+            }
+            try {
+                if (segmento != null) segmento.force();
+                guardarPorPartes(lote);
+                confirmar(lote.get(lote.size() - 1));
+                lote.clear();
+                esperaReintentoMs = 0;
+            } catch (Exception e) {
+                if (cerrado) {
+                    System.err.println("[Auditoría] No se pudieron insertar " + (lote.size() + pendientes.get())
+                            + " cambios al cerrar; se recuperan del journal al reiniciar: " + e.getMessage());
+                    return;
+                }
+                esperaReintentoMs = Math.min(Math.max(1_000, esperaReintentoMs * 2), MAX_ESPERA_REINTENTO_MS);
+                System.err.println("[Auditoría] Error al insertar " + lote.size()
+                        + " cambios, reintento en " + esperaReintentoMs + " ms: " + e.getMessage());
+                esperar(TimeUnit.MILLISECONDS.toNanos(esperaReintentoMs));
+                continue;
+            }
+            if (!cerrado && pendientes.get() < tamanioLote) {
+                LockSupport.parkNanos(this, intervaloNanos);
+            }
+        }
+    }
+
+    /**
+     * Espera el tiempo completo aunque los registros despierten al hilo (solo close() lo corta).
+     */
+    private void esperar(long nanos) {
+        long hasta = System.nanoTime() + nanos;
+        long restante;
+        while (!cerrado && (restante = hasta - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, restante);
+        }
+    }
+
+    private void drenar(List<Pendiente> lote) {
+        Pendiente p;
+        while (lote.size() < tamanioLote && (p = cola.poll()) != null) {
+            lote.add(p);
+            pendientes.decrementAndGet();
+        }
+    }
+
+    /**
+     * Inserta el lote; si la base lo rechaza por sus datos lo divide en mitades (en orden de
+     * secuencia) hasta aislar las entradas inválidas y las aparta. Cualquier otro error se
+     * propaga y el lote completo se reintenta (las mitades ya insertadas se descartan).
+     */
+    private void guardarPorPartes(List<Pendiente> lote) throws Exception {
+        try {
+            guardar(lote);
+        } catch (Exception e) {
+            if (!SqlErrors.esErrorDeDatos(e)) throw e;
+            if (lote.size() == 1) {
+                apartar(lote.get(0).cambio, e);
+                return;
+            }
+            int mitad = lote.size() / 2;
+            guardarPorPartes(lote.subList(0, mitad));
+            guardarPorPartes(lote.subList(mitad, lote.size()));
+        }
+    }
+
+    private void guardar(List<Pendiente> lote) throws Exception {
+        // Si falla (aun en el commit) no se sabe si las filas quedaron: el próximo intento verifica
+        boolean verificar = verificarDuplicados;
+        verificarDuplicados = true;
+        List<CambioAuditoria> cambios = new ArrayList<>(lote.size());
+        long yaGuardada = verificar ? dao.ultimaSecuencia(idSegmento) : 0;
+        for (Pendiente p : lote) {
+            if (p.cambio.getSecuencia() > yaGuardada) cambios.add(p.cambio);
+        }
+        dao.insertarLote(idSegmento, cambios);
+        verificarDuplicados = false;
+    }
+
+    /**
+     * Deja de lado un cambio que la base rechaza por sus datos: se agrega al archivo de
+     * apartados (una línea por cambio, separada por tabulaciones) y se informa por System.err.
+     */
+    private void apartar(CambioAuditoria cambio, Exception e) {
+        System.err.println("[Auditoría] La base rechazó " + cambio + ", se aparta"
+                + (apartados != null ? " en " + apartados : "") + ": " + e.getMessage());
+        if (apartados == null) return;
+        String linea = String.join("\t", Long.toString(cambio.getSecuencia()), cambio.getEntidad(),
+                Integer.toString(cambio.getEntidadId()), cambio.getOperacion(), cambio.getFecha().toString(),
+                enUnaLinea(e.getMessage()), enUnaLinea(cambio.getDetalle())) + System.lineSeparator();
+        try {
+            Files.writeString(apartados, linea, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException io) {
+            System.err.println("[Auditoría] No se pudo escribir " + apartados + ": " + io.getMessage());
+        }
+    }
+
+    private static String enUnaLinea(String texto) {
+        return texto == null ? "" : texto.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Avanza el offset confirmado hasta el último cambio insertado. Si ya no queda nada
+     * pendiente, el segmento vuelve a empezar desde la cabecera.
+     */
+    private void confirmar(Pendiente ultimo) {
+        if (segmento == null) return;
+        escritura.lock();
+        try {
+            boolean vacio = pendientes.get() == 0 && ultimo.fin == posicion;
+            if (vacio) posicion = CABECERA;
+            // Primero el offset, después la secuencia (ver la recuperación en inicializarSegmento)
+            segmento.putLong(POS_CONFIRMADO, vacio ? CABECERA : ultimo.fin);
+            segmento.putLong(POS_SECUENCIA_CONFIRMADA, ultimo.cambio.getSecuencia());
+            hayEspacio.signalAll();
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    private static byte[] serializar(String entidad, int entidadId, String operacion, Instant fecha, String detalle) {
+        byte[] e = entidad.getBytes(StandardCharsets.UTF_8);
+        byte[] o = operacion.getBytes(StandardCharsets.UTF_8);
+        byte[] d = detalle != null ? detalle.getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer buf = ByteBuffer.allocate(4 + e.length + 4 + 4 + o.length + 8 + 4 + (d != null ? d.length : 0));
+        buf.putInt(e.length).put(e);
+        buf.putInt(entidadId);
+        buf.putInt(o.length).put(o);
+        buf.putLong(fecha.toEpochMilli());
+        buf.putInt(d != null ? d.length : -1);
+        if (d != null) buf.put(d);
+        return buf.array();
+    }
+
+    private static CambioAuditoria deserializar(long secuencia, byte[] datos) {
+        ByteBuffer buf = ByteBuffer.wrap(datos);
+        String entidad = leerTexto(buf, buf.getInt());
+        int entidadId = buf.getInt();
+        String operacion = leerTexto(buf, buf.getInt());
+        Instant fecha = Instant.ofEpochMilli(buf.getLong());
+        int largoDetalle = buf.getInt();
+        String detalle = largoDetalle >= 0 ? leerTexto(buf, largoDetalle) : null;
+        return new CambioAuditoria(secuencia, entidad, entidadId, operacion, fecha, detalle);
+    }
+
+    private static String leerTexto(ByteBuffer buf, int largo) {
+        String texto = new String(buf.array(), buf.position(), largo, StandardCharsets.UTF_8);
+        buf.position(buf.position() + largo);
+        return texto;
+    }
+
+    private static int crc(byte[] datos, int desde, int largo) {
+        CRC32 crc = new CRC32();
+        crc.update(datos, desde, largo);
+        return (int) crc.getValue();
+    }
+
+    private static void cerrarCanal(FileChannel canal) {
+        if (canal == null) return;
+        try {
+            canal.close();
+        } catch (IOException e) {
+            System.err.println("[Auditoría] Error al cerrar el journal: " + e.getMessage());
+        }
+    }
+}
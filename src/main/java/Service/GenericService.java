@@ -1,11 +1,21 @@
 package Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface GenericService<T> {
+    /** Tamaño máximo de página aceptado por getPagina() */
+    int MAX_PAGINA = 1000;
+
     void insertar(T entidad) throws Exception;
+    void insertarLote(List<T> entidades) throws Exception;
     void actualizar(T entidad) throws Exception;
     void eliminar(int id) throws Exception;
     T getById(int id) throws Exception;
+    Map<Integer, T> getByIds(Collection<Integer> ids) throws Exception;
     List<T> getAll() throws Exception;
+    List<T> getPagina(int despuesDeId, int limite) throws Exception;
+    Stream<T> stream() throws Exception;
 }
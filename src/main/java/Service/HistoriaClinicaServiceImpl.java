@@ -1,13 +1,29 @@
 package Service;
 
 import Dao.HistoriaClinicaDAO;
+import Dao.Lotes;
+import Dao.SqlErrors;
+import Dao.VersionConflictException;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
 import Models.HistoriaClinica;
 import Models.GrupoSanguineo;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import Config.DatabaseConnection;
+import Config.TransactionScope;
 
 /**
  * Servicio de negocio para la entidad HistoriaClinica.
@@ -19,75 +35,305 @@ import Config.DatabaseConnection;
  * - Coordinar inserciones transaccionales cuando se llama desde PacienteServiceImpl.
  *
  * Patrón: Service Layer con validaciones de negocio y manejo de transacciones.
+ *
+ * Unicidad del número de historia (-Ddb.uniqueCheck):
+ * - probe (por defecto): consulta EXISTS liviana antes de escribir
+ * - index: sin consulta previa; el índice único de nro_historia rechaza el duplicado
+ * En ambos modos la violación del índice se traduce al mismo IllegalArgumentException.
+ * El número sigue reservado después de eliminar la historia (baja lógica): el índice
+ * incluye las filas eliminadas y la consulta previa también las cuenta.
+ *
+ * Auditoría: las altas, modificaciones y bajas confirmadas se registran en {@link AuditJournal}
+ * (escritura diferida, no agrega accesos a la base en la operación).
+ * También se avisan a los observadores registrados con alConfirmarCambio (AnalyticsSnapshot).
+ *
+ * Concurrencia: actualizar falla con VersionConflictException si la historia cambió desde
+ * que se leyó; actualizarConReintento reaplica los cambios sobre la versión actual.
  */
 public class HistoriaClinicaServiceImpl implements GenericService<HistoriaClinica> {
 
+    /** false con -Ddb.uniqueCheck=index: se confía solo en el índice único */
+    private static final boolean UNIQUE_PROBE = !"index".equalsIgnoreCase(System.getProperty("db.uniqueCheck", "probe"));
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("HistoriaClinicaService");
+
+    /** Nombre de la entidad en el journal de auditoría */
+    private static final String ENTIDAD = "HistoriaClinica";
+
     private final HistoriaClinicaDAO historiaClinicaDAO;
+    private final AuditJournal auditoria;
+
+    /** Reciben el id de cada historia dada de alta, modificada o eliminada, después del commit */
+    private final List<IntConsumer> observadores = new CopyOnWriteArrayList<>();
 
     public HistoriaClinicaServiceImpl(HistoriaClinicaDAO historiaClinicaDAO) {
+        this(historiaClinicaDAO, AuditJournal.global());
+    }
+
+    /**
+     * Con un journal propio en lugar del global (pruebas).
+     */
+    HistoriaClinicaServiceImpl(HistoriaClinicaDAO historiaClinicaDAO, AuditJournal auditoria) {
         if (historiaClinicaDAO == null) {
             throw new IllegalArgumentException("HistoriaClinicaDAO no puede ser null");
         }
         this.historiaClinicaDAO = historiaClinicaDAO;
+        this.auditoria = auditoria;
     }
 
     @Override
     public void insertar(HistoriaClinica hc) throws Exception {
-        validateHistoriaClinica(hc);
-        validateNroHistoriaUnique(hc.getNroHistoria(), null);
-        historiaClinicaDAO.insertar(hc);
+        METRICAS.medir("insertar", () -> {
+            validateHistoriaClinica(hc);
+            validateNroHistoriaUnique(hc.getNroHistoria(), null);
+            try {
+                historiaClinicaDAO.insertar(hc);
+            } catch (SQLException e) {
+                throw traducirDuplicado(e, hc);
+            }
+            auditar(hc, AuditJournal.ALTA);
+        });
+    }
+
+    /**
+     * Inserta muchas historias clínicas con JDBC batch, confirmando cada Lotes.TAMANIO filas.
+     * Todo el lote se valida antes de escribir la primera fila.
+     *
+     * Cada tramo es una transacción propia (como PacienteServiceImpl.insertarLote) y se audita
+     * al confirmarse: si falla un tramo posterior, los ya confirmados quedan en la base con su
+     * entrada en el journal y avisados a los observadores.
+     */
+    @Override
+    public void insertarLote(List<HistoriaClinica> historias) throws Exception {
+        METRICAS.medir("insertarLote", () -> {
+            validateLote(historias);
+            for (List<HistoriaClinica> lote : Lotes.partir(historias, Lotes.TAMANIO)) {
+                try {
+                    TransactionScope.enTransaccion(() -> {
+                        historiaClinicaDAO.insertLoteTx(lote, TransactionScope.conexion());
+                        for (HistoriaClinica hc : lote) {
+                            auditar(hc, AuditJournal.ALTA);
+                        }
+                    });
+                } catch (SQLException e) {
+                    throw traducirDuplicado(e, lote);
+                }
+            }
+        });
     }
 
     @Override
     public void actualizar(HistoriaClinica hc) throws Exception {
-        validateHistoriaClinica(hc);
-        if (hc.getId() <= 0) {
-            throw new IllegalArgumentException("El ID de la historia clínica debe ser mayor a 0 para actualizar");
-        }
-        validateNroHistoriaUnique(hc.getNroHistoria(), hc.getId());
-        historiaClinicaDAO.actualizar(hc);
+        METRICAS.medir("actualizar", () -> {
+            validateHistoriaClinica(hc);
+            if (hc.getId() <= 0) {
+                throw new IllegalArgumentException("El ID de la historia clínica debe ser mayor a 0 para actualizar");
+            }
+            validateNroHistoriaUnique(hc.getNroHistoria(), hc.getId());
+            try {
+                historiaClinicaDAO.actualizar(hc);
+            } catch (SQLException e) {
+                throw traducirDuplicado(e, hc);
+            }
+            auditar(hc, AuditJournal.MODIFICACION);
+        });
+    }
+
+    /**
+     * Actualiza reaplicando los cambios si otro usuario modificó la historia en el medio
+     * (mismo comportamiento que PacienteServiceImpl.actualizarConReintento).
+     *
+     * @param hc Historia leída (con su versión)
+     * @param cambios Asignaciones de los campos modificados
+     * @return La historia guardada; después de un reintento es otra instancia que la recibida
+     * @throws VersionConflictException Si el conflicto persiste en todos los intentos
+     */
+    public HistoriaClinica actualizarConReintento(HistoriaClinica hc, Consumer<HistoriaClinica> cambios) throws Exception {
+        return METRICAS.medir("actualizarConReintento", () -> {
+            if (hc == null) {
+                throw new IllegalArgumentException("La historia clínica no puede ser null");
+            }
+            if (cambios == null) {
+                throw new IllegalArgumentException("Los cambios no pueden ser null");
+            }
+            HistoriaClinica actual = hc;
+            for (int intento = 1; ; intento++) {
+                cambios.accept(actual);
+                try {
+                    actualizar(actual);
+                    return actual;
+                } catch (VersionConflictException e) {
+                    if (intento == PacienteServiceImpl.MAX_INTENTOS_CONFLICTO) throw e;
+                    actual = historiaClinicaDAO.getById(hc.getId());
+                    if (actual == null) {
+                        throw new IllegalArgumentException("La historia clínica id=" + hc.getId() + " fue eliminada");
+                    }
+                }
+            }
+        });
     }
 
     @Override
     public void eliminar(int id) throws Exception {
-        if (id <= 0) {
-            throw new IllegalArgumentException("El ID debe ser mayor a 0");
-        }
-        historiaClinicaDAO.eliminar(id);
+        METRICAS.medir("eliminar", () -> {
+            if (id <= 0) {
+                throw new IllegalArgumentException("El ID debe ser mayor a 0");
+            }
+            historiaClinicaDAO.eliminar(id);
+            TransactionScope.despuesDelCommit(() -> auditoria.registrar(ENTIDAD, id, AuditJournal.BAJA, null));
+            avisarCambio(id);
+        });
     }
 
     @Override
     public HistoriaClinica getById(int id) throws Exception {
-        if (id <= 0) {
-            throw new IllegalArgumentException("El ID debe ser mayor a 0");
-        }
-        return historiaClinicaDAO.getById(id);
+        return METRICAS.medir("getById", () -> {
+            if (id <= 0) {
+                throw new IllegalArgumentException("El ID debe ser mayor a 0");
+            }
+            return historiaClinicaDAO.getById(id);
+        });
+    }
+
+    /**
+     * Busca muchos registros por ID en pocas consultas.
+     * @return Encontrados por ID (los inexistentes no aparecen)
+     */
+    @Override
+    public Map<Integer, HistoriaClinica> getByIds(Collection<Integer> ids) throws Exception {
+        return METRICAS.medir("getByIds", () -> {
+            if (ids == null) {
+                throw new IllegalArgumentException("La lista de IDs no puede ser null");
+            }
+            for (Integer id : ids) {
+                if (id == null || id <= 0) {
+                    throw new IllegalArgumentException("El ID debe ser mayor a 0");
+                }
+            }
+            return historiaClinicaDAO.getByIds(ids);
+        });
     }
 
     @Override
     public List<HistoriaClinica> getAll() throws Exception {
-        return historiaClinicaDAO.getAll();
+        return METRICAS.medir("getAll", () -> {
+            return historiaClinicaDAO.getAll();
+        });
+    }
+
+    /**
+     * Página de hasta 'limite' registros con id mayor a 'despuesDeId' (paginación por clave).
+     * Para la primera página usar despuesDeId = 0; para la siguiente, el id del último recibido.
+     */
+    @Override
+    public List<HistoriaClinica> getPagina(int despuesDeId, int limite) throws Exception {
+        return METRICAS.medir("getPagina", () -> {
+            if (despuesDeId < 0) {
+                throw new IllegalArgumentException("El ID de referencia no puede ser negativo");
+            }
+            if (limite <= 0 || limite > MAX_PAGINA) {
+                throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGINA);
+            }
+            return historiaClinicaDAO.getPagina(despuesDeId, limite);
+        });
+    }
+
+    /**
+     * Búsqueda de texto en antecedentes, medicación actual y observaciones,
+     * ordenada por relevancia (ver {@link HistoriaClinicaDAO#buscarTexto}).
+     *
+     * @param offset Resultados a saltear (página * limite)
+     * @param limite Tamaño de página, entre 1 y MAX_PAGINA
+     */
+    public List<HistoriaClinica> buscarTexto(String consulta, int offset, int limite) throws Exception {
+        return METRICAS.medir("buscarTexto", () -> {
+            if (consulta == null || consulta.trim().isEmpty()) {
+                throw new IllegalArgumentException("El texto a buscar no puede estar vacío");
+            }
+            if (offset < 0) {
+                throw new IllegalArgumentException("El offset no puede ser negativo");
+            }
+            if (limite <= 0 || limite > MAX_PAGINA) {
+                throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGINA);
+            }
+            return historiaClinicaDAO.buscarTexto(consulta, offset, limite);
+        });
+    }
+
+    /**
+     * Recorre todos los registros activos sin cargarlos en memoria.
+     * El caller debe cerrar el Stream (try-with-resources) para liberar la conexión.
+     */
+    @Override
+    public Stream<HistoriaClinica> stream() throws Exception {
+        return METRICAS.medir("stream", () -> {
+            return historiaClinicaDAO.stream();
+        });
     }
 
     /**
      * Inserta una historia clínica en una transacción externa.
      *
-     * Usado por PacienteServiceImpl.insertar() para coordinar el alta de ambas entidades.
+     * Para código que maneja su propia conexión; dentro de TransactionScope los métodos
+     * comunes ya usan la conexión de la transacción. No consulta la base: el caller ya llamó a validarAlta() antes de abrir la transacción,
+     * y un duplicado concurrente lo rechaza el índice único.
      */
     public void insertTx(HistoriaClinica hc, Connection conn) throws Exception {
         validateHistoriaClinica(hc);
-        validateNroHistoriaUnique(hc.getNroHistoria(), null);
         historiaClinicaDAO.insertTx(hc, conn);
     }
 
+    /**
+     * Inserta una historia ya validada con validarAlta(); dentro de una transacción
+     * (TransactionScope) usa su conexión. Usado por PacienteServiceImpl.insertar().
+     */
+    void insertarValidada(HistoriaClinica hc) throws Exception {
+        validateHistoriaClinica(hc);
+        historiaClinicaDAO.insertar(hc);
+    }
+
+    /**
+     * Validaciones previas al alta (datos y unicidad del número).
+     * Se ejecuta fuera de la transacción para no retener la conexión transaccional.
+     */
+    void validarAlta(HistoriaClinica hc) throws Exception {
+        validateHistoriaClinica(hc);
+        validateNroHistoriaUnique(hc.getNroHistoria(), null);
+    }
+
+    /**
+     * Inserta un lote de historias en una transacción externa.
+     *
+     * Usado por PacienteServiceImpl.insertarLote(); el caller ya validó el lote con validateLote().
+     */
+    public void insertLoteTx(List<HistoriaClinica> historias, Connection conn) throws Exception {
+        historiaClinicaDAO.insertLoteTx(historias, conn);
+    }
+
+    /**
+     * Números, de los recibidos, que ya usa una historia, activa o eliminada (importaciones):
+     * el número sigue reservado después de la baja lógica.
+     * Con -Ddb.uniqueCheck=index no consulta: decide el índice único al insertar.
+     */
+    public Set<String> nrosHistoriaExistentes(Collection<String> nros) throws Exception {
+        return METRICAS.medir("nrosHistoriaExistentes", () -> {
+            if (nros == null) {
+                throw new IllegalArgumentException("La lista de números no puede ser null");
+            }
+            return UNIQUE_PROBE ? historiaClinicaDAO.nrosHistoriaExistentes(nros) : new HashSet<>();
+        });
+    }
+
     /**
      * Busca una historia clínica por número.
      */
     public HistoriaClinica buscarPorNroHistoria(String nro) throws Exception {
-        if (nro == null || nro.trim().isEmpty()) {
-            throw new IllegalArgumentException("El número de historia no puede estar vacío");
-        }
-        return historiaClinicaDAO.buscarPorNroHistoria(nro);
+        return METRICAS.medir("buscarPorNroHistoria", () -> {
+            if (nro == null || nro.trim().isEmpty()) {
+                throw new IllegalArgumentException("El número de historia no puede estar vacío");
+            }
+            return historiaClinicaDAO.buscarPorNroHistoria(nro);
+        });
     }
 
     /**
@@ -105,15 +351,89 @@ public class HistoriaClinicaServiceImpl implements GenericService<HistoriaClinic
         }
     }
 
+    /**
+     * Valida cada historia del lote y que ningún número de historia se repita dentro del lote.
+     * La unicidad contra la base la garantiza el índice único de nro_historia.
+     */
+    void validateLote(List<HistoriaClinica> historias) {
+        if (historias == null) {
+            throw new IllegalArgumentException("La lista de historias clínicas no puede ser null");
+        }
+        Set<String> numeros = new HashSet<>();
+        for (HistoriaClinica hc : historias) {
+            validateHistoriaClinica(hc);
+            if (!numeros.add(hc.getNroHistoria().trim())) {
+                throw new IllegalArgumentException("El número de historia está repetido en el lote: " + hc.getNroHistoria());
+            }
+        }
+    }
+
     /**
      * Garantiza que el número de historia clínica sea único.
+     * Usa una consulta EXISTS (sin traer la fila); con -Ddb.uniqueCheck=index no consulta.
      */
     private void validateNroHistoriaUnique(String nro, Integer hcId) throws Exception {
-        HistoriaClinica existente = historiaClinicaDAO.buscarPorNroHistoria(nro);
-        if (existente != null) {
-            if (hcId == null || existente.getId() != hcId) {
-                throw new IllegalArgumentException("Ya existe una historia clínica con el número: " + nro);
+        if (!UNIQUE_PROBE) {
+            return;
+        }
+        if (historiaClinicaDAO.existeNroHistoria(nro, hcId == null ? 0 : hcId)) {
+            throw new IllegalArgumentException("Ya existe una historia clínica con el número: " + nro);
+        }
+    }
+
+    /**
+     * Traduce una violación del índice único de nro_historia al mensaje de negocio.
+     * Cualquier otro error se devuelve sin cambios.
+     */
+    Exception traducirDuplicado(Exception e, HistoriaClinica hc) {
+        if (SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_NRO_HISTORIA)) {
+            return new IllegalArgumentException("Ya existe una historia clínica con el número: " + hc.getNroHistoria(), e);
+        }
+        return e;
+    }
+
+    /**
+     * Variante de {@link #traducirDuplicado(Exception, HistoriaClinica)} para un tramo de un lote:
+     * el mensaje nombra los números del tramo que ya estaban en la base.
+     */
+    Exception traducirDuplicado(Exception e, List<HistoriaClinica> lote) {
+        if (!SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_NRO_HISTORIA)) {
+            return e;
+        }
+        List<String> nros = lote.stream().map(HistoriaClinica::getNroHistoria).toList();
+        try {
+            Set<String> existentes = historiaClinicaDAO.nrosHistoriaExistentes(nros);
+            if (!existentes.isEmpty()) {
+                return new IllegalArgumentException("Ya existe una historia clínica con el número: "
+                        + String.join(", ", new TreeSet<>(existentes)), e);
             }
+        } catch (Exception consulta) {
+            e.addSuppressed(consulta);
         }
+        return new IllegalArgumentException("Ya existe una historia clínica con alguno de los números del lote", e);
+    }
+
+    /**
+     * Registra en el journal de auditoría el estado de la historia después del cambio
+     * (después del commit si hay una transacción en curso).
+     */
+    void auditar(HistoriaClinica hc, String operacion) {
+        String detalle = hc.toString();
+        TransactionScope.despuesDelCommit(() -> auditoria.registrar(ENTIDAD, hc.getId(), operacion, detalle));
+        avisarCambio(hc.getId());
+    }
+
+    /**
+     * Registra un observador de los cambios confirmados (recibe el id de la historia).
+     */
+    void alConfirmarCambio(IntConsumer observador) {
+        observadores.add(observador);
+    }
+
+    private void avisarCambio(int id) {
+        if (observadores.isEmpty()) return;
+        TransactionScope.despuesDelCommit(() -> {
+            for (IntConsumer observador : observadores) observador.accept(id);
+        });
     }
 }
@@ -0,0 +1,469 @@
+package Service;
+
+import Models.Paciente;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de nombres de pacientes para búsquedas aproximadas (type-ahead).
+ *
+ * Funcionamiento:
+ * - "apellido nombre" se normaliza (minúsculas, sin tildes, solo letras y dígitos) y se
+ *   parte en trigramas por palabra, con dos espacios al inicio y uno al final ("  go", " go", "gon", ...)
+ * - Por cada trigrama se guarda la lista ordenada de pacientes que lo contienen
+ * - La consulta se parte igual pero sin el espacio final, así cada palabra funciona
+ *   como prefijo: "gonz" encuentra "González"
+ * - Si K o más nombres tienen todos los trigramas de la consulta se devuelven K de ellos
+ *   (los más cortos entre los primeros encontrados), sin recorrer las listas largas
+ * - Si no, similitud = proporción de trigramas de la consulta presentes en el nombre.
+ *   Se devuelven los K mejores (con 30% o más), desempatando por nombre más corto
+ *
+ * No accede a la base en las búsquedas. Se carga una sola vez (en segundo plano, con la
+ * primera búsqueda) y después lo mantienen PacienteServiceImpl en cada alta, modificación
+ * y baja. Los cambios hechos por otras instancias de la aplicación no se ven hasta reiniciar.
+ *
+ * Concurrencia: ReentrantReadWriteLock; las búsquedas comparten el lock de lectura.
+ * Las bajas y modificaciones dejan la posición anterior marcada como libre; cuando las
+ * posiciones libres superan un cuarto de las ocupadas se compactan las listas.
+ */
+public final class PacienteNameIndex {
+
+    /** Máximo de resultados por búsqueda */
+    public static final int MAX_RESULTADOS = 100;
+
+    /** Proporción mínima de trigramas de la consulta que debe tener un nombre */
+    private static final double SIMILITUD_MINIMA = 0.3;
+
+    private static final int MAX_TRIGRAMAS_CONSULTA = 64;
+    private static final int LOTE_CARGA = 1_000;
+    private static final int MIN_LIBRES_COMPACTAR = 10_000;
+
+    /** espacio, a-z, 0-9 */
+    private static final int ALFABETO = 37;
+    private static final int TRIGRAMAS = ALFABETO * ALFABETO * ALFABETO;
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern NO_ALFANUMERICO = Pattern.compile("[^a-z0-9]+");
+
+    private enum Estado { VACIO, CARGANDO, LISTO }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Posiciones que contienen cada trigrama, en orden creciente (la compactación lo conserva) */
+    private final int[][] postings = new int[TRIGRAMAS][];
+    private final int[] largos = new int[TRIGRAMAS];
+
+    /** Datos por posición (id 0 = posición libre) */
+    private int posiciones;
+    private int libres;
+    private int[] ids = new int[1024];
+    private String[] nombres = new String[1024];
+    private String[] apellidos = new String[1024];
+    private String[] dnis = new String[1024];
+    private short[] trigramasPorPosicion = new short[1024];
+    private final Map<Integer, Integer> posicionPorId = new HashMap<>();
+
+    private final AtomicReference<Estado> estado = new AtomicReference<>(Estado.VACIO);
+
+    /** IDs guardados o eliminados mientras se carga: la carga no los pisa con datos viejos */
+    private final Set<Integer> modificadosEnCarga = new HashSet<>();
+
+    public boolean isListo() {
+        return estado.get() == Estado.LISTO;
+    }
+
+    /** Pacientes indexados */
+    public int getCantidad() {
+        lock.readLock().lock();
+        try {
+            return posicionPorId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inicia la carga en un hilo de fondo si el índice está vacío (si ya se está cargando no hace nada).
+     *
+     * @param fuente Recorrido de los pacientes activos (id, nombre, apellido y DNI)
+     */
+    public void cargarEnSegundoPlano(Callable<Stream<Paciente>> fuente) {
+        if (!estado.compareAndSet(Estado.VACIO, Estado.CARGANDO)) return;
+        Thread t = new Thread(() -> cargar(fuente), "indice-nombres");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Agrega o reemplaza un paciente. Un paciente eliminado se quita del índice.
+     */
+    public void guardar(Paciente paciente) {
+        lock.writeLock().lock();
+        try {
+            if (estado.get() == Estado.VACIO) return;      // la carga lo va a leer de la base
+            if (estado.get() == Estado.CARGANDO) modificadosEnCarga.add(paciente.getId());
+            quitar(paciente.getId());
+            if (!paciente.isEliminado()) agregar(paciente);
+            compactarSiHaceFalta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(int id) {
+        lock.writeLock().lock();
+        try {
+            if (estado.get() == Estado.VACIO) return;
+            if (estado.get() == Estado.CARGANDO) modificadosEnCarga.add(id);
+            quitar(id);
+            compactarSiHaceFalta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Los pacientes más parecidos al texto, del más al menos parecido.
+     * Los Paciente devueltos traen id, nombre, apellido y DNI (sin historia clínica).
+     */
+    public List<Paciente> buscar(String texto, int limite) {
+        int[] consulta = trigramas(normalizar(texto), true);
+        if (consulta.length == 0) return new ArrayList<>();
+        if (consulta.length > MAX_TRIGRAMAS_CONSULTA) consulta = Arrays.copyOf(consulta, MAX_TRIGRAMAS_CONSULTA);
+        int minimo = Math.max(1, (int) Math.ceil(SIMILITUD_MINIMA * consulta.length));
+
+        lock.readLock().lock();
+        try {
+            int n = consulta.length;
+            Integer[] orden = new Integer[n];
+            for (int i = 0; i < n; i++) orden[i] = consulta[i];
+            Arrays.sort(orden, (a, b) -> Integer.compare(largos[a], largos[b]));
+
+            // Caso típico del type-ahead: hay K nombres con todos los trigramas (todas las
+            // palabras escritas son prefijos). Se cortan las listas desde la más corta
+            // y se termina apenas aparecen K, sin recorrer las listas largas.
+            List<Paciente> exactos = coincidenciasCompletas(orden, limite);
+            if (exactos != null) return exactos;
+
+            // Si no alcanzan, se recorren las listas de la más corta a la más larga contando
+            // coincidencias. Un nombre que no aparece en las primeras n - minimo + 1 listas no
+            // puede llegar al mínimo, así que las restantes solo suman a candidatos ya vistos.
+            byte[] cuenta = new byte[posiciones];
+            int[] candidatos = new int[256];
+            int cantidadCandidatos = 0;
+            for (int k = 0; k < n; k++) {
+                int[] lista = postings[orden[k]];
+                int largo = largos[orden[k]];
+                boolean admiteNuevos = n - k >= minimo;
+                for (int j = 0; j < largo; j++) {
+                    int pos = lista[j];
+                    if (cuenta[pos] == 0) {
+                        if (!admiteNuevos) continue;
+                        if (cantidadCandidatos == candidatos.length) candidatos = Arrays.copyOf(candidatos, candidatos.length * 2);
+                        candidatos[cantidadCandidatos++] = pos;
+                    }
+                    cuenta[pos]++;
+                }
+            }
+
+            // Los K mejores puntajes; la mayoría de los candidatos se descarta
+            // comparando contra el peor guardado, sin ordenar nada
+            long[] mejores = new long[limite];
+            int guardados = 0;
+            int peor = 0;
+            for (int c = 0; c < cantidadCandidatos; c++) {
+                int pos = candidatos[c];
+                if (cuenta[pos] < minimo || ids[pos] == 0) continue;
+                long clave = puntaje(cuenta[pos], trigramasPorPosicion[pos], pos);
+                if (guardados < limite) {
+                    mejores[guardados++] = clave;
+                    if (guardados == limite) peor = indiceDelMenor(mejores);
+                } else if (clave > mejores[peor]) {
+                    mejores[peor] = clave;
+                    peor = indiceDelMenor(mejores);
+                }
+            }
+
+            return resultados(mejores, guardados);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* helpers */
+
+    /**
+     * Intersección de las listas (ordenadas de la más corta a la más larga) que se
+     * detiene al juntar {@code limite} posiciones. Cada lista se avanza con búsqueda
+     * exponencial desde donde quedó, así las largas casi no se recorren.
+     *
+     * @return Los K resultados, o null si hay menos de K nombres con todos los trigramas
+     */
+    private List<Paciente> coincidenciasCompletas(Integer[] orden, int limite) {
+        int n = orden.length;
+        int[] cursores = new int[n];
+        long[] encontrados = new long[limite];
+        int guardados = 0;
+        int[] corta = postings[orden[0]];
+        int largoCorta = largos[orden[0]];
+        siguiente:
+        for (int j = 0; j < largoCorta && guardados < limite; j++) {
+            int pos = corta[j];
+            if (ids[pos] == 0) continue;
+            for (int k = 1; k < n; k++) {
+                int[] lista = postings[orden[k]];
+                int c = avanzar(lista, largos[orden[k]], cursores[k], pos);
+                cursores[k] = c;
+                if (c == largos[orden[k]]) break siguiente;
+                if (lista[c] != pos) continue siguiente;
+            }
+            encontrados[guardados++] = puntaje(n, trigramasPorPosicion[pos], pos);
+        }
+        return guardados == limite ? resultados(encontrados, guardados) : null;
+    }
+
+    /** Primer índice desde {@code desde} con valor >= pos (o largo si no hay) */
+    private static int avanzar(int[] lista, int largo, int desde, int pos) {
+        if (desde >= largo || lista[desde] >= pos) return desde;
+        int paso = 1;
+        int bajo = desde;
+        int alto = desde + 1;
+        while (alto < largo && lista[alto] < pos) {
+            bajo = alto;
+            paso <<= 1;
+            alto = desde + paso;
+        }
+        if (alto > largo) alto = largo;
+        // lista[bajo] < pos y (alto == largo o lista[alto] >= pos)
+        while (alto - bajo > 1) {
+            int medio = (bajo + alto) >>> 1;
+            if (lista[medio] < pos) bajo = medio;
+            else alto = medio;
+        }
+        return alto;
+    }
+
+    /** Pacientes de las claves de puntaje, de la mayor a la menor */
+    private List<Paciente> resultados(long[] claves, int cantidad) {
+        long[] ordenadas = Arrays.copyOf(claves, cantidad);
+        Arrays.sort(ordenadas);
+        List<Paciente> resultado = new ArrayList<>(cantidad);
+        for (int i = cantidad - 1; i >= 0; i--) {
+            resultado.add(resumen(Integer.MAX_VALUE - (int) (ordenadas[i] & 0xFFFFFFFFL)));
+        }
+        return resultado;
+    }
+
+    private void cargar(Callable<Stream<Paciente>> fuente) {
+        try (Stream<Paciente> pacientes = fuente.call()) {
+            List<Paciente> lote = new ArrayList<>(LOTE_CARGA);
+            Iterator<Paciente> it = pacientes.iterator();
+            while (it.hasNext()) {
+                lote.add(it.next());
+                if (lote.size() == LOTE_CARGA) {
+                    agregarCarga(lote);
+                    lote.clear();
+                }
+            }
+            agregarCarga(lote);
+            lock.writeLock().lock();
+            try {
+                modificadosEnCarga.clear();
+                estado.set(Estado.LISTO);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("[Índice de nombres] Error al cargar, se reintenta con la próxima búsqueda: " + e.getMessage());
+            lock.writeLock().lock();
+            try {
+                for (Integer id : new ArrayList<>(posicionPorId.keySet())) quitar(id);
+                compactar();
+                modificadosEnCarga.clear();
+                estado.set(Estado.VACIO);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void agregarCarga(List<Paciente> lote) {
+        lock.writeLock().lock();
+        try {
+            for (Paciente p : lote) {
+                if (!modificadosEnCarga.contains(p.getId()) && !posicionPorId.containsKey(p.getId())) {
+                    agregar(p);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void agregar(Paciente p) {
+        int pos = posiciones++;
+        if (pos == ids.length) {
+            int capacidad = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacidad);
+            nombres = Arrays.copyOf(nombres, capacidad);
+            apellidos = Arrays.copyOf(apellidos, capacidad);
+            dnis = Arrays.copyOf(dnis, capacidad);
+            trigramasPorPosicion = Arrays.copyOf(trigramasPorPosicion, capacidad);
+        }
+        ids[pos] = p.getId();
+        nombres[pos] = p.getNombre();
+        apellidos[pos] = p.getApellido();
+        dnis[pos] = p.getDni();
+
+        int[] trigramas = trigramas(normalizar(p.getApellido() + " " + p.getNombre()), false);
+        trigramasPorPosicion[pos] = (short) Math.min(trigramas.length, Short.MAX_VALUE);
+        for (int t : trigramas) {
+            int[] lista = postings[t];
+            if (lista == null) {
+                lista = postings[t] = new int[4];
+            } else if (largos[t] == lista.length) {
+                lista = postings[t] = Arrays.copyOf(lista, lista.length * 2);
+            }
+            lista[largos[t]++] = pos;
+        }
+        posicionPorId.put(p.getId(), pos);
+    }
+
+    private void quitar(int id) {
+        Integer pos = posicionPorId.remove(id);
+        if (pos == null) return;
+        ids[pos] = 0;
+        nombres[pos] = null;
+        apellidos[pos] = null;
+        dnis[pos] = null;
+        libres++;
+    }
+
+    private void compactarSiHaceFalta() {
+        if (libres > MIN_LIBRES_COMPACTAR && libres > (posiciones - libres) / 4) {
+            compactar();
+        }
+    }
+
+    /**
+     * Quita las posiciones libres de todas las listas y renumera las ocupadas
+     * (la renumeración conserva el orden, así las listas siguen ordenadas).
+     */
+    private void compactar() {
+        int[] nueva = new int[posiciones];
+        int ocupadas = 0;
+        for (int pos = 0; pos < posiciones; pos++) {
+            if (ids[pos] == 0) {
+                nueva[pos] = -1;
+                continue;
+            }
+            nueva[pos] = ocupadas;
+            ids[ocupadas] = ids[pos];
+            nombres[ocupadas] = nombres[pos];
+            apellidos[ocupadas] = apellidos[pos];
+            dnis[ocupadas] = dnis[pos];
+            trigramasPorPosicion[ocupadas] = trigramasPorPosicion[pos];
+            posicionPorId.put(ids[ocupadas], ocupadas);
+            ocupadas++;
+        }
+        for (int pos = ocupadas; pos < posiciones; pos++) {
+            ids[pos] = 0;
+            nombres[pos] = null;
+            apellidos[pos] = null;
+            dnis[pos] = null;
+        }
+        for (int t = 0; t < TRIGRAMAS; t++) {
+            int[] lista = postings[t];
+            if (lista == null) continue;
+            int largo = 0;
+            for (int i = 0; i < largos[t]; i++) {
+                int pos = nueva[lista[i]];
+                if (pos >= 0) lista[largo++] = pos;
+            }
+            largos[t] = largo;
+            if (largo == 0) postings[t] = null;
+        }
+        posiciones = ocupadas;
+        libres = 0;
+    }
+
+    private Paciente resumen(int pos) {
+        Paciente p = new Paciente();
+        p.setId(ids[pos]);
+        p.setNombre(nombres[pos]);
+        p.setApellido(apellidos[pos]);
+        p.setDni(dnis[pos]);
+        return p;
+    }
+
+    /**
+     * Orden de los resultados en un long (mayor = mejor): trigramas en común,
+     * luego nombres con menos trigramas (más cortos), luego posición más antigua.
+     */
+    private static long puntaje(int comunes, short trigramasNombre, int pos) {
+        return ((long) comunes << 48)
+                | ((long) (0xFFFF - trigramasNombre) << 32)
+                | (Integer.MAX_VALUE - pos);
+    }
+
+    private static int indiceDelMenor(long[] valores) {
+        int menor = 0;
+        for (int i = 1; i < valores.length; i++) {
+            if (valores[i] < valores[menor]) menor = i;
+        }
+        return menor;
+    }
+
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String sinTildes = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return NO_ALFANUMERICO.matcher(sinTildes.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Trigramas distintos (ordenados) de un texto ya normalizado.
+     *
+     * @param consulta true para no agregar el espacio final (cada palabra es un prefijo)
+     */
+    static int[] trigramas(String normalizado, boolean consulta) {
+        if (normalizado.isEmpty()) return new int[0];
+        String[] palabras = normalizado.split(" ");
+        int total = 0;
+        for (String palabra : palabras) total += palabra.length() + (consulta ? 0 : 1);
+        int[] codigos = new int[total];
+        int n = 0;
+        for (String palabra : palabras) {
+            String relleno = "  " + palabra + (consulta ? "" : " ");
+            for (int i = 0; i + 3 <= relleno.length(); i++) {
+                codigos[n++] = (codigo(relleno.charAt(i)) * ALFABETO + codigo(relleno.charAt(i + 1))) * ALFABETO
+                        + codigo(relleno.charAt(i + 2));
+            }
+        }
+        Arrays.sort(codigos, 0, n);
+        int distintos = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || codigos[i] != codigos[i - 1]) codigos[distintos++] = codigos[i];
+        }
+        return Arrays.copyOf(codigos, distintos);
+    }
+
+    private static int codigo(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a' + 1;
+        if (c >= '0' && c <= '9') return c - '0' + 27;
+        return 0;
+    }
+}
@@ -1,12 +1,25 @@
 package Service;
 
-import Config.DatabaseConnection;
+import Config.TransactionScope;
+import Dao.Lotes;
 import Dao.PacienteDAO;
+import Dao.SqlErrors;
+import Dao.VersionConflictException;
+import Metrics.MetricsGroup;
+import Metrics.MetricsRegistry;
 import Models.HistoriaClinica;
 import Models.Paciente;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Servicio de negocio para la entidad Paciente.
@@ -18,11 +31,50 @@ import java.util.List;
  * - Proveer métodos de búsqueda especializados.
  *
  * Patrón: Service Layer con manejo de transacciones JDBC.
+ *
+ * La unicidad del DNI se verifica con una consulta EXISTS, o solo con el índice
+ * único de dni si se ejecuta con -Ddb.uniqueCheck=index. La violación del índice
+ * se traduce al mismo IllegalArgumentException que la validación previa.
+ * Un DNI sigue reservado después de la baja lógica del paciente: el índice único
+ * incluye las filas eliminadas, y la consulta previa también las cuenta.
+ *
+ * Auditoría: las altas, modificaciones y bajas confirmadas (incluidas las historias
+ * insertadas junto con el paciente) se registran en {@link AuditJournal}.
+ *
+ * Búsqueda por nombre: {@link PacienteNameIndex} en memoria, actualizado en cada alta,
+ * modificación y baja de este servicio.
+ *
+ * Estadísticas: {@link AnalyticsSnapshot} (getAnalitica), copia por columnas que se
+ * actualiza por marca de agua y con los cambios confirmados de pacientes e historias.
+ *
+ * Concurrencia: actualizar falla con VersionConflictException si el paciente cambió desde
+ * que se leyó; actualizarConReintento reaplica los cambios sobre la versión actual.
  */
 public class PacienteServiceImpl implements GenericService<Paciente> {
 
+    /** false con -Ddb.uniqueCheck=index: se confía solo en el índice único */
+    private static final boolean UNIQUE_PROBE = !"index".equalsIgnoreCase(System.getProperty("db.uniqueCheck", "probe"));
+
+    private static final MetricsGroup METRICAS = MetricsRegistry.grupo("PacienteService");
+
+    /** Nombre de la entidad en el journal de auditoría */
+    private static final String ENTIDAD = "Paciente";
+
+    /** Intentos de actualizarConReintento antes de propagar el conflicto */
+    static final int MAX_INTENTOS_CONFLICTO = 3;
+
+    /** Búsqueda por nombre con el índice en memoria. Configurable via -Dpaciente.nameIndex */
+    private static final boolean INDICE_NOMBRES = Boolean.parseBoolean(System.getProperty("paciente.nameIndex", "true"));
+
     private final PacienteDAO pacienteDAO;
     private final HistoriaClinicaServiceImpl historiaClinicaService;
+    private final AuditJournal auditoria;
+
+    /** Índice de nombres (null con -Dpaciente.nameIndex=false) */
+    private final PacienteNameIndex indiceNombres;
+
+    /** Copia por columnas para estadísticas (se carga con la primera consulta) */
+    private final AnalyticsSnapshot analitica;
 
     public PacienteServiceImpl(PacienteDAO pacienteDAO, HistoriaClinicaServiceImpl historiaClinicaService) {
         if (pacienteDAO == null) {
@@ -33,94 +85,395 @@ public class PacienteServiceImpl implements GenericService<Paciente> {
         }
         this.pacienteDAO = pacienteDAO;
         this.historiaClinicaService = historiaClinicaService;
+        this.auditoria = AuditJournal.global();
+        this.indiceNombres = INDICE_NOMBRES ? new PacienteNameIndex() : null;
+        this.analitica = new AnalyticsSnapshot(pacienteDAO::getPagina, pacienteDAO::getByIds,
+                historiaClinicaService::getPagina, historiaClinicaService::getByIds);
+        historiaClinicaService.alConfirmarCambio(analitica::marcarHistoria);
     }
 
     /**
      * Inserta un nuevo paciente con su historia clínica de forma transaccional.
+     *
+     * Flujo (una sola conexión y un solo commit, con TransactionScope):
+     * 1. Validaciones y chequeos de unicidad ANTES de abrir la transacción
+     * 2. INSERT del paciente (obtiene su ID)
+     * 3. INSERT de la historia clínica con paciente_id ya asignado
+     *
+     * Al insertar primero el paciente la FK se completa en el mismo INSERT de la historia,
+     * sin un UPDATE posterior ni una segunda conexión fuera de la transacción.
+     * Si se llama dentro de otra transacción, se suma a ella.
      */
     @Override
     public void insertar(Paciente paciente) throws Exception {
-        validatePaciente(paciente);
-        validateDniUnique(paciente.getDni(), null);
+        METRICAS.medir("insertar", () -> {
+            validatePaciente(paciente);
+            validateDniUnique(paciente.getDni(), null);
+            HistoriaClinica hc = paciente.getHistoriaClinica();
+            if (hc != null) {
+                historiaClinicaService.validarAlta(hc);
+            }
 
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+            try {
+                TransactionScope.enTransaccion(() -> {
+                    // Paso 1: Insertar Paciente
+                    pacienteDAO.insertar(paciente);
 
-            // Paso 1: Insertar Historia Clínica si existe
-            if (paciente.getHistoriaClinica() != null) {
-                HistoriaClinica hc = paciente.getHistoriaClinica();
-                historiaClinicaService.insertTx(hc, conn);
-                paciente.setHistoriaClinica(hc); // con ID generado
-            }
+                    // Paso 2: Insertar Historia Clínica ya vinculada al paciente
+                    if (hc != null) {
+                        hc.setPacienteId((long) paciente.getId());
+                        historiaClinicaService.insertarValidada(hc);
+                    }
 
-            // Paso 2: Insertar Paciente
-            pacienteDAO.insertTx(paciente, conn);
+                    auditar(paciente, AuditJournal.ALTA);
+                    indexar(paciente);
+                });
+            } catch (Exception e) {
+                if (traducirDuplicado(e, paciente) instanceof IllegalArgumentException duplicado) throw duplicado;
+                throw new Exception("Error transaccional al insertar paciente y su historia clínica: " + e.getMessage(), e);
+            }
+        });
+    }
 
-            // Paso 3: Relacionar HC con Paciente (si aplica)
-            if (paciente.getHistoriaClinica() != null) {
-                paciente.getHistoriaClinica().setPacienteId((long) paciente.getId());
-                historiaClinicaService.actualizar(paciente.getHistoriaClinica());
+    /**
+     * Inserta muchos pacientes (y sus historias clínicas) con JDBC batch.
+     *
+     * - Valida el lote completo antes de escribir: datos obligatorios y DNI / número
+     *   de historia repetidos dentro del lote
+     * - Cada Lotes.TAMANIO pacientes se confirma en su propia transacción:
+     *   primero los pacientes, luego sus historias con paciente_id ya asignado
+     * - Los IDs generados quedan asignados en cada Paciente e HistoriaClinica
+     *
+     * Si un lote falla se revierte ese lote; los lotes anteriores ya quedaron confirmados.
+     */
+    @Override
+    public void insertarLote(List<Paciente> pacientes) throws Exception {
+        METRICAS.medir("insertarLote", () -> {
+            if (pacientes == null) {
+                throw new IllegalArgumentException("La lista de pacientes no puede ser null");
             }
+            Set<String> dnis = new HashSet<>();
+            List<HistoriaClinica> historias = new ArrayList<>();
+            for (Paciente paciente : pacientes) {
+                validatePaciente(paciente);
+                if (!dnis.add(paciente.getDni().trim())) {
+                    throw new IllegalArgumentException("El DNI está repetido en el lote: " + paciente.getDni());
+                }
+                if (paciente.getHistoriaClinica() != null) {
+                    historias.add(paciente.getHistoriaClinica());
+                }
+            }
+            historiaClinicaService.validateLote(historias);
+
+            try {
+                for (List<Paciente> lote : Lotes.partir(pacientes, Lotes.TAMANIO)) {
+                    TransactionScope.enTransaccion(() -> {
+                        Connection conn = TransactionScope.conexion();
+                        pacienteDAO.insertLoteTx(lote, conn);
 
-            conn.commit();
-        } catch (Exception e) {
-            if (conn != null) conn.rollback();
-            throw new Exception("Error transaccional al insertar paciente y su historia clínica: " + e.getMessage(), e);
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+                        List<HistoriaClinica> historiasLote = new ArrayList<>();
+                        for (Paciente paciente : lote) {
+                            HistoriaClinica hc = paciente.getHistoriaClinica();
+                            if (hc != null) {
+                                hc.setPacienteId((long) paciente.getId());
+                                historiasLote.add(hc);
+                            }
+                        }
+                        historiaClinicaService.insertLoteTx(historiasLote, conn);
+
+                        for (Paciente paciente : lote) {
+                            auditar(paciente, AuditJournal.ALTA);
+                            indexar(paciente);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                throw new Exception("Error transaccional al insertar lote de pacientes: " + e.getMessage(), e);
             }
-        }
+        });
     }
 
     @Override
     public void actualizar(Paciente paciente) throws Exception {
-        validatePaciente(paciente);
-        if (paciente.getId() <= 0) {
-            throw new IllegalArgumentException("El ID del paciente debe ser mayor a 0");
-        }
-        validateDniUnique(paciente.getDni(), paciente.getId());
-        pacienteDAO.actualizar(paciente);
+        METRICAS.medir("actualizar", () -> {
+            validatePaciente(paciente);
+            if (paciente.getId() <= 0) {
+                throw new IllegalArgumentException("El ID del paciente debe ser mayor a 0");
+            }
+            validateDniUnique(paciente.getDni(), paciente.getId());
+            try {
+                pacienteDAO.actualizar(paciente);
+            } catch (SQLException e) {
+                throw traducirDuplicado(e, paciente);
+            }
+            String detalle = paciente.toString();
+            TransactionScope.despuesDelCommit(() ->
+                    auditoria.registrar(ENTIDAD, paciente.getId(), AuditJournal.MODIFICACION, detalle));
+            indexar(paciente);
+        });
+    }
+
+    /**
+     * Actualiza el paciente y su historia clínica en una sola transacción (una conexión y un commit).
+     *
+     * Si cualquiera de los dos falla (validación, DNI o número duplicado, conflicto de versión)
+     * no se guarda ninguno, y las versiones de ambos objetos quedan como estaban.
+     */
+    public void actualizarConHistoria(Paciente paciente) throws Exception {
+        METRICAS.medir("actualizarConHistoria", () -> {
+            if (paciente == null) {
+                throw new IllegalArgumentException("El paciente no puede ser null");
+            }
+            HistoriaClinica hc = paciente.getHistoriaClinica();
+            if (hc == null) {
+                throw new IllegalArgumentException("El paciente no tiene historia clínica");
+            }
+            long versionPaciente = paciente.getVersion();
+            long versionHistoria = hc.getVersion();
+            try {
+                TransactionScope.enTransaccion(() -> {
+                    actualizar(paciente);
+                    historiaClinicaService.actualizar(hc);
+                });
+            } catch (Exception e) {
+                paciente.setVersion(versionPaciente);
+                hc.setVersion(versionHistoria);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Actualiza reaplicando los cambios si otro usuario modificó el paciente en el medio.
+     *
+     * Aplica {@code cambios} sobre el paciente recibido y lo guarda. Ante un conflicto de
+     * versión vuelve a leer el paciente, aplica los mismos cambios sobre lo leído y reintenta
+     * (hasta MAX_INTENTOS_CONFLICTO veces): los campos que {@code cambios} no toca conservan
+     * lo que guardó el otro usuario. Por eso los cambios deben ser asignaciones de valores
+     * (no cálculos sobre los valores leídos).
+     *
+     * @param paciente Paciente leído (con su versión)
+     * @param cambios Asignaciones de los campos modificados
+     * @return El paciente guardado; después de un reintento es otra instancia que la recibida
+     * @throws VersionConflictException Si el conflicto persiste en todos los intentos
+     */
+    public Paciente actualizarConReintento(Paciente paciente, Consumer<Paciente> cambios) throws Exception {
+        return METRICAS.medir("actualizarConReintento", () -> {
+            if (paciente == null) {
+                throw new IllegalArgumentException("El paciente no puede ser null");
+            }
+            if (cambios == null) {
+                throw new IllegalArgumentException("Los cambios no pueden ser null");
+            }
+            Paciente actual = paciente;
+            for (int intento = 1; ; intento++) {
+                cambios.accept(actual);
+                try {
+                    actualizar(actual);
+                    return actual;
+                } catch (VersionConflictException e) {
+                    if (intento == MAX_INTENTOS_CONFLICTO) throw e;
+                    actual = pacienteDAO.getById(paciente.getId());
+                    if (actual == null) {
+                        throw new IllegalArgumentException("El paciente id=" + paciente.getId() + " fue eliminado");
+                    }
+                }
+            }
+        });
     }
 
     @Override
     public void eliminar(int id) throws Exception {
-        if (id <= 0) {
-            throw new IllegalArgumentException("El ID debe ser mayor a 0");
-        }
-        pacienteDAO.eliminar(id);
+        METRICAS.medir("eliminar", () -> {
+            if (id <= 0) {
+                throw new IllegalArgumentException("El ID debe ser mayor a 0");
+            }
+            pacienteDAO.eliminar(id);
+            TransactionScope.despuesDelCommit(() -> {
+                auditoria.registrar(ENTIDAD, id, AuditJournal.BAJA, null);
+                if (indiceNombres != null) indiceNombres.eliminar(id);
+                analitica.marcarPaciente(id);
+            });
+        });
     }
 
     @Override
     public Paciente getById(int id) throws Exception {
-        if (id <= 0) {
-            throw new IllegalArgumentException("El ID debe ser mayor a 0");
-        }
-        return pacienteDAO.getById(id);
+        return METRICAS.medir("getById", () -> {
+            if (id <= 0) {
+                throw new IllegalArgumentException("El ID debe ser mayor a 0");
+            }
+            return pacienteDAO.getById(id);
+        });
+    }
+
+    /**
+     * Busca muchos registros por ID en pocas consultas.
+     * @return Encontrados por ID (los inexistentes no aparecen)
+     */
+    @Override
+    public Map<Integer, Paciente> getByIds(Collection<Integer> ids) throws Exception {
+        return METRICAS.medir("getByIds", () -> {
+            if (ids == null) {
+                throw new IllegalArgumentException("La lista de IDs no puede ser null");
+            }
+            for (Integer id : ids) {
+                if (id == null || id <= 0) {
+                    throw new IllegalArgumentException("El ID debe ser mayor a 0");
+                }
+            }
+            return pacienteDAO.getByIds(ids);
+        });
     }
 
     @Override
     public List<Paciente> getAll() throws Exception {
-        return pacienteDAO.getAll();
+        return METRICAS.medir("getAll", () -> {
+            return pacienteDAO.getAll();
+        });
+    }
+
+    /**
+     * Página de hasta 'limite' registros con id mayor a 'despuesDeId' (paginación por clave).
+     * Para la primera página usar despuesDeId = 0; para la siguiente, el id del último recibido.
+     */
+    @Override
+    public List<Paciente> getPagina(int despuesDeId, int limite) throws Exception {
+        return METRICAS.medir("getPagina", () -> {
+            if (despuesDeId < 0) {
+                throw new IllegalArgumentException("El ID de referencia no puede ser negativo");
+            }
+            if (limite <= 0 || limite > MAX_PAGINA) {
+                throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGINA);
+            }
+            return pacienteDAO.getPagina(despuesDeId, limite);
+        });
+    }
+
+    /**
+     * Pacientes activos con id en (despuesDeId, hastaId], ordenados por id.
+     * Usado por la exportación, que lee rangos disjuntos en paralelo.
+     */
+    public List<Paciente> getRango(int despuesDeId, int hastaId) throws Exception {
+        return METRICAS.medir("getRango", () -> {
+            if (despuesDeId < 0) {
+                throw new IllegalArgumentException("El ID de referencia no puede ser negativo");
+            }
+            if (hastaId <= despuesDeId) {
+                throw new IllegalArgumentException("El rango de IDs está vacío");
+            }
+            return pacienteDAO.getRango(despuesDeId, hastaId);
+        });
+    }
+
+    /**
+     * Menor y mayor id de los pacientes activos ({min, max}), o null si no hay ninguno.
+     */
+    public int[] getRangoIds() throws Exception {
+        return METRICAS.medir("getRangoIds", () -> {
+            return pacienteDAO.getRangoIds();
+        });
+    }
+
+    /**
+     * Recorre todos los registros activos sin cargarlos en memoria.
+     * El caller debe cerrar el Stream (try-with-resources) para liberar la conexión.
+     */
+    @Override
+    public Stream<Paciente> stream() throws Exception {
+        return METRICAS.medir("stream", () -> {
+            return pacienteDAO.stream();
+        });
+    }
+
+    /**
+     * Búsqueda aproximada por nombre y/o apellido (type-ahead): "gonz", "perez ju", "gonzales".
+     *
+     * Con el índice cargado no accede a la base: devuelve los más parecidos primero, con
+     * id, nombre, apellido y DNI (usar getById para el detalle). La primera búsqueda inicia
+     * la carga del índice en segundo plano; mientras tanto (o con -Dpaciente.nameIndex=false)
+     * se busca en la base por prefijo del nombre completo, en orden alfabético.
+     *
+     * @param limite Cantidad máxima de resultados, entre 1 y PacienteNameIndex.MAX_RESULTADOS
+     */
+    public List<Paciente> buscarPorNombre(String texto, int limite) throws Exception {
+        return METRICAS.medir("buscarPorNombre", () -> {
+            if (texto == null || texto.trim().isEmpty()) {
+                throw new IllegalArgumentException("El texto a buscar no puede estar vacío");
+            }
+            if (limite <= 0 || limite > PacienteNameIndex.MAX_RESULTADOS) {
+                throw new IllegalArgumentException("La cantidad de resultados debe estar entre 1 y " + PacienteNameIndex.MAX_RESULTADOS);
+            }
+            if (indiceNombres != null) {
+                if (indiceNombres.isListo()) {
+                    return indiceNombres.buscar(texto, limite);
+                }
+                indiceNombres.cargarEnSegundoPlano(pacienteDAO::streamResumen);
+            }
+            return pacienteDAO.buscarPorNombre(texto, limite);
+        });
     }
 
     /**
      * Busca paciente por DNI exacto.
      */
     public Paciente buscarPorDni(String dni) throws Exception {
-        if (dni == null || dni.trim().isEmpty()) {
-            throw new IllegalArgumentException("El DNI no puede estar vacío");
-        }
-        return pacienteDAO.buscarPorDni(dni);
+        return METRICAS.medir("buscarPorDni", () -> {
+            if (dni == null || dni.trim().isEmpty()) {
+                throw new IllegalArgumentException("El DNI no puede estar vacío");
+            }
+            return pacienteDAO.buscarPorDni(dni);
+        });
+    }
+
+    /**
+     * Busca muchos pacientes por DNI en pocas consultas (en lugar de una conexión por DNI).
+     * @return Pacientes encontrados, con la clave tal como vino en la colección
+     */
+    public Map<String, Paciente> buscarPorDnis(Collection<String> dnis) throws Exception {
+        return METRICAS.medir("buscarPorDnis", () -> {
+            if (dnis == null) {
+                throw new IllegalArgumentException("La lista de DNIs no puede ser null");
+            }
+            for (String dni : dnis) {
+                if (dni == null || dni.trim().isEmpty()) {
+                    throw new IllegalArgumentException("El DNI no puede estar vacío");
+                }
+            }
+            return pacienteDAO.buscarPorDnis(dnis);
+        });
+    }
+
+    /**
+     * DNIs, de los recibidos, que ya usa un paciente, activo o dado de baja (importaciones):
+     * el DNI sigue reservado después de la baja lógica.
+     * Con -Ddb.uniqueCheck=index no consulta: decide el índice único al insertar.
+     */
+    public Set<String> dnisExistentes(Collection<String> dnis) throws Exception {
+        return METRICAS.medir("dnisExistentes", () -> {
+            if (dnis == null) {
+                throw new IllegalArgumentException("La lista de DNIs no puede ser null");
+            }
+            return UNIQUE_PROBE ? pacienteDAO.dnisExistentes(dnis) : new HashSet<>();
+        });
     }
 
     // ============================================================
     //  VALIDACIONES DE NEGOCIO
     // ============================================================
 
+    /**
+     * Validaciones de datos del alta de un paciente y su historia, sin consultar la base
+     * (las mismas que insertar e insertarLote, sin la unicidad). No usa estado: se puede
+     * llamar desde varios hilos a la vez.
+     */
+    public void validarDatos(Paciente paciente) {
+        validatePaciente(paciente);
+        if (paciente.getHistoriaClinica() != null) {
+            historiaClinicaService.validateLote(List.of(paciente.getHistoriaClinica()));
+        }
+    }
+
     private void validatePaciente(Paciente paciente) {
         if (paciente == null) {
             throw new IllegalArgumentException("El paciente no puede ser null");
@@ -136,15 +489,45 @@ public class PacienteServiceImpl implements GenericService<Paciente> {
         }
     }
 
+    /**
+     * Garantiza que el DNI sea único entre todos los pacientes, incluidos los dados de baja:
+     * el DNI sigue reservado después de la baja lógica (el índice único incluye esas filas).
+     * Usa una consulta EXISTS (sin el JOIN a historia_clinica); con -Ddb.uniqueCheck=index no consulta.
+     */
     private void validateDniUnique(String dni, Integer pacienteId) throws Exception {
-        Paciente existente = pacienteDAO.buscarPorDni(dni);
-        if (existente != null) {
-            if (pacienteId == null || existente.getId() != pacienteId) {
-                throw new IllegalArgumentException("Ya existe un paciente con el DNI: " + dni);
-            }
+        if (!UNIQUE_PROBE) {
+            return;
+        }
+        if (pacienteDAO.existeDni(dni, pacienteId == null ? 0 : pacienteId)) {
+            throw new IllegalArgumentException("Ya existe un paciente con el DNI: " + dni);
         }
     }
 
+    /**
+     * Traduce violaciones de los índices únicos (dni, nro_historia) a los mensajes de negocio.
+     * Cualquier otro error se devuelve sin cambios.
+     */
+    private Exception traducirDuplicado(Exception e, Paciente paciente) {
+        if (e instanceof IllegalArgumentException) {
+            return e;
+        }
+        if (SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_DNI)) {
+            return new IllegalArgumentException("Ya existe un paciente con el DNI: " + paciente.getDni(), e);
+        }
+        if (paciente.getHistoriaClinica() != null) {
+            return historiaClinicaService.traducirDuplicado(e, paciente.getHistoriaClinica());
+        }
+        return e;
+    }
+
+    /**
+     * Copia por columnas de pacientes e historias para estadísticas
+     * (conteos por grupo sanguíneo, franjas etarias, medicación).
+     */
+    public AnalyticsSnapshot getAnalitica() {
+        return analitica;
+    }
+
     /**
      * Retorna el servicio de Historia Clínica asociado a este servicio de Paciente.
      * Permite acceder a las operaciones de historia clínica desde el menú principal.
@@ -152,4 +535,24 @@ public class PacienteServiceImpl implements GenericService<Paciente> {
     public HistoriaClinicaServiceImpl getHistoriaClinicaService() {
         return historiaClinicaService;
     }
+
+    /**
+     * Registra el alta del paciente y, si la tiene, la de su historia clínica
+     * (después del commit si hay una transacción en curso).
+     */
+    private void auditar(Paciente paciente, String operacion) {
+        String detalle = paciente.toString();
+        TransactionScope.despuesDelCommit(() -> auditoria.registrar(ENTIDAD, paciente.getId(), operacion, detalle));
+        if (paciente.getHistoriaClinica() != null) {
+            historiaClinicaService.auditar(paciente.getHistoriaClinica(), operacion);
+        }
+    }
+
+    /**
+     * Mantiene al día el índice de nombres y la copia para estadísticas (después del commit).
+     */
+    private void indexar(Paciente paciente) {
+        if (indiceNombres != null) TransactionScope.despuesDelCommit(() -> indiceNombres.guardar(paciente));
+        TransactionScope.despuesDelCommit(() -> analitica.marcarPaciente(paciente.getId()));
+    }
 }
@@ -0,0 +1,227 @@
+package Service;
+
+import Config.ConnectionPool;
+import Config.DatabaseConnection;
+import Config.ReplicaRouter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecuta llamadas a los servicios de forma concurrente, un hilo por solicitud.
+ *
+ * Modelo de hilos:
+ * - En Java 21+ cada solicitud corre en un hilo virtual (Executors.newVirtualThreadPerTaskExecutor)
+ * - En Java 17 se usa un pool fijo de hilos de plataforma del mismo tamaño que el límite de concurrencia
+ *
+ * Límite de concurrencia:
+ * - Un semáforo del tamaño del pool de conexiones limita las solicitudes que usan la base a la vez
+ * - Las demás esperan estacionadas (baratas en hilos virtuales) en lugar de agotar el
+ *   timeout de adquisición del pool
+ *
+ * Timeouts y cancelación:
+ * - ejecutar() espera como máximo el timeout indicado y luego cancela la tarea (interrupt)
+ * - La interrupción corta la espera del semáforo y de ConnectionPool.getConnection()
+ * - Una lectura de socket JDBC en curso no es interrumpible: para acotarla usar
+ *   socketTimeout en la URL de MySQL (la conexión rota se descarta al volver al pool)
+ *
+ * Hilos virtuales y el driver: el pool (Semaphore) y las cachés (ReentrantLock) no fijan el
+ * hilo virtual a su portador, pero mysql-connector-j 8.x hace la E/S de socket dentro de un
+ * bloque synchronized sobre la conexión. En Java 21 cada consulta en curso ocupa entonces un
+ * hilo portador hasta que responde la base. Por eso, con hilos virtuales, el límite por defecto
+ * no supera la cantidad de portadores: si todos quedaran fijados esperando a MySQL, los demás
+ * hilos virtuales (incluidos los del servidor HTTP) no podrían avanzar.
+ *
+ * Configuración:
+ * - -Dservice.maxConcurrent (por defecto: tamaño máximo del pool de conexiones, o 10; con hilos
+ *   virtuales, como mucho la cantidad de hilos portadores)
+ * - -Dservice.timeoutMs (por defecto 10000)
+ */
+public final class RequestExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permisos;
+    private final int maxConcurrentes;
+    private final long timeoutMs;
+
+    /**
+     * @param maxConcurrentes Solicitudes que pueden usar la base al mismo tiempo
+     * @param timeoutMs Timeout por defecto de ejecutar()
+     */
+    public RequestExecutor(int maxConcurrentes, long timeoutMs) {
+        if (maxConcurrentes <= 0) {
+            throw new IllegalArgumentException("La concurrencia máxima debe ser mayor a 0");
+        }
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("El timeout debe ser mayor a 0");
+        }
+        this.maxConcurrentes = maxConcurrentes;
+        this.timeoutMs = timeoutMs;
+        this.permisos = new Semaphore(maxConcurrentes, true);
+
+        this.executor = nuevoExecutorPorTarea(maxConcurrentes, "request");
+        this.virtual = !(executor instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Crea el executor con los límites -Dservice.* y el tamaño del pool de conexiones.
+     * Con hilos virtuales el límite por defecto se acota a los hilos portadores (ver la
+     * documentación de la clase).
+     */
+    public static RequestExecutor desdeConfiguracion() {
+        ConnectionPool pool = DatabaseConnection.getPool();
+        int porDefecto = pool != null ? pool.getMaxSize() : 10;
+        if (hayHilosVirtuales()) {
+            porDefecto = Math.min(porDefecto, hilosPortadores());
+        }
+        return new RequestExecutor(
+                Integer.getInteger("service.maxConcurrent", porDefecto),
+                Long.getLong("service.timeoutMs", 10_000L));
+    }
+
+    /**
+     * Envía una tarea sin esperar su resultado.
+     * La tarea espera un permiso de concurrencia antes de ejecutarse, y comparte la
+     * solicitud del hilo que la envía (ver ReplicaRouter.propagar).
+     */
+    public <T> Future<T> submit(Callable<T> tarea) {
+        Callable<T> enSolicitud = ReplicaRouter.propagar(tarea);
+        return executor.submit(() -> {
+            permisos.acquire();
+            try {
+                return enSolicitud.call();
+            } finally {
+                permisos.release();
+            }
+        });
+    }
+
+    /**
+     * Ejecuta la tarea y espera su resultado con el timeout por defecto.
+     */
+    public <T> T ejecutar(Callable<T> tarea) throws Exception {
+        return ejecutar(tarea, timeoutMs);
+    }
+
+    /**
+     * Ejecuta la tarea y espera su resultado.
+     * Las excepciones de la tarea se relanzan tal cual (sin envolver en ExecutionException).
+     *
+     * @throws TimeoutException Si la tarea no terminó a tiempo (la tarea se cancela)
+     */
+    public <T> T ejecutar(Callable<T> tarea, long timeoutMs) throws Exception {
+        Future<T> future = submit(tarea);
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TimeoutException("La operación superó el timeout de " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (CancellationException e) {
+            throw new TimeoutException("La operación fue cancelada");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof Exception ex) throw ex;
+            if (causa instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    /** true si las solicitudes corren en hilos virtuales */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrentes() {
+        return maxConcurrentes;
+    }
+
+    /** Solicitudes usando la base en este momento */
+    public int getEnCurso() {
+        return maxConcurrentes - permisos.availablePermits();
+    }
+
+    /** Solicitudes esperando un permiso de concurrencia (estimado) */
+    public int getEnEspera() {
+        return permisos.getQueueLength();
+    }
+
+    /**
+     * Deja de aceptar tareas y espera hasta el timeout a que terminen las que están en curso.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executor de un hilo virtual por tarea (Java 21+) o, si la JVM no tiene hilos virtuales,
+     * un pool fijo de hilos de plataforma daemon.
+     *
+     * @param hilosPlataforma Tamaño del pool fijo cuando no hay hilos virtuales
+     * @param prefijo Prefijo del nombre de los hilos de plataforma
+     */
+    public static ExecutorService nuevoExecutorPorTarea(int hilosPlataforma, String prefijo) {
+        ExecutorService virtualExecutor = crearExecutorVirtual();
+        if (virtualExecutor != null) {
+            return virtualExecutor;
+        }
+        AtomicInteger contador = new AtomicInteger();
+        return Executors.newFixedThreadPool(hilosPlataforma, r -> {
+            Thread t = new Thread(r, prefijo + "-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /* helpers */
+
+    /** true si la JVM tiene hilos virtuales (Java 21+) */
+    private static boolean hayHilosVirtuales() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Hilos portadores del planificador de hilos virtuales: -Djdk.virtualThreadScheduler.parallelism,
+     * o la cantidad de procesadores.
+     */
+    private static int hilosPortadores() {
+        int procesadores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.getInteger("jdk.virtualThreadScheduler.parallelism", procesadores));
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() por reflexión, para compilar con Java 17.
+     * @return El executor, o null si la JVM no tiene hilos virtuales
+     */
+    private static ExecutorService crearExecutorVirtual() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
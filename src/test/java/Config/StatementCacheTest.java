@@ -0,0 +1,70 @@
+package Config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementCacheTest {
+
+    private static final String SQL = "SELECT n FROM (VALUES (1), (2), (3)) AS t(n) WHERE n >= ? ORDER BY n";
+
+    private Connection fisica;
+    private StatementCache cache;
+
+    @BeforeEach
+    void abrir() throws Exception {
+        fisica = DriverManager.getConnection(System.getProperty("db.url"),
+                System.getProperty("db.user"), System.getProperty("db.password"));
+        cache = new StatementCache(4);
+    }
+
+    @AfterEach
+    void cerrar() throws Exception {
+        fisica.close();
+    }
+
+    @Test
+    void cerrarElStatementCierraSuResultSetAbierto() throws Exception {
+        PreparedStatement stmt = cache.prepare(fisica, fisica, SQL, Statement.NO_GENERATED_KEYS);
+        stmt.setInt(1, 1);
+        ResultSet rs = stmt.executeQuery();
+        assertTrue(rs.next());
+
+        stmt.close();   // sin cerrar antes el ResultSet
+
+        assertTrue(rs.isClosed());
+    }
+
+    @Test
+    void elResultSetDevuelveElProxyYNoElStatementFisico() throws Exception {
+        PreparedStatement stmt = cache.prepare(fisica, fisica, SQL, Statement.NO_GENERATED_KEYS);
+        stmt.setInt(1, 1);
+        try (ResultSet rs = stmt.executeQuery()) {
+            assertSame(stmt, rs.getStatement());
+            // Cerrar por el ResultSet devuelve el statement al caché en lugar de cerrarlo de verdad
+            rs.getStatement().close();
+        }
+        long aciertos = StatementCache.getTotalHits();
+
+        PreparedStatement reusado = cache.prepare(fisica, fisica, SQL, Statement.NO_GENERATED_KEYS);
+        assertEquals(aciertos + 1, StatementCache.getTotalHits());
+        reusado.setInt(1, 3);
+        try (ResultSet rs = reusado.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+            assertFalse(rs.next());
+        }
+        reusado.close();
+    }
+}
@@ -0,0 +1,67 @@
+package Config;
+
+import Dao.HistoriaClinicaDAO;
+import Dao.PacienteDAO;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.HistoriaClinicaServiceImpl;
+import Service.PacienteServiceImpl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Base embebida (H2 en modo MySQL) de las pruebas.
+ *
+ * La URL llega por -Ddb.url desde el bloque test de build.gradle, igual que en los
+ * benchmarks: los DAOs y DatabaseConnection se prueban sin cambios.
+ */
+public final class TestDatabase {
+
+    private static final String[] DROP = {
+            "DROP TABLE IF EXISTS auditoria_cambio",
+            "DROP TABLE IF EXISTS historia_clinica",
+            "DROP TABLE IF EXISTS paciente",
+            "DROP TABLE IF EXISTS schema_version"
+    };
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Borra las tablas y las recrea vacías con SchemaMigrator (mismo esquema e índices que producción).
+     */
+    public static void recrear() throws Exception {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement()) {
+            for (String sql : DROP) st.execute(sql);
+        }
+        SchemaMigrator.migrar();
+    }
+
+    public static PacienteServiceImpl crearServicio() {
+        HistoriaClinicaDAO hcDAO = new HistoriaClinicaDAO();
+        return new PacienteServiceImpl(new PacienteDAO(hcDAO), new HistoriaClinicaServiceImpl(hcDAO));
+    }
+
+    public static HistoriaClinica historia(String nroHistoria) {
+        HistoriaClinica hc = new HistoriaClinica();
+        hc.setNroHistoria(nroHistoria);
+        hc.setGrupoSanguineo(GrupoSanguineo.A_POSITIVO);
+        hc.setAntecedentes("Sin antecedentes");
+        hc.setObservaciones("Control anual");
+        return hc;
+    }
+
+    public static Paciente paciente(String dni, String nroHistoria) {
+        Paciente p = new Paciente();
+        p.setNombre("Nombre " + dni);
+        p.setApellido("Apellido " + dni);
+        p.setDni(dni);
+        p.setFechaNacimiento(LocalDate.of(1980, 5, 17));
+        p.setHistoriaClinica(historia(nroHistoria));
+        return p;
+    }
+}
@@ -0,0 +1,55 @@
+package Dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlErrorsTest {
+
+    private static SQLException duplicadoMySql(String clave) {
+        return new SQLIntegrityConstraintViolationException(
+                "Duplicate entry 'X-1' for key '" + clave + "'", "23000", 1062);
+    }
+
+    @Test
+    void reconoceElIndiceDelMigradorConNombreDeTabla() {
+        // MySQL 8 informa tabla.índice
+        SQLException e = duplicadoMySql("historia_clinica.uk_historia_nro");
+        assertTrue(SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_NRO_HISTORIA));
+        assertFalse(SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_DNI));
+    }
+
+    @Test
+    void reconoceElIndiceSinNombreDeTabla() {
+        // MySQL 5.7 informa solo el índice
+        SQLException e = duplicadoMySql("uk_paciente_dni");
+        assertTrue(SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_DNI));
+        assertFalse(SqlErrors.esClaveDuplicada(e, SqlErrors.INDICES_NRO_HISTORIA));
+    }
+
+    @Test
+    void reconoceLosIndicesDelScriptDelReadme() {
+        // UNIQUE en la columna: MySQL nombra el índice como la columna
+        assertTrue(SqlErrors.esClaveDuplicada(duplicadoMySql("paciente.dni"), SqlErrors.INDICES_DNI));
+        assertTrue(SqlErrors.esClaveDuplicada(duplicadoMySql("historia_clinica.nro_historia"), SqlErrors.INDICES_NRO_HISTORIA));
+    }
+
+    @Test
+    void ignoraOtrosIndicesYOtrosErrores() {
+        assertFalse(SqlErrors.esClaveDuplicada(duplicadoMySql("auditoria_cambio.uk_auditoria_segmento_secuencia"),
+                SqlErrors.INDICES_DNI));
+        assertFalse(SqlErrors.esClaveDuplicada(duplicadoMySql("PRIMARY"), SqlErrors.INDICES_NRO_HISTORIA));
+        assertFalse(SqlErrors.esClaveDuplicada(new SQLException("Data too long for column 'dni'", "22001", 1406),
+                SqlErrors.INDICES_DNI));
+    }
+
+    @Test
+    void buscaLaCausaEnLaCadena() {
+        Exception envuelta = new RuntimeException(duplicadoMySql("historia_clinica.uk_historia_nro"));
+        assertTrue(SqlErrors.esClaveDuplicada(envuelta, SqlErrors.INDICES_NRO_HISTORIA));
+    }
+}
@@ -0,0 +1,184 @@
+package Main;
+
+import Config.TestDatabase;
+import Models.GrupoSanguineo;
+import Models.HistoriaClinica;
+import Models.Paciente;
+import Service.PacienteServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RegistryImporterTest {
+
+    @TempDir
+    Path directorio;
+
+    // =====================================
+    //  LectorCsv
+    // =====================================
+
+    @Test
+    void camposEntreComillasConSeparadoresYSaltosDeLinea() throws Exception {
+        List<RegistryImporter.Fila> filas = leer("a,\"b,c\",\"d\ne\"\nf,,g\n", 1 << 20);
+
+        assertArrayEquals(new String[]{"a", "b,c", "d\ne"}, filas.get(0).campos);
+        assertArrayEquals(new String[]{"f", "", "g"}, filas.get(1).campos);
+        // La segunda fila empieza en la línea 3: el salto entre comillas también cuenta
+        assertEquals(1, filas.get(0).linea);
+        assertEquals(3, filas.get(1).linea);
+    }
+
+    @Test
+    void comillasEscapadas() throws Exception {
+        List<RegistryImporter.Fila> filas = leer("\"dijo \"\"hola\"\"\",\"\"\"\",x\n", 1 << 20);
+
+        assertArrayEquals(new String[]{"dijo \"hola\"", "\"", "x"}, filas.get(0).campos);
+    }
+
+    @Test
+    void finesDeLineaCrLfYUltimaFilaSinSalto() throws Exception {
+        List<RegistryImporter.Fila> filas = leer("a,b\r\n\"c\",d\r\ne,f", 1 << 20);
+
+        assertEquals(3, filas.size());
+        assertArrayEquals(new String[]{"a", "b"}, filas.get(0).campos);
+        assertArrayEquals(new String[]{"c", "d"}, filas.get(1).campos);
+        assertArrayEquals(new String[]{"e", "f"}, filas.get(2).campos);
+    }
+
+    @Test
+    void ignoraElBomDeUtf8() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+        bytes.write("dni,nombre\n1,Año\n".getBytes(StandardCharsets.UTF_8));
+        Path archivo = directorio.resolve("bom.csv");
+        Files.write(archivo, bytes.toByteArray());
+
+        List<RegistryImporter.Fila> filas = leer(archivo, 1 << 20);
+
+        assertArrayEquals(new String[]{"dni", "nombre"}, filas.get(0).campos);
+        assertArrayEquals(new String[]{"1", "Año"}, filas.get(1).campos);
+    }
+
+    @Test
+    void registrosQueCruzanElFinalDeLaVentana() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        List<String[]> esperadas = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // Largos distintos, con comillas, saltos y caracteres de varios bytes
+            String[] campos = {Integer.toString(i), "Peña " + "ñ".repeat(i % 7), "x, \"y\"\r\nz".substring(0, 1 + i % 9)};
+            esperadas.add(campos);
+            for (int c = 0; c < campos.length; c++) {
+                if (c > 0) csv.append(',');
+                csv.append(RegistryExporter.campoCsv(new StringBuffer(), campos[c]));
+            }
+            csv.append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        List<RegistryImporter.Fila> filas = leer(csv.toString(), 48);
+
+        assertEquals(esperadas.size(), filas.size());
+        for (int i = 0; i < esperadas.size(); i++) {
+            assertArrayEquals(esperadas.get(i), filas.get(i).campos, "fila " + i);
+        }
+    }
+
+    @Test
+    void unaFilaMasGrandeQueLaVentanaEsUnError() {
+        IOException e = assertThrows(IOException.class, () -> leer("a,b\n" + "x".repeat(100) + "\n", 32));
+        assertEquals("La fila de la línea 2 supera el tamaño de ventana (32 bytes)", e.getMessage());
+    }
+
+    @Test
+    void comillasSinCerrarAlFinalDelArchivoSonUnError() {
+        IOException e = assertThrows(IOException.class, () -> leer("a,\"b\nc\n", 1 << 20));
+        assertEquals("Comillas sin cerrar en la fila de la línea 1", e.getMessage());
+    }
+
+    // =====================================
+    //  Exportar e importar
+    // =====================================
+
+    @Test
+    void loExportadoSeVuelveAImportarSinCambios() throws Exception {
+        TestDatabase.recrear();
+        PacienteServiceImpl servicio = TestDatabase.crearServicio();
+        List<Paciente> originales = new ArrayList<>();
+        for (int i = 1; i <= 120; i++) {
+            Paciente p = TestDatabase.paciente("DNI" + i, "HC-" + i);
+            p.setNombre(i % 3 == 0 ? "José \"Pepe\"" : "Nombre" + i);
+            p.setApellido(i % 4 == 0 ? "Pérez, hijo" : "Apellido" + i);
+            HistoriaClinica hc = p.getHistoriaClinica();
+            hc.setGrupoSanguineo(GrupoSanguineo.values()[i % GrupoSanguineo.values().length]);
+            hc.setAntecedentes(i % 5 == 0 ? "Asma\r\nAlergia a la penicilina" : "Sin antecedentes");
+            hc.setMedaicacionActual(i % 2 == 0 ? null : "Ibuprofeno 400mg");
+            originales.add(p);
+        }
+        Paciente sinHistoria = TestDatabase.paciente("DNI-SIN-HC", null);
+        sinHistoria.setHistoriaClinica(null);
+        sinHistoria.setFechaNacimiento(LocalDate.of(2001, 2, 3));
+        originales.add(sinHistoria);
+        servicio.insertarLote(originales);
+
+        Path archivo = directorio.resolve("padron.csv");
+        RegistryExporter exportador = new RegistryExporter(servicio::getRangoIds, servicio::getRango, 3, 25, 4096);
+        assertEquals(originales.size(), exportador.exportar(archivo).getFilas());
+
+        TestDatabase.recrear();
+        PacienteServiceImpl destino = TestDatabase.crearServicio();
+        RegistryImporter.Resultado resultado = new RegistryImporter(destino, 50, 1024).importar(archivo);
+
+        assertEquals(originales.size(), resultado.getLeidas());
+        assertEquals(originales.size(), resultado.getImportadas());
+        assertEquals(0, resultado.getRechazadas());
+        assertNull(resultado.getRechazos());
+        for (Paciente original : originales) {
+            Paciente importado = destino.buscarPorDni(original.getDni());
+            assertNotNull(importado, original.getDni());
+            assertEquals(descripcion(original), descripcion(importado));
+        }
+    }
+
+    /* helpers */
+
+    private List<RegistryImporter.Fila> leer(String contenido, int ventanaBytes) throws IOException {
+        Path archivo = directorio.resolve("lector.csv");
+        Files.writeString(archivo, contenido, StandardCharsets.UTF_8);
+        return leer(archivo, ventanaBytes);
+    }
+
+    private static List<RegistryImporter.Fila> leer(Path archivo, int ventanaBytes) throws IOException {
+        List<RegistryImporter.Fila> filas = new ArrayList<>();
+        try (RegistryImporter.LectorCsv lector = new RegistryImporter.LectorCsv(archivo, ventanaBytes)) {
+            RegistryImporter.Fila fila;
+            while ((fila = lector.siguiente()) != null) filas.add(fila);
+        }
+        return filas;
+    }
+
+    /** Los campos que viajan en el CSV (sin ids ni versiones) */
+    private static String descripcion(Paciente p) {
+        HistoriaClinica hc = p.getHistoriaClinica();
+        List<Object> campos = new ArrayList<>(Arrays.asList(p.getNombre(), p.getApellido(), p.getDni(), p.getFechaNacimiento()));
+        if (hc != null) {
+            campos.addAll(Arrays.asList(hc.getNroHistoria(), hc.getGrupoSanguineo(), hc.getAntecedentes(),
+                    hc.getMedaicacionActual(), hc.getObservaciones()));
+        }
+        return campos.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package Service;
+
+import Config.TestDatabase;
+import Config.TransactionScope;
+import Dao.HistoriaClinicaDAO;
+import Dao.PacienteDAO;
+import Models.Paciente;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncClinicaServiceTest {
+
+    /** Retiene las lecturas por id hasta liberar(): así el único hilo y la cola quedan ocupados */
+    private final CountDownLatch liberar = new CountDownLatch(1);
+
+    /** Hilo en el que corrió la última búsqueda por DNI */
+    private final AtomicReference<Thread> hiloBusqueda = new AtomicReference<>();
+
+    private PacienteServiceImpl servicio;
+    private AsyncClinicaService async;
+
+    @BeforeEach
+    void crearServicio() throws Exception {
+        TestDatabase.recrear();
+        HistoriaClinicaDAO hcDAO = new HistoriaClinicaDAO();
+        servicio = new PacienteServiceImpl(new PacienteDAO(hcDAO), new HistoriaClinicaServiceImpl(hcDAO)) {
+            @Override
+            public Paciente getById(int id) throws Exception {
+                liberar.await(10, TimeUnit.SECONDS);
+                return super.getById(id);
+            }
+
+            @Override
+            public Paciente buscarPorDni(String dni) throws Exception {
+                hiloBusqueda.set(Thread.currentThread());
+                return super.buscarPorDni(dni);
+            }
+        };
+        async = new AsyncClinicaService(servicio, 1, 1);
+    }
+
+    @AfterEach
+    void cerrar() {
+        liberar.countDown();
+        async.close();
+    }
+
+    @Test
+    void lasBusquedasIndependientesSeCombinan() throws Exception {
+        Paciente p = TestDatabase.paciente("40111222", "HC-1");
+        servicio.insertar(p);
+        liberar.countDown();
+
+        String resultado = async.getPaciente(p.getId())
+                .thenCombine(async.buscarHistoriaPorNro("HC-1"), (paciente, hc) -> paciente.getDni() + "/" + hc.getNroHistoria())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals("40111222/HC-1", resultado);
+    }
+
+    @Test
+    void lasExcepcionesDelServicioLleganComoCausa() {
+        liberar.countDown();
+        CompletionException e = assertThrows(CompletionException.class, () -> async.getPaciente(0).join());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    void conLaColaLlenaLaTareaCorreEnElHiloQueLaEnvia() throws Exception {
+        llenarHiloYCola();
+
+        CompletableFuture<Paciente> enLlamador = async.buscarPacientePorDni("1");
+
+        // Contrapresión: corrió en este hilo y el future ya está completo
+        assertTrue(enLlamador.isDone());
+        assertSame(Thread.currentThread(), hiloBusqueda.get());
+        assertNull(enLlamador.join());
+    }
+
+    @Test
+    void closeTerminaLasTareasEncoladasYRechazaLasNuevas() throws Exception {
+        CompletableFuture<Paciente> enCurso = async.getPaciente(1);
+        Condiciones.esperarHasta(() -> async.getActivas() == 1);
+        CompletableFuture<Paciente> encolada = async.getPaciente(2);
+
+        Thread cierre = new Thread(async::close);
+        cierre.start();
+        Condiciones.esperarHasta(() -> cierre.getState() != Thread.State.RUNNABLE);
+        liberar.countDown();
+        cierre.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Lo aceptado antes de close() se completa (ids inexistentes: null)
+        assertNull(enCurso.get(1, TimeUnit.SECONDS));
+        assertNull(encolada.get(1, TimeUnit.SECONDS));
+
+        // Lo nuevo termina con RejectedExecutionException en lugar de quedar sin completar
+        CompletableFuture<Paciente> despues = async.buscarPacientePorDni("1");
+        assertTrue(despues.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, despues::join);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertNull(hiloBusqueda.get());
+    }
+
+    @Test
+    void conLaColaLlenaLaTareaCorreEnElLlamadorFueraDeSuTransaccion() throws Exception {
+        llenarHiloYCola();
+        Paciente p = TestDatabase.paciente("40111222", "HC-1");
+
+        AtomicReference<CompletableFuture<Paciente>> enLlamador = new AtomicReference<>();
+        assertThrows(IllegalStateException.class, () -> TransactionScope.enTransaccion(() -> {
+            enLlamador.set(async.insertarPaciente(p));
+            // Corrió en este hilo antes de devolver el future
+            assertTrue(enLlamador.get().isDone());
+            throw new IllegalStateException("rollback de la transacción del llamador");
+        }));
+
+        // El rollback del llamador no deshace la tarea: tuvo su propia transacción
+        assertEquals(p, enLlamador.get().join());
+        assertNotNull(servicio.buscarPorDni("40111222"));
+    }
+
+    /* helpers */
+
+    /** Ocupa el único hilo con una lectura retenida y la única posición de la cola con otra */
+    private void llenarHiloYCola() throws InterruptedException {
+        async.getPaciente(1);
+        Condiciones.esperarHasta(() -> async.getActivas() == 1);
+        async.getPaciente(2);
+        Condiciones.esperarHasta(() -> async.getEnCola() == 1);
+    }
+}
@@ -0,0 +1,154 @@
+package Service;
+
+import Config.DatabaseConnection;
+import Config.TestDatabase;
+import Dao.AuditoriaDAO;
+import Models.CambioAuditoria;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditJournalTest {
+
+    private static final int SEGMENTO = 64 * 1024;
+
+    @TempDir
+    Path directorio;
+
+    private Path archivo;
+
+    @BeforeEach
+    void recrearBase() throws Exception {
+        TestDatabase.recrear();
+        archivo = directorio.resolve("auditoria.journal");
+    }
+
+    @Test
+    void unCommitAplicadoQueInformaErrorNoSeInsertaDosVeces() throws Exception {
+        AtomicInteger fallas = new AtomicInteger(1);
+        AuditoriaDAO dao = new AuditoriaDAO() {
+            @Override
+            public void insertarLote(long segmento, List<CambioAuditoria> cambios) throws Exception {
+                super.insertarLote(segmento, cambios);
+                // El commit se aplicó pero la respuesta se perdió
+                if (!cambios.isEmpty() && fallas.getAndDecrement() > 0) {
+                    throw new SQLException("Communications link failure", "08S01");
+                }
+            }
+        };
+        try (AuditJournal journal = new AuditJournal(dao, archivo, SEGMENTO, 10, 20, 1_000)) {
+            for (int i = 1; i <= 3; i++) journal.registrar("Paciente", i, AuditJournal.ALTA, "detalle " + i);
+            Condiciones.esperarHasta(() -> fallas.get() == 0 && journal.getPendientes() == 0 && filas() == 3);
+            journal.registrar("Paciente", 4, AuditJournal.BAJA, null);
+            Condiciones.esperarHasta(() -> filas() == 4);
+        }
+        assertEquals(4, filas());
+        assertEquals(4, secuenciasDistintas());
+        // Se resolvió descartando lo ya insertado, no apartando duplicados
+        assertFalse(Files.exists(directorio.resolve("auditoria.journal.rechazados")));
+    }
+
+    @Test
+    void unLoteConUnaEntradaInvalidaSeDivideYLaEntradaSeAparta() throws Exception {
+        try (AuditJournal journal = new AuditJournal(new AuditoriaDAO(), archivo, SEGMENTO, 10, 20, 1_000)) {
+            journal.registrar("Paciente", 1, AuditJournal.ALTA, "uno");
+            journal.registrar("Paciente", 2, AuditJournal.ALTA, "dos");
+            // entidad es VARCHAR(30): la base rechaza la fila por sus datos
+            journal.registrar("EntidadConUnNombreDemasiadoLargo", 3, AuditJournal.ALTA, "tres");
+            journal.registrar("Paciente", 4, AuditJournal.ALTA, "cuatro");
+            Condiciones.esperarHasta(() -> filas() == 3);
+
+            // El journal no quedó trabado
+            journal.registrar("Paciente", 5, AuditJournal.MODIFICACION, "cinco");
+            Condiciones.esperarHasta(() -> filas() == 4);
+        }
+        Path apartados = directorio.resolve("auditoria.journal.rechazados");
+        List<String> lineas = Files.readAllLines(apartados);
+        assertEquals(1, lineas.size());
+        assertTrue(lineas.get(0).startsWith("3\tEntidadConUnNombreDemasiadoLargo\t3\tALTA\t"), lineas.get(0));
+    }
+
+    @Test
+    void despuesDeUnaCaidaNoSePierdeNiSeDuplicaNingunCambio() throws Exception {
+        // Primera ejecución: el lote 1-3 llega a la base pero el proceso "muere" antes de
+        // confirmarlo en el segmento; 4 y 5 se registran con la base ya inalcanzable
+        AtomicBoolean caido = new AtomicBoolean(false);
+        AuditoriaDAO dao = new AuditoriaDAO() {
+            @Override
+            public void insertarLote(long segmento, List<CambioAuditoria> cambios) throws Exception {
+                if (caido.get()) throw new SQLException("Communications link failure", "08S01");
+                super.insertarLote(segmento, cambios);
+                caido.set(true);
+                throw new SQLException("Communications link failure", "08S01");
+            }
+
+            @Override
+            public long ultimaSecuencia(long segmento) throws Exception {
+                if (caido.get()) throw new SQLException("Communications link failure", "08S01");
+                return super.ultimaSecuencia(segmento);
+            }
+        };
+        AuditJournal anterior = new AuditJournal(dao, archivo, SEGMENTO, 10, 20, 1_000);
+        try {
+            for (int i = 1; i <= 3; i++) anterior.registrar("Paciente", i, AuditJournal.ALTA, "detalle " + i);
+            Condiciones.esperarHasta(() -> caido.get() && filas() == 3);
+            anterior.registrar("Paciente", 4, AuditJournal.MODIFICACION, "detalle 4");
+            anterior.registrar("HistoriaClinica", 5, AuditJournal.BAJA, null);
+
+            // Reinicio sin close(): el nuevo journal abre el mismo segmento
+            try (AuditJournal recuperado = new AuditJournal(new AuditoriaDAO(), archivo, SEGMENTO, 10, 20, 1_000)) {
+                Condiciones.esperarHasta(() -> recuperado.getPendientes() == 0 && filas() == 5);
+                recuperado.registrar("Paciente", 6, AuditJournal.ALTA, "detalle 6");
+                Condiciones.esperarHasta(() -> filas() == 6);
+            }
+        } finally {
+            anterior.close();   // solo libera el hilo y el archivo: su base sigue "caída"
+        }
+
+        // Un reinicio después de un cierre ordenado no recupera nada
+        try (AuditJournal limpio = new AuditJournal(new AuditoriaDAO(), archivo, SEGMENTO, 10, 20, 1_000)) {
+            assertEquals(0, limpio.getPendientes());
+        }
+        assertEquals(6, filas());
+        assertEquals(6, secuenciasDistintas());
+        assertEquals(21, consultar("SELECT SUM(entidad_id) FROM auditoria_cambio"));
+        assertEquals(1, consultar("SELECT COUNT(*) FROM auditoria_cambio WHERE operacion = 'BAJA' AND detalle IS NULL"));
+        // Las ya insertadas se descartaron al recuperar, no se apartaron como duplicadas
+        assertFalse(Files.exists(directorio.resolve("auditoria.journal.rechazados")));
+    }
+
+    /* helpers */
+
+    static long filas() {
+        return consultar("SELECT COUNT(*) FROM auditoria_cambio");
+    }
+
+    static long secuenciasDistintas() {
+        return consultar("SELECT COUNT(DISTINCT secuencia) FROM auditoria_cambio");
+    }
+
+    private static long consultar(String sql) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
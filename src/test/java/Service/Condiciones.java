@@ -0,0 +1,21 @@
+package Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Espera activa acotada para las pruebas con hilos de fondo */
+final class Condiciones {
+
+    private Condiciones() {
+    }
+
+    static void esperarHasta(BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condicion.getAsBoolean()) {
+            assertTrue(System.nanoTime() < limite, "La condición no se cumplió en 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
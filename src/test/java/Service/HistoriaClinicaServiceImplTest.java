@@ -0,0 +1,117 @@
+package Service;
+
+import Config.DatabaseConnection;
+import Config.TestDatabase;
+import Dao.AuditoriaDAO;
+import Dao.HistoriaClinicaDAO;
+import Dao.Lotes;
+import Models.HistoriaClinica;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoriaClinicaServiceImplTest {
+
+    private HistoriaClinicaDAO dao;
+    private HistoriaClinicaServiceImpl servicio;
+
+    @BeforeEach
+    void recrearBase() throws Exception {
+        TestDatabase.recrear();
+        dao = new HistoriaClinicaDAO();
+        servicio = new HistoriaClinicaServiceImpl(dao);
+    }
+
+    @Test
+    void nroHistoriaDuplicadoEnElIndiceSeTraduceAlMensajeDeNegocio() throws Exception {
+        dao.insertar(TestDatabase.historia("HC-1"));
+        HistoriaClinica repetida = TestDatabase.historia("HC-1");
+
+        // Directo al DAO, como con -Ddb.uniqueCheck=index: lo rechaza el índice único
+        SQLException error = assertThrows(SQLException.class, () -> dao.insertar(repetida));
+
+        Exception traducida = servicio.traducirDuplicado(error, repetida);
+        assertInstanceOf(IllegalArgumentException.class, traducida);
+        assertEquals("Ya existe una historia clínica con el número: HC-1", traducida.getMessage());
+    }
+
+    @Test
+    void otrosErroresNoSeTraducen() {
+        SQLException error = new SQLException("Data too long for column 'nro_historia'", "22001", 1406);
+        assertSame(error, servicio.traducirDuplicado(error, TestDatabase.historia("HC-2")));
+    }
+
+    @Test
+    void insertarRechazaNroHistoriaRepetido() throws Exception {
+        servicio.insertar(TestDatabase.historia("HC-3"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> servicio.insertar(TestDatabase.historia("HC-3")));
+        assertEquals("Ya existe una historia clínica con el número: HC-3", e.getMessage());
+    }
+
+    @Test
+    void elNumeroDeUnaHistoriaEliminadaSigueReservado() throws Exception {
+        HistoriaClinica hc = TestDatabase.historia("HC-9");
+        servicio.insertar(hc);
+        servicio.eliminar(hc.getId());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> servicio.insertar(TestDatabase.historia("HC-9")));
+        assertEquals("Ya existe una historia clínica con el número: HC-9", e.getMessage());
+        assertEquals(Set.of("HC-9"), servicio.nrosHistoriaExistentes(List.of("HC-9")));
+    }
+
+    @Test
+    void siFallaUnTramoDelLoteLosTramosConfirmadosQuedanAuditados(@TempDir Path directorio) throws Exception {
+        dao.insertar(TestDatabase.historia("HC-EXISTENTE"));
+        List<HistoriaClinica> historias = new ArrayList<>();
+        for (int i = 0; i < Lotes.TAMANIO; i++) historias.add(TestDatabase.historia("HC-L" + i));
+        // El segundo tramo choca con el índice único
+        historias.add(TestDatabase.historia("HC-EXISTENTE"));
+
+        try (AuditJournal journal = new AuditJournal(new AuditoriaDAO(),
+                directorio.resolve("auditoria.journal"), 64 * 1024, 100, 20, 1_000)) {
+            HistoriaClinicaServiceImpl conJournal = new HistoriaClinicaServiceImpl(dao, journal);
+            Set<Integer> avisados = ConcurrentHashMap.newKeySet();
+            conJournal.alConfirmarCambio(avisados::add);
+
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> conJournal.insertarLote(historias));
+            assertEquals("Ya existe una historia clínica con el número: HC-EXISTENTE", e.getMessage());
+
+            Condiciones.esperarHasta(() -> AuditJournalTest.filas() == Lotes.TAMANIO);
+            Set<Integer> confirmadas = new HashSet<>();
+            for (HistoriaClinica hc : historias.subList(0, Lotes.TAMANIO)) confirmadas.add(hc.getId());
+            assertEquals(confirmadas, avisados);
+        }
+        assertEquals(Lotes.TAMANIO + 1, contar("SELECT COUNT(*) FROM historia_clinica"));
+        assertEquals(Lotes.TAMANIO, contar("SELECT COUNT(*) FROM auditoria_cambio "
+                + "WHERE entidad = 'HistoriaClinica' AND operacion = 'ALTA' "
+                + "AND entidad_id IN (SELECT id FROM historia_clinica WHERE nro_historia LIKE 'HC-L%')"));
+    }
+
+    private static long contar(String sql) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package Service;
+
+import Config.TestDatabase;
+import Models.Paciente;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PacienteServiceImplTest {
+
+    private PacienteServiceImpl servicio;
+
+    @BeforeEach
+    void recrearBase() throws Exception {
+        TestDatabase.recrear();
+        servicio = TestDatabase.crearServicio();
+    }
+
+    @Test
+    void elDniDeUnPacienteDadoDeBajaSigueReservado() throws Exception {
+        Paciente original = TestDatabase.paciente("30111222", "HC-1");
+        servicio.insertar(original);
+        servicio.eliminar(original.getId());
+        assertNull(servicio.buscarPorDni("30111222"));
+
+        // Rechazado por la validación previa, no por el índice con un error SQL
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> servicio.insertar(TestDatabase.paciente("30111222", "HC-2")));
+        assertEquals("Ya existe un paciente con el DNI: 30111222", e.getMessage());
+    }
+
+    @Test
+    void dnisExistentesIncluyeLosDadosDeBaja() throws Exception {
+        Paciente activo = TestDatabase.paciente("1001", "HC-1001");
+        Paciente dadoDeBaja = TestDatabase.paciente("1002", "HC-1002");
+        servicio.insertarLote(List.of(activo, dadoDeBaja));
+        servicio.eliminar(dadoDeBaja.getId());
+
+        assertEquals(Set.of("1001", "1002"), servicio.dnisExistentes(List.of("1001", "1002", "1003")));
+    }
+}